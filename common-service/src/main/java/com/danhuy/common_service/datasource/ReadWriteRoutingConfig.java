@@ -0,0 +1,73 @@
+package com.danhuy.common_service.datasource;
+
+import com.danhuy.common_service.datasource.RoutingDataSourceProperties.Replica;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Send read-only transactions (@Transactional(readOnly = true), Spring Data finders) to the
+ * replicas and everything else to the primary. The connection is only taken on the first
+ * statement, once the transaction has marked it read-only, so the choice follows the
+ * transaction. Every pool publishes its Hikari metrics (hikaricp.*, tag pool).
+ *
+ * <p>On with datasource.routing.enabled=true in a service having a database.
+ */
+@Configuration
+@ConditionalOnClass({HikariDataSource.class, MeterRegistry.class})
+@ConditionalOnProperty(prefix = "datasource.routing", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(RoutingDataSourceProperties.class)
+public class ReadWriteRoutingConfig {
+
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder()
+        .type(HikariDataSource.class)
+        .build();
+    dataSource.setPoolName("primary");
+    dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(
+        meterRegistry.getIfAvailable(() -> Metrics.globalRegistry)));
+    return dataSource;
+  }
+
+  @Bean
+  public ReplicaRouter replicaRouter(RoutingDataSourceProperties properties,
+      HikariDataSource primaryDataSource, ObjectProvider<MeterRegistry> meterRegistry) {
+    MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    List<HikariDataSource> replicas = new ArrayList<>();
+    for (int i = 0; i < properties.getReplicas().size(); i++) {
+      Replica replica = properties.getReplicas().get(i);
+      String poolName = replica.getName() != null ? replica.getName() : "replica-" + (i + 1);
+      HikariDataSource dataSource = ReplicaRouter.createPool(replica, poolName);
+      dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+      replicas.add(dataSource);
+    }
+    return new ReplicaRouter(replicas, primaryDataSource, properties.getMaxLagSeconds(),
+        properties.getLagCheckIntervalMs(), registry);
+  }
+
+  @Bean
+  @Primary
+  public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaRouter replicaRouter) {
+    LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(
+        primaryDataSource);
+    dataSource.setReadOnlyDataSource(replicaRouter);
+    return dataSource;
+  }
+}
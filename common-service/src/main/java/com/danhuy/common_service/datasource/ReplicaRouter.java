@@ -0,0 +1,153 @@
+package com.danhuy.common_service.datasource;
+
+import com.danhuy.common_service.datasource.RoutingDataSourceProperties.Replica;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+/**
+ * DataSource of the read-only connections: round-robin over the replicas that are up to date,
+ * the primary when none is. The replication lag of every replica is checked periodically on a
+ * thread of its own, so a long scheduled job of the service never delays it.
+ */
+@Slf4j
+public class ReplicaRouter extends AbstractDataSource implements InitializingBean,
+    DisposableBean {
+
+  private final List<ReplicaNode> replicas;
+  private final HikariDataSource primary;
+  private final long maxLagSeconds;
+  private final long lagCheckIntervalMs;
+  private final AtomicInteger next = new AtomicInteger();
+  private final ScheduledExecutorService lagChecker = Executors.newSingleThreadScheduledExecutor(
+      runnable -> {
+        Thread thread = new Thread(runnable, "replica-lag-check");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  public ReplicaRouter(List<HikariDataSource> replicaDataSources, HikariDataSource primary,
+      long maxLagSeconds, long lagCheckIntervalMs, MeterRegistry meterRegistry) {
+    this.replicas = replicaDataSources.stream().map(ReplicaNode::new).toList();
+    this.primary = primary;
+    this.maxLagSeconds = maxLagSeconds;
+    this.lagCheckIntervalMs = lagCheckIntervalMs;
+    for (ReplicaNode replica : replicas) {
+      Gauge.builder("datasource.replica.lag.seconds", replica, node -> node.lagSeconds)
+          .tag("pool", replica.dataSource.getPoolName())
+          .description("Replication lag, -1 when replication is broken or unknown")
+          .register(meterRegistry);
+      Gauge.builder("datasource.replica.healthy", replica, node -> node.healthy ? 1 : 0)
+          .tag("pool", replica.dataSource.getPoolName())
+          .register(meterRegistry);
+    }
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return pick().getConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return pick().getConnection(username, password);
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    if (!replicas.isEmpty()) {
+      lagChecker.scheduleWithFixedDelay(this::checkLag, 0, lagCheckIntervalMs,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * read the lag of every replica, one lagging more than the maximum gets no read until it has
+   * caught up again.
+   */
+  public void checkLag() {
+    for (ReplicaNode replica : replicas) {
+      long lag = readLag(replica);
+      boolean healthy = lag >= 0 && lag <= maxLagSeconds;
+      if (healthy != replica.healthy) {
+        log.warn("Replica {} is {} (lag: {} s)", replica.dataSource.getPoolName(),
+            healthy ? "back in the read pool" : "out of the read pool", lag);
+      }
+      replica.lagSeconds = lag;
+      replica.healthy = healthy;
+    }
+  }
+
+  @Override
+  public void destroy() {
+    lagChecker.shutdownNow();
+    replicas.forEach(replica -> replica.dataSource.close());
+  }
+
+  private javax.sql.DataSource pick() {
+    int size = replicas.size();
+    int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+    for (int i = 0; i < size; i++) {
+      ReplicaNode replica = replicas.get((start + i) % size);
+      if (replica.healthy) {
+        return replica.dataSource;
+      }
+    }
+    // no replica up to date, read from the primary
+    return primary;
+  }
+
+  private long readLag(ReplicaNode replica) {
+    try {
+      List<Map<String, Object>> status = replica.jdbcTemplate.queryForList("SHOW REPLICA STATUS");
+      if (status.isEmpty()) {
+        // not a replica (e.g. local environment pointing at the primary), nothing to wait for
+        return 0;
+      }
+      Object lag = status.get(0).get("Seconds_Behind_Source");
+      // null while the replication threads are stopped
+      return lag == null ? -1 : ((Number) lag).longValue();
+    } catch (Exception e) {
+      log.debug("Cannot read replication status of {}", replica.dataSource.getPoolName(), e);
+      return -1;
+    }
+  }
+
+  private static final class ReplicaNode {
+
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    // out of the read pool until the first check
+    private volatile boolean healthy;
+    private volatile long lagSeconds = -1;
+
+    private ReplicaNode(HikariDataSource dataSource) {
+      this.dataSource = dataSource;
+      this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+  }
+
+  static HikariDataSource createPool(Replica replica, String poolName) {
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setPoolName(poolName);
+    dataSource.setJdbcUrl(replica.getUrl());
+    dataSource.setUsername(replica.getUsername());
+    dataSource.setPassword(replica.getPassword());
+    dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+    dataSource.setReadOnly(true);
+    return dataSource;
+  }
+}
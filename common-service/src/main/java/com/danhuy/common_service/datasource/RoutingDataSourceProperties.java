@@ -0,0 +1,34 @@
+package com.danhuy.common_service.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Replicas receiving the read-only transactions of a service (datasource.routing.*). The primary
+ * is the regular spring.datasource.
+ */
+@Data
+@ConfigurationProperties(prefix = "datasource.routing")
+public class RoutingDataSourceProperties {
+
+  private boolean enabled;
+
+  // a replica further behind than this is skipped, reads go to the next one or the primary
+  private long maxLagSeconds = 5;
+
+  private long lagCheckIntervalMs = 1000;
+
+  private List<Replica> replicas = new ArrayList<>();
+
+  @Data
+  public static class Replica {
+
+    private String name;
+    private String url;
+    private String username;
+    private String password;
+    private int maximumPoolSize = 10;
+  }
+}
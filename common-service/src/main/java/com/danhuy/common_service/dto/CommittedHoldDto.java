@@ -0,0 +1,21 @@
+package com.danhuy.common_service.dto;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Units of a product sold to an order (committed reservation hold of inventory-service), exchanged
+ * in (committedAt, id) order (product popularity).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommittedHoldDto {
+
+  private Long id;
+  private Long productId;
+  private Integer quantity;
+  private LocalDateTime committedAt;
+}
@@ -0,0 +1,19 @@
+package com.danhuy.common_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stock quantity of a product, exchanged in product id order (stock reconciliation).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockLevelDto {
+
+  private Long productId;
+  private Integer quantity;
+  // version of the stock: inventory row version, or the last one projected into the product
+  private Long version;
+}
@@ -16,6 +16,8 @@ public enum MessageEnum {
   PRODUCT_NOT_EXISTED(2001, "Product not existed!", HttpStatus.NOT_FOUND),
   CREATE_PRODUCT_SUCCESS(2002, "Create product success!", HttpStatus.CREATED),
   UPDATE_PRODUCT_SUCCESS(2003, "Update product success!", HttpStatus.ACCEPTED),
+  INVALID_PRODUCT_CURSOR(2004, "Invalid product cursor: {0}", HttpStatus.BAD_REQUEST),
+  INVALID_PRODUCT_SORT(2005, "Cannot list products sorted by: {0}", HttpStatus.BAD_REQUEST),
   CREATE_ORDER_SUCCESS(3001, "Create order success!", HttpStatus.CREATED),
   ORDER_NOT_EXISTED(3002, "Order not existed with orderId: {0}", HttpStatus.NOT_FOUND),
   NOT_ENOUGH_RESERVE_QUANTITY(4000, "Not enough quantity available! {0}", HttpStatus.BAD_REQUEST),
@@ -28,6 +30,8 @@ public enum MessageEnum {
   RESERVE_INVENTORY_SUCCESS(4007, "Inventory reserved successfully!", HttpStatus.OK),
   CREATE_INVENTORY_SUCCESS(4008, "Create inventory for product success!", HttpStatus.CREATED),
   UPDATE_INVENTORY_SUCCESS(4009, "Update inventory for product success!", HttpStatus.ACCEPTED),
+  RESERVATION_EXPIRED(4010, "Reservation of order {0} has expired!", HttpStatus.BAD_REQUEST),
+  IMPORT_INVENTORY_SUCCESS(4011, "Import inventory finished!", HttpStatus.OK),
   INVALID_KEY(1001, "Uncategorized error", HttpStatus.BAD_REQUEST),
   USER_EXISTED(1002, "User existed", HttpStatus.BAD_REQUEST),
   USERNAME_INVALID(1003, "Username must be at least {min} characters", HttpStatus.BAD_REQUEST),
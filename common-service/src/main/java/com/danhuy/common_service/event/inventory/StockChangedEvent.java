@@ -0,0 +1,28 @@
+package com.danhuy.common_service.event.inventory;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Latest stock of a product, keyed by productId on a compacted topic (only the last event of each
+ * product is kept). Events are sent after commit and two transactions may send theirs in any
+ * order: the version tells which one is the latest.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockChangedEvent {
+
+  private Long productId;
+  private Integer quantity;
+  private Integer reservedQuantity;
+  private Integer availableQuantity;
+  private LocalDateTime changedAt;
+  // version of the inventory row after the change, increases with every change of the product
+  private Long version;
+
+}
@@ -15,4 +15,12 @@ public class PagingTransferUtils {
     return result;
   }
 
+  public static Map<String, Object> transfersCursorToMetaData(int size, String nextCursor) {
+    Map<String, Object> result = new HashMap<>();
+    result.put("size", size);
+    result.put("nextCursor", nextCursor);
+    result.put("hasNext", nextCursor != null);
+    return result;
+  }
+
 }
@@ -0,0 +1,51 @@
+package com.danhuy.inventory_service.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Collect cache changes made inside a transaction and hand them over once, after commit, so a
+ * rolled back stock movement never reaches Redis. Outside of a transaction changes are handed over
+ * right away.
+ */
+public final class AfterCommitChanges {
+
+  private AfterCommitChanges() {
+  }
+
+  /**
+   * add a change, the last value of a key in the transaction wins.
+   *
+   * @param owner  Object one buffer per owner and transaction
+   * @param key    K
+   * @param value  V
+   * @param writer Consumer<Map<K, V>> called with all changes of the transaction
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> void collect(Object owner, K key, V value, Consumer<Map<K, V>> writer) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      writer.accept(Map.of(key, value));
+      return;
+    }
+
+    Map<K, V> pending = (Map<K, V>) TransactionSynchronizationManager.getResource(owner);
+    if (pending == null) {
+      Map<K, V> changes = new LinkedHashMap<>();
+      TransactionSynchronizationManager.bindResource(owner, changes);
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          TransactionSynchronizationManager.unbindResource(owner);
+          if (status == STATUS_COMMITTED) {
+            writer.accept(changes);
+          }
+        }
+      });
+      pending = changes;
+    }
+    pending.put(key, value);
+  }
+}
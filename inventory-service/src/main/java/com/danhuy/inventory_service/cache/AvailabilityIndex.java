@@ -0,0 +1,247 @@
+package com.danhuy.inventory_service.cache;
+
+import com.danhuy.inventory_service.cache.AvailabilitySnapshotFile.Snapshot;
+import com.danhuy.inventory_service.dto.ProductAvailability;
+import com.danhuy.inventory_service.repository.InventoryRepository;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory product id -> available quantity of every product, so stock checks are one memory
+ * read. Kept current by the inventory-updated topic and reloaded from the inventory table
+ * periodically; the reloaded table replaces the current one at once. Every entry keeps the version
+ * of the inventory row it comes from: changes of several instances reach the topic in send order,
+ * not commit order, and an older one arriving last is dropped. A copy is written to a local
+ * snapshot file so a restarted node starts warm (see
+ * {@link com.danhuy.inventory_service.kafka.StockChangeListener}).
+ *
+ * <p>Reads take no lock. Writes (stream updates and reloads) are serialized on this object.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AvailabilityIndex {
+
+  public static final int MISSING = LongIntHashTable.MISSING;
+
+  private final InventoryRepository inventoryRepository;
+
+  @Value("${inventory.availability-index.enabled:true}")
+  private boolean enabled;
+
+  @Value("${inventory.availability-index.expected-size:100000}")
+  private int expectedSize;
+
+  @Value("${inventory.availability-index.page-size:5000}")
+  private int pageSize;
+
+  @Value("${inventory.availability-index.snapshot.enabled:true}")
+  private boolean snapshotEnabled;
+
+  @Value("${inventory.availability-index.snapshot.dir:./data/inventory-snapshot}")
+  private String snapshotDir;
+
+  @Value("${inventory.availability-index.snapshot.max-age-ms:86400000}")
+  private long snapshotMaxAgeMs;
+
+  private volatile LongIntHashTable table;
+  // table being reloaded or restored, stream updates go to both tables meanwhile
+  private LongIntHashTable building;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * the index answers only once it has been loaded.
+   *
+   * @return boolean
+   */
+  public boolean isReady() {
+    return enabled && table != null;
+  }
+
+  /**
+   * get the available quantity of a product.
+   *
+   * @param productId long
+   * @return int available quantity, {@link #MISSING} if the product is unknown
+   */
+  public int getAvailableQuantity(long productId) {
+    LongIntHashTable current = table;
+    return current == null ? MISSING : current.get(productId);
+  }
+
+  /**
+   * apply a stock change of a product, unless the index holds a newer one.
+   *
+   * @param productId         long
+   * @param availableQuantity int
+   * @param version           long version of the inventory row after the change
+   */
+  public synchronized void update(long productId, int availableQuantity, long version) {
+    if (!enabled) {
+      return;
+    }
+    if (table != null) {
+      if (table.needsGrow()) {
+        table = table.grow();
+      }
+      table.put(productId, availableQuantity, version);
+    }
+    if (building != null) {
+      if (building.needsGrow()) {
+        building = building.grow();
+      }
+      // may be newer than the row being read, the version decides
+      building.put(productId, availableQuantity, version);
+    }
+  }
+
+  /**
+   * reload the whole index from the inventory table (keyset pages by product id) and swap it in.
+   */
+  @Scheduled(initialDelayString = "${inventory.availability-index.refresh-interval-ms:600000}",
+      fixedDelayString = "${inventory.availability-index.refresh-interval-ms:600000}")
+  public void reload() {
+    if (!enabled) {
+      return;
+    }
+    synchronized (this) {
+      building = new LongIntHashTable(Math.max(expectedSize, table == null ? 0 : table.size()));
+    }
+
+    try {
+      long lastProductId = 0L;
+      List<ProductAvailability> page;
+      do {
+        page = inventoryRepository.findAvailabilityAfter(lastProductId,
+            PageRequest.ofSize(pageSize));
+        synchronized (this) {
+          for (ProductAvailability row : page) {
+            if (building.needsGrow()) {
+              building = building.grow();
+            }
+            building.put(row.productId(), row.availableQuantity(),
+                row.version() == null ? 0L : row.version());
+          }
+        }
+        if (!page.isEmpty()) {
+          lastProductId = page.get(page.size() - 1).productId();
+        }
+      } while (page.size() == pageSize);
+
+      synchronized (this) {
+        table = building;
+        building = null;
+        log.info("Availability index reloaded with {} products", table.size());
+      }
+    } catch (Exception e) {
+      synchronized (this) {
+        building = null;
+      }
+      // keep serving the current table, stream updates keep it current
+      log.error("Error reloading availability index", e);
+    }
+  }
+
+  /**
+   * load the index from the local snapshot file, off to the side: it is not served before
+   * {@link #publishRestored()}, once the changes made since the snapshot are applied.
+   *
+   * @return Map<Integer, Long> next inventory-updated offset by partition included in the
+   *     snapshot, null when there is no usable snapshot
+   */
+  public Map<Integer, Long> restoreSnapshot() {
+    if (!enabled || !snapshotEnabled) {
+      return null;
+    }
+    try {
+      Snapshot snapshot = new AvailabilitySnapshotFile(Path.of(snapshotDir)).read();
+      if (snapshot == null) {
+        return null;
+      }
+      if (System.currentTimeMillis() - snapshot.createdAt() > snapshotMaxAgeMs) {
+        log.info("Availability snapshot is too old, loading from the database");
+        return null;
+      }
+
+      LongIntHashTable restored = new LongIntHashTable(
+          Math.max(expectedSize, snapshot.productIds().length));
+      for (int i = 0; i < snapshot.productIds().length; i++) {
+        restored.put(snapshot.productIds()[i], snapshot.availableQuantities()[i],
+            snapshot.versions()[i]);
+      }
+      synchronized (this) {
+        building = restored;
+      }
+      log.info("Availability index restored from snapshot with {} products", restored.size());
+      return snapshot.offsets();
+    } catch (IOException e) {
+      log.warn("Cannot read availability snapshot, loading from the database", e);
+      return null;
+    }
+  }
+
+  /**
+   * serve the table restored from the snapshot, the changelog has caught up.
+   */
+  public synchronized void publishRestored() {
+    if (building != null) {
+      table = building;
+      building = null;
+    }
+  }
+
+  /**
+   * drop the table restored from the snapshot, the index is reloaded from the database instead.
+   */
+  public synchronized void discardRestored() {
+    building = null;
+  }
+
+  /**
+   * write a copy of the index to the local snapshot file.
+   *
+   * @param offsets Map<Integer, Long> next inventory-updated offset by partition, every change
+   *                before them must already be in the index
+   */
+  public void writeSnapshot(Map<Integer, Long> offsets) {
+    if (!enabled || !snapshotEnabled) {
+      return;
+    }
+    long[] productIds;
+    int[] availableQuantities;
+    long[] versions;
+    synchronized (this) {
+      if (table == null) {
+        return;
+      }
+      productIds = new long[table.size()];
+      availableQuantities = new int[table.size()];
+      versions = new long[table.size()];
+      int[] position = {0};
+      table.forEach((productId, availableQuantity, version) -> {
+        productIds[position[0]] = productId;
+        availableQuantities[position[0]] = availableQuantity;
+        versions[position[0]++] = version;
+      });
+    }
+
+    try {
+      new AvailabilitySnapshotFile(Path.of(snapshotDir)).write(new Snapshot(
+          System.currentTimeMillis(), offsets, productIds, availableQuantities, versions));
+      log.debug("Availability snapshot written with {} products", productIds.length);
+    } catch (IOException e) {
+      log.error("Error writing availability snapshot", e);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.danhuy.inventory_service.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Local file holding a copy of the availability index and the inventory-updated offsets it
+ * includes. It is written to a temporary file then moved over the previous snapshot, and checked
+ * with a CRC32 when read, so a crash while writing never leaves a half snapshot behind.
+ */
+class AvailabilitySnapshotFile {
+
+  private static final int MAGIC = 0x494E5653; // "INVS"
+  // 2: with the version of every entry, a version 1 file is not read (database load)
+  private static final int FORMAT_VERSION = 2;
+  private static final String FILE_NAME = "availability.snapshot";
+
+  private final Path file;
+  private final Path tempFile;
+
+  AvailabilitySnapshotFile(Path dir) throws IOException {
+    Path snapshotDir = Files.createDirectories(dir);
+    this.file = snapshotDir.resolve(FILE_NAME);
+    this.tempFile = snapshotDir.resolve(FILE_NAME + ".tmp");
+  }
+
+  /**
+   * write a snapshot, replacing the previous one.
+   *
+   * @param snapshot Snapshot
+   */
+  void write(Snapshot snapshot) throws IOException {
+    CheckedOutputStream checked = new CheckedOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024), new CRC32());
+    try (DataOutputStream out = new DataOutputStream(checked)) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(snapshot.createdAt());
+      out.writeInt(snapshot.offsets().size());
+      for (Map.Entry<Integer, Long> offset : snapshot.offsets().entrySet()) {
+        out.writeInt(offset.getKey());
+        out.writeLong(offset.getValue());
+      }
+      out.writeInt(snapshot.productIds().length);
+      for (int i = 0; i < snapshot.productIds().length; i++) {
+        out.writeLong(snapshot.productIds()[i]);
+        out.writeInt(snapshot.availableQuantities()[i]);
+        out.writeLong(snapshot.versions()[i]);
+      }
+      out.writeLong(checked.getChecksum().getValue());
+    }
+    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * read the last snapshot.
+   *
+   * @return Snapshot, null if there is none
+   * @throws IOException when the file is unreadable or corrupted
+   */
+  Snapshot read() throws IOException {
+    if (!Files.exists(file)) {
+      return null;
+    }
+    CheckedInputStream checked = new CheckedInputStream(
+        new BufferedInputStream(Files.newInputStream(file), 64 * 1024), new CRC32());
+    try (DataInputStream in = new DataInputStream(checked)) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        throw new IOException("Unknown snapshot format: " + file);
+      }
+      long createdAt = in.readLong();
+      int offsetCount = in.readInt();
+      Map<Integer, Long> offsets = new HashMap<>();
+      for (int i = 0; i < offsetCount; i++) {
+        offsets.put(in.readInt(), in.readLong());
+      }
+      int size = in.readInt();
+      long[] productIds = new long[size];
+      int[] availableQuantities = new int[size];
+      long[] versions = new long[size];
+      for (int i = 0; i < size; i++) {
+        productIds[i] = in.readLong();
+        availableQuantities[i] = in.readInt();
+        versions[i] = in.readLong();
+      }
+      long expected = checked.getChecksum().getValue();
+      if (in.readLong() != expected) {
+        throw new IOException("Snapshot checksum mismatch: " + file);
+      }
+      return new Snapshot(createdAt, offsets, productIds, availableQuantities, versions);
+    }
+  }
+
+  /**
+   * Content of a snapshot.
+   *
+   * @param createdAt           epoch millis
+   * @param offsets             next inventory-updated offset by partition, already in the index
+   * @param productIds          product ids
+   * @param availableQuantities available quantity of the product at the same position
+   * @param versions            inventory row version of the product at the same position
+   */
+  record Snapshot(long createdAt, Map<Integer, Long> offsets, long[] productIds,
+                  int[] availableQuantities, long[] versions) {
+
+  }
+}
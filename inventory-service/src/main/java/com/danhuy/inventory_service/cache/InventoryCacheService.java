@@ -1,10 +1,22 @@
 package com.danhuy.inventory_service.cache;
 
 import com.danhuy.inventory_service.dto.InventoryResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -15,10 +27,27 @@ public class InventoryCacheService {
   private static final String INVENTORY_KEY_PREFIX = "inventory:";
   private static final long DEFAULT_TTL = 3600;
 
+  // SET only when the cached entry is missing or older than the new one (inventory version)
+  private static final String SET_IF_NEWER_SCRIPT = """
+      local current = redis.call('GET', KEYS[1])
+      if current then
+        local ok, cached = pcall(cjson.decode, current)
+        if ok and cached.version and tonumber(cached.version) >= tonumber(ARGV[2]) then
+          return 0
+        end
+      end
+      redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[3])
+      return 1
+      """;
+  private static final RedisScript<Long> SET_IF_NEWER =
+      new DefaultRedisScript<>(SET_IF_NEWER_SCRIPT, Long.class);
+
   private final RedisTemplate<String, Object> redisTemplate;
+  private final InventoryNearCache inventoryNearCache;
 
   /**
-   * cache for inventory information of a product.
+   * cache for inventory information of a product. An entry of a newer version is never replaced,
+   * so a slow read cannot overwrite the result of a stock movement.
    *
    * @param inventoryResponse InventoryResponse
    */
@@ -26,24 +55,86 @@ public class InventoryCacheService {
     // Ex: `inventory:1`
     String key = INVENTORY_KEY_PREFIX + inventoryResponse.getProductId();
 
-    redisTemplate.opsForValue().set(key, inventoryResponse, DEFAULT_TTL, TimeUnit.SECONDS);
+    if (inventoryResponse.getVersion() == null) {
+      redisTemplate.opsForValue().set(key, inventoryResponse, DEFAULT_TTL,
+          TimeUnit.SECONDS);
+    } else {
+      redisTemplate.execute(SET_IF_NEWER, List.of(key), inventoryResponse,
+          inventoryResponse.getVersion(), DEFAULT_TTL);
+    }
     log.debug("Inventory cached with key: {}", key);
   }
 
   /**
-   * get inventory information of a product from the cache
+   * cache inventories of many products in one pipeline, with the same version check as
+   * {@link #cacheInventory(InventoryResponse)}.
+   *
+   * @param inventoryResponses Collection<InventoryResponse>
+   */
+  @SuppressWarnings("unchecked")
+  public void cacheInventories(Collection<InventoryResponse> inventoryResponses) {
+    if (inventoryResponses.isEmpty()) {
+      return;
+    }
+    RedisSerializer<Object> valueSerializer =
+        (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+    byte[] script = SET_IF_NEWER_SCRIPT.getBytes(StandardCharsets.UTF_8);
+    byte[] ttl = toBytes(DEFAULT_TTL);
+
+    redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+      for (InventoryResponse response : inventoryResponses) {
+        // no version: always replaced
+        long version = response.getVersion() == null ? Long.MAX_VALUE : response.getVersion();
+        connection.scriptingCommands().eval(script, ReturnType.INTEGER, 1,
+            toBytes(INVENTORY_KEY_PREFIX + response.getProductId()),
+            valueSerializer.serialize(response), toBytes(version), ttl);
+      }
+      return null;
+    });
+    log.debug("{} inventories cached in one pipeline", inventoryResponses.size());
+  }
+
+  /**
+   * write the inventory of a product through to the cache once the current transaction commits
+   * (right away outside of a transaction).
+   *
+   * @param productId Long
+   * @param response  Supplier<InventoryResponse> called after commit, null evicts the entry
+   */
+  public void refreshAfterCommit(Long productId, Supplier<InventoryResponse> response) {
+    AfterCommitChanges.collect(this, productId, response, this::writeThrough);
+  }
+
+  /**
+   * evict the inventory of a product once the current transaction commits.
+   *
+   * @param productId Long
+   */
+  public void evictAfterCommit(Long productId) {
+    refreshAfterCommit(productId, () -> null);
+  }
+
+  /**
+   * get inventory information of a product from the cache, local (L1) first then Redis (L2)
    *
    * @param productId Long
    * @return InventoryResponse
    */
   public InventoryResponse getInventoryFromCache(Long productId) {
+    InventoryResponse localResponse = inventoryNearCache.get(productId);
+    if (localResponse != null) {
+      return localResponse;
+    }
+
     // Ex: `inventory:1`
     String key = INVENTORY_KEY_PREFIX + productId;
 
     InventoryResponse response = (InventoryResponse) redisTemplate.opsForValue().get(key);
+    inventoryNearCache.recordL2(response != null);
 
     if (response != null) {
       log.debug("Inventory found in cache with key: {}", key);
+      inventoryNearCache.put(response);
       return response;
     }
 
@@ -51,6 +142,44 @@ public class InventoryCacheService {
     return null;
   }
 
+  /**
+   * get inventory information of many products with one MGET.
+   *
+   * @param productIds List<Long>
+   * @return Map<Long, InventoryResponse> cached entries by product id, misses are absent
+   */
+  public Map<Long, InventoryResponse> getInventoriesFromCache(List<Long> productIds) {
+    Map<Long, InventoryResponse> responses = new HashMap<>();
+    List<Long> remoteIds = new ArrayList<>(productIds.size());
+    for (Long productId : productIds) {
+      InventoryResponse localResponse = inventoryNearCache.get(productId);
+      if (localResponse != null) {
+        responses.put(productId, localResponse);
+      } else {
+        remoteIds.add(productId);
+      }
+    }
+    if (remoteIds.isEmpty()) {
+      return responses;
+    }
+
+    List<String> keys = new ArrayList<>(remoteIds.size());
+    remoteIds.forEach(productId -> keys.add(INVENTORY_KEY_PREFIX + productId));
+
+    List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+    for (int i = 0; i < remoteIds.size(); i++) {
+      boolean hit = values != null && values.get(i) instanceof InventoryResponse;
+      inventoryNearCache.recordL2(hit);
+      if (hit) {
+        InventoryResponse response = (InventoryResponse) values.get(i);
+        responses.put(remoteIds.get(i), response);
+        inventoryNearCache.put(response);
+      }
+    }
+    log.debug("{} of {} inventories found in cache", responses.size(), productIds.size());
+    return responses;
+  }
+
   /**
    * evict inventory cache by product id
    *
@@ -59,7 +188,44 @@ public class InventoryCacheService {
   public void evictInventoryCache(Long productId) {
     String key = INVENTORY_KEY_PREFIX + productId;
     redisTemplate.delete(key);
+    inventoryNearCache.invalidate(List.of(productId));
     log.debug("Inventory cache evicted for key: {}", key);
   }
 
+  /**
+   * evict inventory cache of many products with one DEL and one L1 invalidation.
+   *
+   * @param productIds Collection<Long>
+   */
+  public void evictInventoryCaches(Collection<Long> productIds) {
+    List<String> keys = new ArrayList<>(productIds.size());
+    productIds.forEach(productId -> keys.add(INVENTORY_KEY_PREFIX + productId));
+    redisTemplate.delete(keys);
+    inventoryNearCache.invalidate(productIds);
+    log.debug("Inventory cache evicted for {} products", productIds.size());
+  }
+
+  private byte[] toBytes(Object value) {
+    return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void writeThrough(Map<Long, Supplier<InventoryResponse>> changes) {
+    changes.forEach((productId, supplier) -> {
+      try {
+        InventoryResponse response = supplier.get();
+        if (response == null) {
+          redisTemplate.delete(INVENTORY_KEY_PREFIX + productId);
+        } else {
+          cacheInventory(response);
+        }
+      } catch (Exception e) {
+        // stock is committed already, drop the entry rather than serve it stale
+        log.error("Error writing inventory of product {} to the cache", productId, e);
+        redisTemplate.delete(INVENTORY_KEY_PREFIX + productId);
+      }
+    });
+    // one broadcast for all products of the transaction
+    inventoryNearCache.invalidate(changes.keySet());
+  }
+
 }
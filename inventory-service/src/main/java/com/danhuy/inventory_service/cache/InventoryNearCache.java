@@ -0,0 +1,146 @@
+package com.danhuy.inventory_service.cache;
+
+import com.danhuy.inventory_service.dto.InventoryResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process L1 cache in front of Redis (L2). Caffeine bounds it by size with W-TinyLFU admission
+ * and by a short time to live. Every change of an entry is broadcast on a Redis channel so all
+ * inventory-service nodes drop their local copy; the time to live bounds staleness when a message
+ * is lost.
+ */
+@Component
+@Slf4j
+public class InventoryNearCache implements MessageListener {
+
+  private final StringRedisTemplate stringRedisTemplate;
+  private final boolean enabled;
+  private final String channel;
+  // messages sent by this node are skipped, it has already evicted
+  private final String nodeId = UUID.randomUUID().toString();
+  private final Cache<Long, InventoryResponse> cache;
+  private final Counter l2Hits;
+  private final Counter l2Misses;
+  private final Timer invalidationLag;
+
+  public InventoryNearCache(StringRedisTemplate stringRedisTemplate,
+      ObjectProvider<MeterRegistry> meterRegistry,
+      @Value("${inventory.cache.local.enabled:true}") boolean enabled,
+      @Value("${inventory.cache.local.maximum-size:10000}") long maximumSize,
+      @Value("${inventory.cache.local.ttl-ms:5000}") long ttlMs,
+      @Value("${inventory.cache.local.invalidation-channel:inventory:cache-invalidation}")
+      String channel) {
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.enabled = enabled;
+    this.channel = channel;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(Duration.ofMillis(ttlMs))
+        .recordStats()
+        .build();
+
+    // the global registry is picked up by actuator when it is on the classpath
+    MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    CaffeineCacheMetrics.monitor(registry, cache, "inventory.l1");
+    this.l2Hits = Counter.builder("inventory.cache.l2.requests").tag("result", "hit")
+        .register(registry);
+    this.l2Misses = Counter.builder("inventory.cache.l2.requests").tag("result", "miss")
+        .register(registry);
+    this.invalidationLag = Timer.builder("inventory.cache.invalidation.lag")
+        .description("Time between publishing and receiving an L1 invalidation")
+        .register(registry);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public String getChannel() {
+    return channel;
+  }
+
+  /**
+   * get an entry from L1.
+   *
+   * @param productId Long
+   * @return InventoryResponse, null if not cached locally
+   */
+  public InventoryResponse get(Long productId) {
+    return enabled ? cache.getIfPresent(productId) : null;
+  }
+
+  /**
+   * put an entry read from L2 into L1.
+   *
+   * @param response InventoryResponse
+   */
+  public void put(InventoryResponse response) {
+    if (enabled) {
+      cache.put(response.getProductId(), response);
+    }
+  }
+
+  /**
+   * record the result of an L2 (Redis) lookup.
+   *
+   * @param hit boolean
+   */
+  public void recordL2(boolean hit) {
+    (hit ? l2Hits : l2Misses).increment();
+  }
+
+  /**
+   * drop entries locally and on every other node.
+   *
+   * @param productIds Collection<Long>
+   */
+  public void invalidate(Collection<Long> productIds) {
+    if (!enabled || productIds.isEmpty()) {
+      return;
+    }
+    cache.invalidateAll(productIds);
+
+    // Ex: `<nodeId>|<publishedAt>|1,2,3`
+    String message = nodeId + "|" + System.currentTimeMillis() + "|"
+        + productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+    try {
+      stringRedisTemplate.convertAndSend(channel, message);
+    } catch (Exception e) {
+      log.error("Error broadcasting L1 invalidation of products {}", productIds, e);
+    }
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 3);
+    if (parts.length < 3 || nodeId.equals(parts[0])) {
+      return;
+    }
+
+    invalidationLag.record(System.currentTimeMillis() - Long.parseLong(parts[1]),
+        TimeUnit.MILLISECONDS);
+    cache.invalidateAll(Arrays.stream(parts[2].split(","))
+        .map(Long::valueOf)
+        .toList());
+  }
+}
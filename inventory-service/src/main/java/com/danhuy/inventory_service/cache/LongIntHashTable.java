@@ -0,0 +1,141 @@
+package com.danhuy.inventory_service.cache;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Open-addressing (linear probing) hash table from a positive long key to an int value and the
+ * version of that value, stored in primitive arrays: no boxing and no entry objects. A value is
+ * only replaced by one of the same or a newer version. Keys are never removed.
+ *
+ * <p>One writer at a time (the caller synchronizes writes), any number of readers without lock:
+ * a new slot publishes its value before its key, so a reader that sees the key sees the value.
+ * Versions are only read by the writer. The table does not grow by itself, the writer replaces it
+ * with {@link #grow()}.
+ */
+final class LongIntHashTable {
+
+  static final int MISSING = Integer.MIN_VALUE;
+
+  private static final long EMPTY = 0L;
+  private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+  private final AtomicLongArray keys;
+  private final AtomicIntegerArray values;
+  private final long[] versions;
+  private final int mask;
+  private final int shift;
+  private int size;
+
+  LongIntHashTable(int expectedSize) {
+    // load factor under 0.5 keeps probe sequences short
+    int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+    this.keys = new AtomicLongArray(capacity);
+    this.values = new AtomicIntegerArray(capacity);
+    this.versions = new long[capacity];
+    this.mask = capacity - 1;
+    this.shift = Long.numberOfLeadingZeros(mask);
+  }
+
+  /**
+   * get the value of a key.
+   *
+   * @param key long
+   * @return int value, {@link #MISSING} if the key is not in the table
+   */
+  int get(long key) {
+    for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+      long current = keys.get(slot);
+      if (current == key) {
+        return values.get(slot);
+      }
+      if (current == EMPTY) {
+        return MISSING;
+      }
+    }
+  }
+
+  /**
+   * insert the value of a key, or replace it unless the value in the table is newer.
+   *
+   * @param key     long, greater than 0
+   * @param value   int
+   * @param version long version of the value
+   * @return true if the value was inserted or replaced, false if an older one was dropped
+   */
+  boolean put(long key, int value, long version) {
+    if (key <= EMPTY) {
+      throw new IllegalArgumentException("Key must be positive: " + key);
+    }
+    for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+      long current = keys.get(slot);
+      if (current == key) {
+        if (version < versions[slot]) {
+          return false;
+        }
+        versions[slot] = version;
+        values.set(slot, value);
+        return true;
+      }
+      if (current == EMPTY) {
+        if (size + 1 > mask) {
+          throw new IllegalStateException("Hash table is full");
+        }
+        versions[slot] = version;
+        values.set(slot, value);
+        keys.set(slot, key);
+        size++;
+        return true;
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean needsGrow() {
+    return (size + 1) * 2 > keys.length();
+  }
+
+  /**
+   * copy the table into a table twice as large.
+   *
+   * @return LongIntHashTable
+   */
+  LongIntHashTable grow() {
+    LongIntHashTable grown = new LongIntHashTable(keys.length());
+    for (int slot = 0; slot < keys.length(); slot++) {
+      long key = keys.get(slot);
+      if (key != EMPTY) {
+        grown.put(key, values.get(slot), versions[slot]);
+      }
+    }
+    return grown;
+  }
+
+  /**
+   * visit every key, value and version, in slot order.
+   *
+   * @param visitor EntryVisitor
+   */
+  void forEach(EntryVisitor visitor) {
+    for (int slot = 0; slot < keys.length(); slot++) {
+      long key = keys.get(slot);
+      if (key != EMPTY) {
+        visitor.visit(key, values.get(slot), versions[slot]);
+      }
+    }
+  }
+
+  private int slotOf(long key) {
+    // Fibonacci hashing, product ids are sequential
+    return (int) ((key * GOLDEN_RATIO) >>> shift);
+  }
+
+  @FunctionalInterface
+  interface EntryVisitor {
+
+    void visit(long key, int value, long version);
+  }
+}
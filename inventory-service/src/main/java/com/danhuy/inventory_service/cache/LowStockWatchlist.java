@@ -0,0 +1,154 @@
+package com.danhuy.inventory_service.cache;
+
+import com.danhuy.inventory_service.entity.Inventory;
+import com.danhuy.inventory_service.repository.InventoryRepository;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+/**
+ * Redis sorted set of every product scored by its available quantity, so products under a
+ * threshold are read with ZRANGEBYSCORE (O(log n + page)) instead of scanning the inventory table.
+ * Inside a transaction, changes are written once after commit. Transactions commit and write in
+ * any order: a score is only replaced by one of a newer inventory row version (kept in a hash next
+ * to the set), so an older write landing last is ignored.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LowStockWatchlist {
+
+  private static final String WATCHLIST_KEY = "inventory:low-stock";
+  private static final String VERSIONS_KEY = "inventory:low-stock:versions";
+  // ARGV: (member, score, version) per product
+  private static final RedisScript<Long> ADD_IF_NEWER = new DefaultRedisScript<>(
+      "local written = 0 "
+          + "for i = 1, #ARGV, 3 do "
+          + "local current = redis.call('hget', KEYS[2], ARGV[i]) "
+          + "if not current or tonumber(current) < tonumber(ARGV[i + 2]) then "
+          + "redis.call('hset', KEYS[2], ARGV[i], ARGV[i + 2]) "
+          + "redis.call('zadd', KEYS[1], ARGV[i + 1], ARGV[i]) "
+          + "written = written + 1 end end "
+          + "return written", Long.class);
+
+  private final RedisTemplate<String, Object> redisTemplate;
+  private final InventoryRepository inventoryRepository;
+
+  @Value("${inventory.low-stock.watchlist-enabled:true}")
+  private boolean enabled;
+
+  @Value("${inventory.low-stock.rebuild-page-size:1000}")
+  private int rebuildPageSize;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * record the available quantity of a product.
+   *
+   * @param productId         Long
+   * @param availableQuantity long
+   * @param version           LongSupplier version of the inventory row, read after commit
+   */
+  public void track(Long productId, long availableQuantity, LongSupplier version) {
+    if (enabled) {
+      AfterCommitChanges.collect(this, productId, new Level(availableQuantity, version),
+          this::write);
+    }
+  }
+
+  /**
+   * get product ids whose available quantity is below or equal to the threshold, lowest first.
+   *
+   * @param threshold int
+   * @param offset    long
+   * @param count     int
+   * @return Set<Long> product ids in order
+   */
+  public Set<Long> findProductIds(int threshold, long offset, int count) {
+    Set<Object> members = redisTemplate.opsForZSet()
+        .rangeByScore(WATCHLIST_KEY, Double.NEGATIVE_INFINITY, threshold, offset, count);
+    if (members == null) {
+      return Set.of();
+    }
+    return members.stream()
+        .map(member -> ((Number) member).longValue())
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+  }
+
+  /**
+   * count products whose available quantity is below or equal to the threshold.
+   *
+   * @param threshold int
+   * @return long
+   */
+  public long count(int threshold) {
+    Long count = redisTemplate.opsForZSet().count(WATCHLIST_KEY, Double.NEGATIVE_INFINITY,
+        threshold);
+    return count == null ? 0 : count;
+  }
+
+  /**
+   * fill the watchlist from the inventory table when it does not exist yet (first start, Redis
+   * flushed).
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuildIfMissing() {
+    if (!enabled || Boolean.TRUE.equals(redisTemplate.hasKey(WATCHLIST_KEY))) {
+      return;
+    }
+    // versions left behind would reject the rebuilt scores
+    redisTemplate.delete(VERSIONS_KEY);
+
+    PageRequest pageRequest = PageRequest.of(0, rebuildPageSize, Sort.by("id"));
+    Page<Inventory> page;
+    do {
+      page = inventoryRepository.findAll(pageRequest);
+      write(page.getContent().stream().collect(Collectors.toMap(Inventory::getProductId,
+          inventory -> new Level(inventory.getQuantity() - inventory.getReservedQuantity(),
+              inventory::getVersion))));
+      pageRequest = pageRequest.next();
+    } while (page.hasNext());
+    log.info("Low-stock watchlist rebuilt with {} products", page.getTotalElements());
+  }
+
+  private void write(Map<Long, Level> changes) {
+    if (changes.isEmpty()) {
+      return;
+    }
+    try {
+      // one script call for all changes
+      List<Object> args = new ArrayList<>(changes.size() * 3);
+      changes.forEach((productId, level) -> {
+        args.add(productId);
+        args.add(level.availableQuantity());
+        args.add(level.version().getAsLong());
+      });
+      redisTemplate.execute(ADD_IF_NEWER, List.of(WATCHLIST_KEY, VERSIONS_KEY), args.toArray());
+    } catch (Exception e) {
+      // the watchlist is rebuilt from the table, do not fail the stock movement
+      log.error("Error updating low-stock watchlist for products {}", changes.keySet(), e);
+    }
+  }
+
+  private record Level(long availableQuantity, LongSupplier version) {
+
+  }
+}
@@ -2,9 +2,12 @@ package com.danhuy.inventory_service.config;
 
 import org.apache.kafka.clients.admin.NewTopic;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
 
 @Configuration
 public class KafkaConfig {
@@ -21,6 +24,24 @@ public class KafkaConfig {
   @Value("${kafka.topics.inventory-update-result}")
   private String INVENTORY_UPDATE_RESULT;
 
+  @Value("${kafka.topics.inventory-updated}")
+  private String INVENTORY_UPDATED;
+
+  /**
+   * Listener container factory delivering a whole poll to the listener (batch listener).
+   */
+  @Bean
+  public ConcurrentKafkaListenerContainerFactory<Object, Object>
+      batchKafkaListenerContainerFactory(
+      ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+      ConsumerFactory<Object, Object> kafkaConsumerFactory) {
+    ConcurrentKafkaListenerContainerFactory<Object, Object> factory =
+        new ConcurrentKafkaListenerContainerFactory<>();
+    configurer.configure(factory, kafkaConsumerFactory);
+    factory.setBatchListener(true);
+    return factory;
+  }
+
   @Bean
   public NewTopic inventoryCheckTopic() {
     return TopicBuilder.name(INVENTORY_CHECK)
@@ -52,4 +73,14 @@ public class KafkaConfig {
         .replicas(1)
         .build();
   }
+
+  // latest stock per product, older events of a product are compacted away
+  @Bean
+  public NewTopic inventoryUpdatedTopic() {
+    return TopicBuilder.name(INVENTORY_UPDATED)
+        .partitions(3)
+        .replicas(1)
+        .compact()
+        .build();
+  }
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.danhuy.inventory_service.config;
+
+import com.danhuy.inventory_service.cache.InventoryNearCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+public class RedisListenerConfig {
+
+  /**
+   * Subscribe to L1 cache invalidations broadcast by the other inventory-service nodes.
+   */
+  @Bean
+  public RedisMessageListenerContainer redisMessageListenerContainer(
+      RedisConnectionFactory connectionFactory, InventoryNearCache inventoryNearCache) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(connectionFactory);
+    if (inventoryNearCache.isEnabled()) {
+      container.addMessageListener(inventoryNearCache,
+          new ChannelTopic(inventoryNearCache.getChannel()));
+    }
+    return container;
+  }
+}
@@ -1,25 +1,41 @@
 package com.danhuy.inventory_service.controller;
 
+import com.danhuy.common_service.dto.CommittedHoldDto;
+import com.danhuy.common_service.dto.StockLevelDto;
 import com.danhuy.common_service.enums.MessageEnum;
 import com.danhuy.common_service.response.ApiResponse;
 import com.danhuy.common_service.uilts.PagingTransferUtils;
+import com.danhuy.inventory_service.dto.AvailabilityRequest;
+import com.danhuy.inventory_service.dto.BulkImportResponse;
 import com.danhuy.inventory_service.dto.InventoryRequest;
 import com.danhuy.inventory_service.dto.InventoryResponse;
+import com.danhuy.inventory_service.dto.MovementResponse;
+import com.danhuy.inventory_service.enums.ImportFormat;
+import com.danhuy.inventory_service.service.InventoryImportService;
 import com.danhuy.inventory_service.service.InventoryService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.List;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -30,6 +46,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class InventoryController {
 
   private final InventoryService inventoryService;
+  private final InventoryImportService inventoryImportService;
 
   @PostMapping
   public ResponseEntity<ApiResponse<InventoryResponse>> createInventory(
@@ -43,6 +60,21 @@ public class InventoryController {
     return new ResponseEntity<>(apiResponse, HttpStatus.CREATED);
   }
 
+  @PostMapping(value = "/bulk", consumes = {"text/csv", "application/x-ndjson"})
+  public ResponseEntity<ApiResponse<BulkImportResponse>> importInventory(
+      @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+      InputStream body) throws IOException {
+    ImportFormat format = "csv".equalsIgnoreCase(contentType.getSubtype())
+        ? ImportFormat.CSV : ImportFormat.NDJSON;
+    BulkImportResponse summary = inventoryImportService.importInventory(body, format);
+
+    ApiResponse<BulkImportResponse> apiResponse = new ApiResponse<>();
+    apiResponse.setCode(MessageEnum.IMPORT_INVENTORY_SUCCESS.getCode());
+    apiResponse.setMessage(MessageEnum.IMPORT_INVENTORY_SUCCESS.getMessage());
+    apiResponse.setResult(summary);
+    return ResponseEntity.ok(apiResponse);
+  }
+
   @PutMapping("/{productId}")
   public ResponseEntity<ApiResponse<InventoryResponse>> updateInventory(
       @PathVariable Long productId,
@@ -66,6 +98,14 @@ public class InventoryController {
     return ResponseEntity.ok(apiResponse);
   }
 
+  @PostMapping("/availability")
+  public ResponseEntity<ApiResponse<List<InventoryResponse>>> getAvailability(
+      @Valid @RequestBody AvailabilityRequest request) {
+    ApiResponse<List<InventoryResponse>> apiResponse = new ApiResponse<>();
+    apiResponse.setResult(inventoryService.getAvailability(request.getProductIds()));
+    return ResponseEntity.ok(apiResponse);
+  }
+
   @GetMapping
   public ResponseEntity<ApiResponse<List<InventoryResponse>>> getAllInventory(
       @RequestParam(defaultValue = "0") int page,
@@ -88,11 +128,57 @@ public class InventoryController {
     return ResponseEntity.ok(inventoryService.isInStock(productId, quantity));
   }
 
+  @GetMapping("/stock-levels")
+  public ResponseEntity<ApiResponse<List<StockLevelDto>>> getStockLevels(
+      @RequestParam(defaultValue = "0") long afterProductId,
+      @RequestParam(defaultValue = "9223372036854775807") long toProductId,
+      @RequestParam(defaultValue = "1000") @Min(1) @Max(5000) int size) {
+    ApiResponse<List<StockLevelDto>> apiResponse = new ApiResponse<>();
+    apiResponse.setResult(inventoryService.getStockLevels(afterProductId, toProductId, size));
+    return ResponseEntity.ok(apiResponse);
+  }
+
+  @GetMapping("/holds/committed")
+  public ResponseEntity<ApiResponse<List<CommittedHoldDto>>> getCommittedHolds(
+      @RequestParam @DateTimeFormat(iso = ISO.DATE_TIME) LocalDateTime afterCommittedAt,
+      @RequestParam(defaultValue = "0") long afterId,
+      @RequestParam(defaultValue = "1000") @Min(1) @Max(5000) int size) {
+    ApiResponse<List<CommittedHoldDto>> apiResponse = new ApiResponse<>();
+    apiResponse.setResult(inventoryService.getCommittedHolds(afterCommittedAt, afterId, size));
+    return ResponseEntity.ok(apiResponse);
+  }
+
+  @GetMapping("/{productId}/movements")
+  public ResponseEntity<ApiResponse<List<MovementResponse>>> getMovements(
+      @PathVariable Long productId,
+      @RequestParam @DateTimeFormat(iso = ISO.DATE_TIME) LocalDateTime from,
+      @RequestParam @DateTimeFormat(iso = ISO.DATE_TIME) LocalDateTime to,
+      @RequestParam(defaultValue = "0") int page,
+      @RequestParam(defaultValue = "100") @Min(1) @Max(1000) int size) {
+    Pageable pageable = PageRequest.of(page, size);
+    Page<MovementResponse> movements = inventoryService.getMovements(productId, from, to,
+        pageable);
+
+    ApiResponse<List<MovementResponse>> apiResponse = new ApiResponse<>();
+    apiResponse.setResult(movements.getContent());
+    // meta data
+    apiResponse.setMetadata(PagingTransferUtils.transfersPagingToMetaData(movements));
+    return ResponseEntity.ok(apiResponse);
+  }
+
   @GetMapping("/low-stock")
   public ResponseEntity<ApiResponse<List<InventoryResponse>>> getLowStockProducts(
-      @RequestParam(defaultValue = "5") Integer threshold) {
+      @RequestParam(defaultValue = "5") Integer threshold,
+      @RequestParam(defaultValue = "0") int page,
+      @RequestParam(defaultValue = "10") int size) {
+    Pageable pageable = PageRequest.of(page, size);
+    Page<InventoryResponse> inventories = inventoryService.getLowStockProducts(threshold,
+        pageable);
+
     ApiResponse<List<InventoryResponse>> apiResponse = new ApiResponse<>();
-    apiResponse.setResult(inventoryService.getLowStockProducts(threshold));
+    apiResponse.setResult(inventories.getContent());
+    // meta data
+    apiResponse.setMetadata(PagingTransferUtils.transfersPagingToMetaData(inventories));
     return ResponseEntity.ok(apiResponse);
   }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.danhuy.inventory_service.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AvailabilityRequest {
+
+  @NotEmpty
+  @Size(max = 200)
+  private List<@NotNull Long> productIds;
+}
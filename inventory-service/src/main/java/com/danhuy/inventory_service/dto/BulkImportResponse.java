@@ -0,0 +1,33 @@
+package com.danhuy.inventory_service.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkImportResponse {
+
+  private long processedLines;
+  private long importedRows;
+  private long failedRows;
+  @Builder.Default
+  private List<LineError> errors = new ArrayList<>();
+  // more errors than the configured maximum, only the first ones are listed
+  private boolean errorsTruncated;
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  @Builder
+  public static class LineError {
+
+    private long line;
+    private String message;
+  }
+}
@@ -18,4 +18,5 @@ public class InventoryResponse {
   private Integer reservedQuantity;
   private Integer availableQuantity;
   private LocalDateTime updatedAt;
+  private Long version;
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.danhuy.inventory_service.dto;
+
+import com.danhuy.inventory_service.enums.MovementType;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MovementResponse {
+
+  private Long id;
+  private Long productId;
+  private MovementType type;
+  // moved amount, or the new total quantity for CREATE / UPDATE / IMPORT
+  private Integer quantity;
+  private String orderId;
+  // stock right after the movement, null when unknown (sharded product, reservation engine)
+  private Integer quantityAfter;
+  private Integer reservedQuantityAfter;
+  private LocalDateTime createdAt;
+}
@@ -0,0 +1,12 @@
+package com.danhuy.inventory_service.dto;
+
+/**
+ * Available quantity of a product, read without loading the inventory entity.
+ *
+ * @param productId         id of product
+ * @param availableQuantity quantity minus reserved quantity
+ * @param version           version of the inventory row
+ */
+public record ProductAvailability(Long productId, Integer availableQuantity, Long version) {
+
+}
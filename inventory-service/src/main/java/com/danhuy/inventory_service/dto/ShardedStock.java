@@ -0,0 +1,13 @@
+package com.danhuy.inventory_service.dto;
+
+/**
+ * Stock of a sharded product, aggregated from its buckets.
+ *
+ * @param quantity         root of quantity, null when the product has no buckets
+ * @param reservedQuantity reserved quantity
+ * @param version          version of the inventory row plus the versions of the buckets, grows
+ *                         with every bucket movement
+ */
+public record ShardedStock(Long quantity, Long reservedQuantity, Long version) {
+
+}
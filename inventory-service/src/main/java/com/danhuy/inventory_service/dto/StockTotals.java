@@ -0,0 +1,14 @@
+package com.danhuy.inventory_service.dto;
+
+/**
+ * Aggregated stock of a product.
+ *
+ * @param quantity         root of quantity
+ * @param reservedQuantity reserved quantity
+ */
+public record StockTotals(Long quantity, Long reservedQuantity) {
+
+  public long availableQuantity() {
+    return quantity - reservedQuantity;
+  }
+}
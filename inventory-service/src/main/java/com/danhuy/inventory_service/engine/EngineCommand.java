@@ -0,0 +1,32 @@
+package com.danhuy.inventory_service.engine;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stock movement handled by the writer thread of an engine partition. The same record is written to
+ * and replayed from the engine log.
+ *
+ * @param type      CommandType
+ * @param orderId   order of the movement, empty for SET_QUANTITY
+ * @param items     products and quantities owned by the partition
+ * @param timestamp epoch millis the command was accepted at, a RESERVE hold expires from it
+ * @param result    completed by the writer thread once the command is durable, with whether it
+ *                  changed the state (false for a redelivered command), null on replay
+ */
+record EngineCommand(CommandType type, String orderId, List<Item> items, long timestamp,
+                     CompletableFuture<Boolean> result) {
+
+  enum CommandType {
+    RESERVE,
+    COMMIT,
+    RELEASE,
+    SET_QUANTITY,
+    // hold released by the expiry sweeper; last, the log stores the ordinal
+    EXPIRE
+  }
+
+  record Item(long productId, int quantity) {
+
+  }
+}
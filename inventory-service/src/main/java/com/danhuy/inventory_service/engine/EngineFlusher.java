@@ -0,0 +1,118 @@
+package com.danhuy.inventory_service.engine;
+
+import com.danhuy.inventory_service.cache.LowStockWatchlist;
+import com.danhuy.inventory_service.engine.EngineSnapshot.Stock;
+import com.danhuy.inventory_service.enums.HoldStatus;
+import com.danhuy.inventory_service.kafka.StockChangePublisher;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Write-behind of the reservation engine: persist a partition snapshot with JDBC batches and move
+ * the partition checkpoint in the same transaction.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class EngineFlusher {
+
+  private static final String UPDATE_INVENTORY =
+      "UPDATE inventory SET quantity = ?, reserved_quantity = ?, version = version + 1, "
+          + "updated_at = ? WHERE product_id = ?";
+  private static final String SELECT_VERSIONS =
+      "SELECT product_id, version FROM inventory WHERE product_id IN (%s)";
+  private static final String UPSERT_HOLD =
+      "INSERT INTO reservation_hold (order_id, product_id, quantity, status, expires_at, "
+          + "committed_at, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?) "
+          + "ON DUPLICATE KEY UPDATE quantity = VALUES(quantity), status = VALUES(status), "
+          + "committed_at = COALESCE(committed_at, VALUES(committed_at)), "
+          + "updated_at = VALUES(updated_at)";
+  private static final String UPDATE_CHECKPOINT =
+      "UPDATE engine_checkpoint SET last_seq = ? WHERE partition_no = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final LowStockWatchlist lowStockWatchlist;
+  private final StockChangePublisher stockChangePublisher;
+
+  @Value("${inventory.engine.flush-batch-size:500}")
+  private int batchSize;
+
+  @Value("${inventory.reservation.hold-ttl-minutes:30}")
+  private long holdTtlMinutes;
+
+  /**
+   * persist the snapshot of a partition.
+   *
+   * @param snapshot EngineSnapshot
+   */
+  @Transactional
+  public void flush(EngineSnapshot snapshot) {
+    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+    long holdTtlMillis = TimeUnit.MINUTES.toMillis(holdTtlMinutes);
+
+    jdbcTemplate.batchUpdate(UPDATE_INVENTORY, snapshot.stocks(), batchSize, (ps, stock) -> {
+      ps.setInt(1, stock.quantity());
+      ps.setInt(2, stock.reservedQuantity());
+      ps.setTimestamp(3, now);
+      ps.setLong(4, stock.productId());
+    });
+    Map<Long, Long> versions = readVersions(snapshot.stocks());
+    snapshot.stocks().forEach(stock -> {
+      long version = versions.getOrDefault(stock.productId(), 0L);
+      lowStockWatchlist.track(stock.productId(), stock.quantity() - stock.reservedQuantity(),
+          () -> version);
+      stockChangePublisher.publish(stock.productId(), stock.quantity(), stock.reservedQuantity(),
+          () -> version);
+    });
+
+    // expires_at is only set when the hold is inserted, counted from the reservation: a late
+    // flush or a replay after a crash does not extend the hold. committed_at is only set once, a
+    // flushed again hold keeps its place in the units-sold feed
+    jdbcTemplate.batchUpdate(UPSERT_HOLD, snapshot.holds(), batchSize, (ps, hold) -> {
+      ps.setString(1, hold.orderId());
+      ps.setLong(2, hold.productId());
+      ps.setInt(3, hold.quantity());
+      ps.setString(4, hold.status().name());
+      ps.setTimestamp(5, new Timestamp(hold.reservedAt() + holdTtlMillis));
+      ps.setTimestamp(6, hold.status() == HoldStatus.COMMITTED ? now : null);
+      ps.setTimestamp(7, now);
+      ps.setTimestamp(8, now);
+    });
+
+    jdbcTemplate.update(UPDATE_CHECKPOINT, snapshot.lastSeq(), snapshot.partitionNo());
+    log.debug("Engine partition {} flushed up to seq {}: {} stocks, {} holds",
+        snapshot.partitionNo(), snapshot.lastSeq(), snapshot.stocks().size(),
+        snapshot.holds().size());
+  }
+
+  /**
+   * read the versions of the inventory rows just updated, sent with their stock.
+   *
+   * @param stocks List<Stock>
+   * @return Map<Long, Long> version by product id
+   */
+  private Map<Long, Long> readVersions(List<Stock> stocks) {
+    Map<Long, Long> versions = new HashMap<>();
+    for (int from = 0; from < stocks.size(); from += batchSize) {
+      List<Stock> chunk = stocks.subList(from, Math.min(stocks.size(), from + batchSize));
+      jdbcTemplate.query(
+          SELECT_VERSIONS.formatted(String.join(",", Collections.nCopies(chunk.size(), "?"))),
+          rs -> {
+            versions.put(rs.getLong(1), rs.getLong(2));
+          },
+          chunk.stream().map(Stock::productId).toArray());
+    }
+    return versions;
+  }
+}
@@ -0,0 +1,241 @@
+package com.danhuy.inventory_service.engine;
+
+import com.danhuy.inventory_service.engine.EngineCommand.CommandType;
+import com.danhuy.inventory_service.engine.EngineCommand.Item;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only log of the commands applied by one engine partition, split into segment files named
+ * by their first sequence. Segments already persisted in the database are deleted.
+ *
+ * <p>A record is its length, the CRC32 of its body and the body (sequence, command). Replay stops
+ * a segment at the first record cut short or failing its CRC: a torn write that was never
+ * acknowledged. The torn tail is cut off, so records appended to the segment again follow the last
+ * good one.
+ */
+@Slf4j
+class EngineLog implements Closeable {
+
+  private static final String SUFFIX = ".log";
+  // far above any real record, a bigger length is a torn write
+  private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+  private final Path dir;
+  private final String prefix;
+  private final int segmentSize;
+  // first sequence of every segment file, oldest first
+  private final Deque<Long> segments = new ArrayDeque<>();
+  // body of the record being appended, reused
+  private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+  private final DataOutputStream bodyOut = new DataOutputStream(body);
+  private final CRC32 crc = new CRC32();
+
+  private FileOutputStream fileOut;
+  private DataOutputStream out;
+  private int recordsInSegment;
+
+  EngineLog(Path dir, int partitionNo, int segmentSize) throws IOException {
+    this.dir = Files.createDirectories(dir);
+    this.prefix = "partition-" + partitionNo + "-";
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * replay all records after a sequence, oldest first.
+   *
+   * @param afterSeq long
+   * @param consumer sequence and command
+   * @return last sequence found in the log, or afterSeq
+   */
+  long replay(long afterSeq, BiConsumer<Long, EngineCommand> consumer) throws IOException {
+    long lastSeq = afterSeq;
+    for (long firstSeq : listSegments()) {
+      segments.addLast(firstSeq);
+      Path segment = segmentPath(firstSeq);
+      long validBytes = 0;
+      try (DataInputStream in = new DataInputStream(
+          new BufferedInputStream(Files.newInputStream(segment)))) {
+        while (true) {
+          byte[] record = readRecord(in);
+          if (record == null) {
+            break;
+          }
+          validBytes += 2 * Integer.BYTES + record.length;
+          DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+          long seq = recordIn.readLong();
+          EngineCommand command = read(recordIn);
+          if (seq > lastSeq) {
+            consumer.accept(seq, command);
+            lastSeq = seq;
+          }
+        }
+      }
+      if (validBytes < Files.size(segment)) {
+        log.warn("Engine log segment {} ends with a torn record, truncated to {} bytes", segment,
+            validBytes);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+          channel.truncate(validBytes);
+        }
+      }
+    }
+    return lastSeq;
+  }
+
+  /**
+   * start a new segment, records are appended to it from now on.
+   *
+   * @param firstSeq long
+   */
+  void openSegment(long firstSeq) throws IOException {
+    closeSegment();
+    fileOut = new FileOutputStream(segmentPath(firstSeq).toFile(), true);
+    out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+    if (segments.isEmpty() || segments.peekLast() != firstSeq) {
+      segments.addLast(firstSeq);
+    }
+    recordsInSegment = 0;
+  }
+
+  void append(long seq, EngineCommand command) throws IOException {
+    if (recordsInSegment >= segmentSize) {
+      sync();
+      openSegment(seq);
+    }
+    body.reset();
+    bodyOut.writeLong(seq);
+    bodyOut.writeByte(command.type().ordinal());
+    bodyOut.writeLong(command.timestamp());
+    bodyOut.writeUTF(command.orderId());
+    bodyOut.writeInt(command.items().size());
+    for (Item item : command.items()) {
+      bodyOut.writeLong(item.productId());
+      bodyOut.writeInt(item.quantity());
+    }
+    crc.reset();
+    crc.update(body.toByteArray(), 0, body.size());
+
+    out.writeInt(body.size());
+    out.writeInt((int) crc.getValue());
+    body.writeTo(out);
+    recordsInSegment++;
+  }
+
+  /**
+   * write buffered records and force them to disk.
+   */
+  void sync() throws IOException {
+    out.flush();
+    fileOut.getChannel().force(false);
+  }
+
+  /**
+   * delete segments whose records are all persisted, i.e. the next segment starts at or before
+   * durableSeq + 1. The current segment is never deleted.
+   *
+   * @param durableSeq long
+   */
+  void deleteUpTo(long durableSeq) {
+    while (segments.size() > 1) {
+      long oldest = segments.pollFirst();
+      long next = segments.peekFirst();
+      if (next > durableSeq + 1) {
+        segments.addFirst(oldest);
+        return;
+      }
+      try {
+        Files.deleteIfExists(segmentPath(oldest));
+      } catch (IOException e) {
+        log.warn("Cannot delete engine log segment {}", segmentPath(oldest), e);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    closeSegment();
+  }
+
+  private void closeSegment() throws IOException {
+    if (out != null) {
+      sync();
+      out.close();
+      out = null;
+      fileOut = null;
+    }
+  }
+
+  /**
+   * read the next record of a segment.
+   *
+   * @return body of the record, null at the end of the segment or at a torn record
+   */
+  private byte[] readRecord(DataInputStream in) throws IOException {
+    byte[] bytes;
+    int checksum;
+    try {
+      int size = in.readInt();
+      if (size <= 0 || size > MAX_RECORD_SIZE) {
+        return null;
+      }
+      checksum = in.readInt();
+      bytes = new byte[size];
+      in.readFully(bytes);
+    } catch (EOFException e) {
+      // end of segment, or a record cut short
+      return null;
+    }
+    CRC32 recordCrc = new CRC32();
+    recordCrc.update(bytes);
+    return (int) recordCrc.getValue() == checksum ? bytes : null;
+  }
+
+  private EngineCommand read(DataInputStream in) throws IOException {
+    CommandType type = CommandType.values()[in.readByte()];
+    long timestamp = in.readLong();
+    String orderId = in.readUTF();
+    int size = in.readInt();
+    List<Item> items = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      items.add(new Item(in.readLong(), in.readInt()));
+    }
+    return new EngineCommand(type, orderId, items, timestamp, null);
+  }
+
+  private List<Long> listSegments() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files
+          .map(path -> path.getFileName().toString())
+          .filter(name -> name.startsWith(prefix) && name.endsWith(SUFFIX))
+          .map(name -> Long.parseLong(name.substring(prefix.length(),
+              name.length() - SUFFIX.length())))
+          .sorted(Comparator.naturalOrder())
+          .toList();
+    }
+  }
+
+  private Path segmentPath(long firstSeq) {
+    return dir.resolve(prefix + firstSeq + SUFFIX);
+  }
+}
@@ -0,0 +1,439 @@
+package com.danhuy.inventory_service.engine;
+
+import com.danhuy.common_service.enums.MessageEnum;
+import com.danhuy.common_service.exception.ex.AppException;
+import com.danhuy.inventory_service.engine.EngineCommand.Item;
+import com.danhuy.inventory_service.engine.EngineSnapshot.Hold;
+import com.danhuy.inventory_service.engine.EngineSnapshot.Stock;
+import com.danhuy.inventory_service.entity.ReservationHold;
+import com.danhuy.inventory_service.enums.HoldStatus;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One partition of the reservation engine. A single writer thread owns the stock and holds of the
+ * products of this partition: it applies commands without locks, appends them to the engine log,
+ * forces the log once per batch and only then acknowledges them. Changed stock is written behind
+ * into the database by {@link EngineFlusher}.
+ */
+@Slf4j
+class EnginePartition implements Runnable {
+
+  private static final int MAX_BATCH = 256;
+
+  private final int partitionNo;
+  private final EngineLog engineLog;
+  private final EngineFlusher engineFlusher;
+  private final LongFunction<StockCounter> stockLoader;
+  private final Function<String, HoldStatus> consumedStatusLoader;
+  private final BlockingQueue<EngineCommand> queue;
+  private final long flushIntervalMillis;
+  private final int flushBatchSize;
+  private final ExecutorService flushExecutor;
+
+  private final Map<Long, StockCounter> stocks = new ConcurrentHashMap<>();
+  // orderId -> hold of the order, only touched by the writer thread
+  private final Map<String, OrderHold> holds = new HashMap<>();
+  // orderId -> how its hold ended, latest orders only, only touched by the writer thread
+  private final Map<String, HoldStatus> consumedOrders;
+  private final Set<Long> dirtyStocks = new HashSet<>();
+  private final Map<HoldKey, Hold> dirtyHolds = new HashMap<>();
+  private final Queue<EngineSnapshot> failedFlushes = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean flushInFlight = new AtomicBoolean();
+
+  private volatile long durableSeq;
+  private volatile boolean running;
+  private volatile boolean failed;
+  private long seq;
+  private long lastFlushNanos;
+  private Thread writer;
+
+  EnginePartition(int partitionNo, EngineLog engineLog, EngineFlusher engineFlusher,
+      LongFunction<StockCounter> stockLoader, Function<String, HoldStatus> consumedStatusLoader,
+      int queueCapacity, long flushIntervalMillis, int flushBatchSize,
+      int consumedOrdersCapacity) {
+    this.partitionNo = partitionNo;
+    this.engineLog = engineLog;
+    this.engineFlusher = engineFlusher;
+    this.stockLoader = stockLoader;
+    this.consumedStatusLoader = consumedStatusLoader;
+    this.consumedOrders = new LinkedHashMap<>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, HoldStatus> eldest) {
+        return size() > consumedOrdersCapacity;
+      }
+    };
+    this.queue = new LinkedBlockingQueue<>(queueCapacity);
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.flushBatchSize = flushBatchSize;
+    this.flushExecutor = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "inventory-engine-flush-" + partitionNo));
+  }
+
+  /**
+   * Rebuild the state: start from the database (persisted up to checkpointSeq), then replay the
+   * log after the checkpoint.
+   *
+   * @param initialStocks stock of the products of this partition in the database
+   * @param initialHolds  holds of this partition in the database
+   * @param checkpointSeq last sequence persisted in the database
+   */
+  void recover(Map<Long, StockCounter> initialStocks, List<ReservationHold> initialHolds,
+      long checkpointSeq) throws IOException {
+    stocks.putAll(initialStocks);
+    for (ReservationHold hold : initialHolds) {
+      // already in the database, its expiresAt is kept as is
+      long reservedAt = hold.getCreatedAt() == null ? 0L
+          : hold.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+      holds.computeIfAbsent(hold.getOrderId(),
+              orderId -> new OrderHold(reservedAt, new LinkedHashMap<>()))
+          .items().put(hold.getProductId(), hold.getQuantity());
+    }
+
+    durableSeq = checkpointSeq;
+    seq = engineLog.replay(checkpointSeq, (replayedSeq, command) -> {
+      try {
+        apply(command);
+      } catch (AppException e) {
+        log.warn("Engine partition {} skipped seq {} on replay: {}", partitionNo, replayedSeq,
+            e.getMessage());
+      }
+    });
+    engineLog.openSegment(seq + 1);
+    log.info("Engine partition {} recovered {} products, checkpoint {}, replayed up to seq {}",
+        partitionNo, stocks.size(), checkpointSeq, seq);
+  }
+
+  void start() {
+    running = true;
+    lastFlushNanos = System.nanoTime();
+    writer = new Thread(this, "inventory-engine-" + partitionNo);
+    writer.start();
+  }
+
+  /**
+   * stop the writer thread after the queued commands, then persist what is left.
+   */
+  void stop() throws InterruptedException {
+    running = false;
+    writer.join();
+    flushExecutor.shutdown();
+    flushExecutor.awaitTermination(30, TimeUnit.SECONDS);
+
+    requeueFailedFlushes();
+    if (!failed && (!dirtyStocks.isEmpty() || !dirtyHolds.isEmpty())) {
+      try {
+        engineFlusher.flush(takeSnapshot());
+      } catch (Exception e) {
+        // everything is in the log, the next start replays it
+        log.error("Engine partition {} final flush failed", partitionNo, e);
+      }
+    }
+    try {
+      engineLog.close();
+    } catch (IOException e) {
+      log.error("Engine partition {} cannot close its log", partitionNo, e);
+    }
+  }
+
+  /**
+   * queue a command for the writer thread.
+   *
+   * @param command EngineCommand
+   * @return future completed once the command is durable, true if it changed the state
+   */
+  CompletableFuture<Boolean> submit(EngineCommand command) {
+    if (!running || !queue.offer(command)) {
+      command.result().completeExceptionally(
+          new IllegalStateException("Reservation engine partition " + partitionNo + " is busy"));
+    }
+    return command.result();
+  }
+
+  /**
+   * queue a compensation for the writer thread. Unlike {@link #submit}, waits for room in a full
+   * queue: a dropped compensation would leave stock reserved until the hold expires.
+   *
+   * @param command EngineCommand
+   * @return future completed once the command is durable, true if it changed the state
+   */
+  CompletableFuture<Boolean> submitCompensation(EngineCommand command) {
+    try {
+      if (running) {
+        queue.put(command);
+        return command.result();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    command.result().completeExceptionally(
+        new IllegalStateException("Reservation engine partition " + partitionNo + " is stopped"));
+    return command.result();
+  }
+
+  StockCounter getStock(long productId) {
+    return stocks.get(productId);
+  }
+
+  @Override
+  public void run() {
+    List<EngineCommand> batch = new ArrayList<>(MAX_BATCH);
+    while (running || !queue.isEmpty()) {
+      try {
+        EngineCommand first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          batch.add(first);
+          queue.drainTo(batch, MAX_BATCH - 1);
+          process(batch);
+          batch.clear();
+        }
+        flushIfDue();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        log.error("Engine partition {} writer error", partitionNo, e);
+      }
+    }
+  }
+
+  private void process(List<EngineCommand> batch) {
+    List<RuntimeException> errors = new ArrayList<>(batch.size());
+    List<Boolean> changes = new ArrayList<>(batch.size());
+    try {
+      for (EngineCommand command : batch) {
+        try {
+          boolean changed = apply(command);
+          if (changed) {
+            engineLog.append(++seq, command);
+          }
+          changes.add(changed);
+          errors.add(null);
+        } catch (RuntimeException e) {
+          changes.add(false);
+          errors.add(e);
+        }
+      }
+      // group commit: one fsync for the whole batch
+      engineLog.sync();
+    } catch (IOException e) {
+      // memory is ahead of the log now, refuse everything until restart rebuilds the state
+      log.error("Engine partition {} cannot write its log, stopping", partitionNo, e);
+      failed = true;
+      running = false;
+      queue.drainTo(batch);
+      batch.forEach(command -> command.result().completeExceptionally(e));
+      return;
+    }
+
+    for (int i = 0; i < batch.size(); i++) {
+      RuntimeException error = errors.get(i);
+      if (error == null) {
+        batch.get(i).result().complete(changes.get(i));
+      } else {
+        batch.get(i).result().completeExceptionally(error);
+      }
+    }
+  }
+
+  /**
+   * apply a command to the in-memory state.
+   *
+   * @param command EngineCommand
+   * @return true if the state changed (the command must be logged)
+   */
+  private boolean apply(EngineCommand command) {
+    return switch (command.type()) {
+      case RESERVE -> reserve(command.orderId(), command.items(), command.timestamp());
+      case COMMIT -> consumeHold(command.orderId(), HoldStatus.COMMITTED);
+      case RELEASE -> consumeHold(command.orderId(), HoldStatus.RELEASED);
+      case EXPIRE -> consumeHold(command.orderId(), HoldStatus.EXPIRED);
+      case SET_QUANTITY -> setQuantity(command.items());
+    };
+  }
+
+  private boolean reserve(String orderId, List<Item> items, long reservedAt) {
+    HoldStatus consumed = consumedOrders.get(orderId);
+    if (holds.containsKey(orderId) || consumed == HoldStatus.COMMITTED) {
+      // redelivered message, already reserved
+      return false;
+    }
+    if (consumed != null) {
+      // redelivered after the hold was released or expired, the order must not hold stock again
+      throw new AppException(MessageEnum.RESERVATION_EXPIRED, orderId);
+    }
+
+    Map<Long, Integer> requested = new LinkedHashMap<>();
+    items.forEach(item -> requested.merge(item.productId(), item.quantity(), Integer::sum));
+
+    // check every item before changing anything
+    for (Map.Entry<Long, Integer> entry : requested.entrySet()) {
+      if (loadStock(entry.getKey()).getAvailableQuantity() < entry.getValue()) {
+        throw new AppException(MessageEnum.NOT_ENOUGH_RESERVE_QUANTITY, entry.getKey());
+      }
+    }
+
+    requested.forEach((productId, quantity) -> {
+      StockCounter stock = stocks.get(productId);
+      setStock(productId, stock.getQuantity(), stock.getReservedQuantity() + quantity);
+      markDirty(new Hold(orderId, productId, quantity, HoldStatus.ACTIVE, reservedAt));
+    });
+    holds.put(orderId, new OrderHold(reservedAt, requested));
+    return true;
+  }
+
+  private boolean consumeHold(String orderId, HoldStatus status) {
+    boolean commit = status == HoldStatus.COMMITTED;
+    OrderHold hold = holds.remove(orderId);
+    if (hold == null) {
+      if (commit && consumedStatus(orderId) != HoldStatus.COMMITTED) {
+        // released or expired first, the stock has gone back to the shelf
+        throw new AppException(MessageEnum.RESERVATION_EXPIRED, orderId);
+      }
+      // redelivered message, already committed / released
+      return false;
+    }
+
+    hold.items().forEach((productId, quantity) -> {
+      StockCounter stock = loadStock(productId);
+      int newQuantity = commit ? Math.max(0, stock.getQuantity() - quantity) : stock.getQuantity();
+      int newReserved = Math.min(Math.max(0, stock.getReservedQuantity() - quantity), newQuantity);
+      setStock(productId, newQuantity, newReserved);
+      markDirty(new Hold(orderId, productId, quantity, status, hold.reservedAt()));
+    });
+    consumedOrders.put(orderId, status);
+    return true;
+  }
+
+  /**
+   * how the hold of an order ended: from memory for the latest orders, else from the database
+   * (written behind, older orders are there).
+   *
+   * @param orderId String
+   * @return HoldStatus, null if the order never held stock
+   */
+  private HoldStatus consumedStatus(String orderId) {
+    HoldStatus status = consumedOrders.get(orderId);
+    return status != null ? status : consumedStatusLoader.apply(orderId);
+  }
+
+  private boolean setQuantity(List<Item> items) {
+    for (Item item : items) {
+      StockCounter stock = loadStock(item.productId());
+      // Make sure reserved quantity is not more than total quantity
+      setStock(item.productId(), item.quantity(),
+          Math.min(stock.getReservedQuantity(), item.quantity()));
+      dirtyStocks.add(item.productId());
+    }
+    return true;
+  }
+
+  private StockCounter loadStock(long productId) {
+    StockCounter stock = stocks.get(productId);
+    if (stock == null) {
+      // product created after the engine started
+      stock = stockLoader.apply(productId);
+      if (stock == null) {
+        throw new AppException(MessageEnum.INVENTORY_NOT_EXISTED, productId);
+      }
+      stocks.put(productId, stock);
+    }
+    return stock;
+  }
+
+  /**
+   * publish the new stock of a product, readers see the whole pair at once.
+   */
+  private void setStock(long productId, int quantity, int reservedQuantity) {
+    stocks.put(productId, new StockCounter(quantity, reservedQuantity));
+  }
+
+  private void markDirty(Hold hold) {
+    dirtyStocks.add(hold.productId());
+    dirtyHolds.put(new HoldKey(hold.orderId(), hold.productId()), hold);
+  }
+
+  private void flushIfDue() {
+    requeueFailedFlushes();
+    engineLog.deleteUpTo(durableSeq);
+
+    if ((dirtyStocks.isEmpty() && dirtyHolds.isEmpty()) || flushInFlight.get()) {
+      return;
+    }
+    long now = System.nanoTime();
+    boolean intervalElapsed =
+        now - lastFlushNanos >= TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    if (!intervalElapsed && dirtyStocks.size() + dirtyHolds.size() < flushBatchSize) {
+      return;
+    }
+
+    EngineSnapshot snapshot = takeSnapshot();
+    lastFlushNanos = now;
+    flushInFlight.set(true);
+    flushExecutor.execute(() -> {
+      try {
+        engineFlusher.flush(snapshot);
+        durableSeq = snapshot.lastSeq();
+      } catch (Exception e) {
+        log.error("Engine partition {} flush up to seq {} failed, will retry", partitionNo,
+            snapshot.lastSeq(), e);
+        failedFlushes.add(snapshot);
+      } finally {
+        flushInFlight.set(false);
+      }
+    });
+  }
+
+  private EngineSnapshot takeSnapshot() {
+    List<Stock> stockChanges = new ArrayList<>(dirtyStocks.size());
+    for (Long productId : dirtyStocks) {
+      StockCounter stock = stocks.get(productId);
+      stockChanges.add(new Stock(productId, stock.getQuantity(), stock.getReservedQuantity()));
+    }
+
+    List<Hold> holdChanges = new ArrayList<>(dirtyHolds.values());
+
+    dirtyStocks.clear();
+    dirtyHolds.clear();
+    return new EngineSnapshot(partitionNo, seq, stockChanges, holdChanges);
+  }
+
+  private void requeueFailedFlushes() {
+    EngineSnapshot failed;
+    while ((failed = failedFlushes.poll()) != null) {
+      failed.stocks().forEach(stock -> dirtyStocks.add(stock.productId()));
+      // keep newer changes of the same hold
+      failed.holds().forEach(hold -> dirtyHolds.putIfAbsent(
+          new HoldKey(hold.orderId(), hold.productId()), hold));
+    }
+  }
+
+  private record HoldKey(String orderId, long productId) {
+
+  }
+
+  // productId -> reserved quantity, reservedAt in epoch millis
+  private record OrderHold(long reservedAt, Map<Long, Integer> items) {
+
+  }
+}
@@ -0,0 +1,23 @@
+package com.danhuy.inventory_service.engine;
+
+import com.danhuy.inventory_service.enums.HoldStatus;
+import java.util.List;
+
+/**
+ * Changes of one partition to write behind into the database, consistent up to lastSeq.
+ *
+ * @param partitionNo  int
+ * @param lastSeq      last log sequence included
+ * @param stocks       new stock of changed products
+ * @param holds        changed holds, with the epoch millis they were reserved at
+ */
+record EngineSnapshot(int partitionNo, long lastSeq, List<Stock> stocks, List<Hold> holds) {
+
+  record Stock(long productId, int quantity, int reservedQuantity) {
+
+  }
+
+  record Hold(String orderId, long productId, int quantity, HoldStatus status, long reservedAt) {
+
+  }
+}
@@ -0,0 +1,413 @@
+package com.danhuy.inventory_service.engine;
+
+import com.danhuy.common_service.dto.OrderItemDto;
+import com.danhuy.common_service.enums.MessageEnum;
+import com.danhuy.common_service.event.inventory.InventoryUpdateEvent;
+import com.danhuy.common_service.event.inventory.InventoryUpdateResultEvent;
+import com.danhuy.inventory_service.engine.EngineCommand.CommandType;
+import com.danhuy.inventory_service.engine.EngineCommand.Item;
+import com.danhuy.inventory_service.entity.EngineCheckpoint;
+import com.danhuy.inventory_service.entity.Inventory;
+import com.danhuy.inventory_service.entity.ReservationHold;
+import com.danhuy.inventory_service.enums.HoldStatus;
+import com.danhuy.inventory_service.enums.MovementType;
+import com.danhuy.inventory_service.journal.MovementJournal;
+import com.danhuy.inventory_service.repository.EngineCheckpointRepository;
+import com.danhuy.inventory_service.repository.InventoryRepository;
+import com.danhuy.inventory_service.repository.ReservationHoldRepository;
+import com.danhuy.inventory_service.sharding.InventoryShardingService;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * High-throughput mode of inventory-service: stock is kept in memory and split into partitions by
+ * product id, each partition has one writer thread (see {@link EnginePartition}). Stock movements
+ * need no database lock, the database is updated behind with batches and the engine log makes the
+ * state rebuildable after a crash.
+ *
+ * <p>Only one inventory-service instance may run with the engine enabled, and the number of
+ * partitions must not change while the engine log is not empty.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReservationEngine implements SmartLifecycle {
+
+  // start before the Kafka listener containers, stop after them
+  private static final int PHASE = Integer.MAX_VALUE - 200;
+
+  private final InventoryRepository inventoryRepository;
+  private final ReservationHoldRepository reservationHoldRepository;
+  private final EngineCheckpointRepository engineCheckpointRepository;
+  private final InventoryShardingService inventoryShardingService;
+  private final EngineFlusher engineFlusher;
+  private final MovementJournal movementJournal;
+  private final TransactionTemplate transactionTemplate;
+
+  @Value("${inventory.engine.enabled:false}")
+  private boolean enabled;
+
+  @Value("${inventory.engine.partitions:3}")
+  private int partitionCount;
+
+  @Value("${inventory.engine.log-dir:./data/inventory-engine}")
+  private String logDir;
+
+  @Value("${inventory.engine.segment-size:100000}")
+  private int segmentSize;
+
+  @Value("${inventory.engine.queue-capacity:10000}")
+  private int queueCapacity;
+
+  @Value("${inventory.engine.flush-interval-ms:200}")
+  private long flushIntervalMs;
+
+  @Value("${inventory.engine.flush-batch-size:500}")
+  private int flushBatchSize;
+
+  @Value("${inventory.engine.consumed-orders-capacity:100000}")
+  private int consumedOrdersCapacity;
+
+  @Value("${inventory.engine.timeout-ms:5000}")
+  private long timeoutMs;
+
+  private EnginePartition[] partitions;
+  private volatile boolean running;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Process the inventory updates of a poll. Every order is queued to its partitions before any
+   * result is awaited, so a partition writer applies many orders per log sync; a later update of an
+   * order already in flight waits for it. When a reservation fails in one partition, it is released
+   * again in the others.
+   *
+   * @param requests List<InventoryUpdateEvent>
+   * @return List<InventoryUpdateResultEvent> in the order of the requests
+   */
+  public List<InventoryUpdateResultEvent> process(List<InventoryUpdateEvent> requests) {
+    List<InventoryUpdateResultEvent> results = new ArrayList<>(requests.size());
+    List<Submission> inFlight = new ArrayList<>();
+    Set<String> inFlightOrders = new HashSet<>();
+    for (InventoryUpdateEvent request : requests) {
+      if (!inFlightOrders.add(request.getOrderId())) {
+        // same order twice in the poll: its earlier update completes first, compensation included
+        inFlight.forEach(submission -> results.add(toResult(submission)));
+        inFlight.clear();
+        inFlightOrders.clear();
+        inFlightOrders.add(request.getOrderId());
+      }
+      inFlight.add(submit(CommandType.valueOf(request.getUpdateType().name()),
+          request.getOrderId(), request.getOrderItems(), request));
+    }
+    inFlight.forEach(submission -> results.add(toResult(submission)));
+    return results;
+  }
+
+  /**
+   * Release the expired hold of an order (expiry sweeper). A hold already consumed in memory, or
+   * one the engine does not know, is a no-op.
+   *
+   * @param orderId String
+   * @param items   List<OrderItemDto> items of the expired holds
+   * @return true if the engine released the hold, false for a no-op
+   */
+  public boolean expire(String orderId, List<OrderItemDto> items) {
+    Submission submission = submit(CommandType.EXPIRE, orderId, items, null);
+    rethrow(complete(submission));
+    return submission.results().values().stream()
+        .anyMatch(result -> Boolean.TRUE.equals(result.join()));
+  }
+
+  private InventoryUpdateResultEvent toResult(Submission submission) {
+    InventoryUpdateEvent request = submission.request();
+    Throwable error = complete(submission);
+    if (error != null) {
+      log.error("Engine failed inventory update for order: {}", request.getOrderId(), error);
+      return InventoryUpdateResultEvent.builder()
+          .orderId(request.getOrderId())
+          .success(false)
+          .message("Error processing inventory update : " + error.getMessage())
+          .updateType(request.getUpdateType())
+          .build();
+    }
+
+    return InventoryUpdateResultEvent.builder()
+        .orderId(request.getOrderId())
+        .success(true)
+        .message(switch (request.getUpdateType()) {
+          case RESERVE -> MessageEnum.RESERVE_INVENTORY_SUCCESS.getMessage();
+          case COMMIT -> "Inventory committed successfully";
+          case RELEASE -> "Inventory released successfully";
+        })
+        .updateType(request.getUpdateType())
+        .build();
+  }
+
+  /**
+   * queue an order movement to the partitions owning its items, without waiting.
+   *
+   * @return Submission to complete
+   */
+  private Submission submit(CommandType type, String orderId, List<OrderItemDto> orderItems,
+      InventoryUpdateEvent request) {
+    Map<Integer, List<Item>> itemsByPartition = new TreeMap<>();
+    for (OrderItemDto item : orderItems) {
+      itemsByPartition.computeIfAbsent(partitionOf(item.getProductId()), p -> new ArrayList<>())
+          .add(new Item(item.getProductId(), item.getQuantity()));
+    }
+
+    long timestamp = System.currentTimeMillis();
+    Map<Integer, CompletableFuture<Boolean>> results = new HashMap<>();
+    itemsByPartition.forEach((partitionNo, items) -> results.put(partitionNo,
+        partitions[partitionNo].submit(
+            new EngineCommand(type, orderId, items, timestamp, new CompletableFuture<>()))));
+    return new Submission(type, orderId, itemsByPartition, results, request);
+  }
+
+  /**
+   * wait for the partitions of a submission, compensate a failed reservation, then journal the
+   * items of the partitions where it changed the state (a redelivered movement changes nothing).
+   *
+   * @return Throwable the first error of the partitions, null on success
+   */
+  private Throwable complete(Submission submission) {
+    Throwable error = null;
+    for (CompletableFuture<Boolean> result : submission.results().values()) {
+      Throwable partitionError = await(result);
+      error = error == null ? partitionError : error;
+    }
+
+    String orderId = submission.orderId();
+    if (error != null) {
+      if (submission.type() == CommandType.RESERVE) {
+        // compensate: release what the other partitions reserved (no-op where nothing was
+        // reserved)
+        for (Integer partitionNo : submission.itemsByPartition().keySet()) {
+          Throwable compensationError = await(partitions[partitionNo].submitCompensation(
+              new EngineCommand(CommandType.RELEASE, orderId, List.of(),
+                  System.currentTimeMillis(), new CompletableFuture<>())));
+          if (compensationError != null) {
+            log.error("Engine cannot release order {} in partition {}, its hold expires later",
+                orderId, partitionNo, compensationError);
+          }
+        }
+      }
+      return error;
+    }
+
+    // the partitions keep moving, the stock right after the command is not known here
+    MovementType movementType = MovementType.valueOf(submission.type().name());
+    submission.itemsByPartition().forEach((partitionNo, items) -> {
+      if (Boolean.TRUE.equals(submission.results().get(partitionNo).join())) {
+        items.forEach(item -> movementJournal.record(movementType, item.productId(),
+            item.quantity(), orderId, null, null));
+      }
+    });
+    return null;
+  }
+
+  /**
+   * set the total quantity of a product (manual update).
+   *
+   * @param productId Long
+   * @param quantity  int
+   * @return StockCounter after the update
+   */
+  public StockCounter setQuantity(Long productId, int quantity) {
+    EnginePartition partition = partitions[partitionOf(productId)];
+    rethrow(await(partition.submit(new EngineCommand(CommandType.SET_QUANTITY, "",
+        List.of(new Item(productId, quantity)), System.currentTimeMillis(),
+        new CompletableFuture<>()))));
+    return partition.getStock(productId);
+  }
+
+  /**
+   * set the total quantity of many products (bulk import), one command per partition.
+   *
+   * @param quantities Map<Long, Integer> quantity by product id
+   */
+  public void setQuantities(Map<Long, Integer> quantities) {
+    Map<Integer, List<Item>> itemsByPartition = new TreeMap<>();
+    quantities.forEach((productId, quantity) -> itemsByPartition
+        .computeIfAbsent(partitionOf(productId), p -> new ArrayList<>())
+        .add(new Item(productId, quantity)));
+
+    long timestamp = System.currentTimeMillis();
+    List<CompletableFuture<Boolean>> results = new ArrayList<>(itemsByPartition.size());
+    itemsByPartition.forEach((partitionNo, items) -> results.add(partitions[partitionNo].submit(
+        new EngineCommand(CommandType.SET_QUANTITY, "", items, timestamp,
+            new CompletableFuture<>()))));
+    for (CompletableFuture<Boolean> result : results) {
+      rethrow(await(result));
+    }
+  }
+
+  /**
+   * get the in-memory stock of a product.
+   *
+   * @param productId Long
+   * @return StockCounter, null if the engine is off or does not know the product yet
+   */
+  public StockCounter getStock(Long productId) {
+    return running ? partitions[partitionOf(productId)].getStock(productId) : null;
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      rebuild();
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot rebuild reservation engine from its log", e);
+    }
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    for (EnginePartition partition : partitions) {
+      try {
+        partition.stop();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public int getPhase() {
+    return PHASE;
+  }
+
+  private void rebuild() throws IOException {
+    // the engine owns the whole stock, fold buckets of hot products back into their row
+    inventoryRepository.findShardedProductIds().forEach(inventoryShardingService::unshard);
+
+    List<Map<Long, StockCounter>> stocks = new ArrayList<>(partitionCount);
+    List<List<ReservationHold>> holds = new ArrayList<>(partitionCount);
+    for (int i = 0; i < partitionCount; i++) {
+      stocks.add(new HashMap<>());
+      holds.add(new ArrayList<>());
+    }
+    // read-write transaction: the engine must start from the primary, never from a lagging replica
+    transactionTemplate.executeWithoutResult(status -> {
+      for (Inventory inventory : inventoryRepository.findAll()) {
+        stocks.get(partitionOf(inventory.getProductId())).put(inventory.getProductId(),
+            new StockCounter(inventory.getQuantity(), inventory.getReservedQuantity()));
+      }
+      for (ReservationHold hold : reservationHoldRepository.findByStatus(HoldStatus.ACTIVE)) {
+        holds.get(partitionOf(hold.getProductId())).add(hold);
+      }
+    });
+
+    partitions = new EnginePartition[partitionCount];
+    for (int i = 0; i < partitionCount; i++) {
+      int partitionNo = i;
+      long checkpointSeq = transactionTemplate.execute(status -> engineCheckpointRepository
+          .findById(partitionNo)
+          .orElseGet(() -> engineCheckpointRepository.save(new EngineCheckpoint(partitionNo, 0L)))
+          .getLastSeq());
+
+      EnginePartition partition = new EnginePartition(partitionNo,
+          new EngineLog(Path.of(logDir), partitionNo, segmentSize), engineFlusher,
+          this::loadStock, this::loadConsumedStatus, queueCapacity, flushIntervalMs,
+          flushBatchSize, consumedOrdersCapacity);
+      partition.recover(stocks.get(partitionNo), holds.get(partitionNo), checkpointSeq);
+      partition.start();
+      partitions[partitionNo] = partition;
+    }
+    log.info("Reservation engine started with {} partitions", partitionCount);
+  }
+
+  private StockCounter loadStock(long productId) {
+    // from the primary, see rebuild
+    return transactionTemplate.execute(status -> inventoryRepository.findByProductId(productId)
+        .map(inventory -> new StockCounter(inventory.getQuantity(),
+            inventory.getReservedQuantity()))
+        .orElse(null));
+  }
+
+  private HoldStatus loadConsumedStatus(String orderId) {
+    // from the primary, see rebuild
+    List<ReservationHold> orderHolds = transactionTemplate.execute(
+        status -> reservationHoldRepository.findByOrderId(orderId));
+    if (orderHolds.stream().anyMatch(hold -> hold.getStatus() == HoldStatus.COMMITTED)) {
+      return HoldStatus.COMMITTED;
+    }
+    return orderHolds.stream()
+        .map(ReservationHold::getStatus)
+        .filter(holdStatus -> holdStatus != HoldStatus.ACTIVE)
+        .findFirst()
+        .orElse(null);
+  }
+
+  private int partitionOf(long productId) {
+    return Math.floorMod(productId, partitionCount);
+  }
+
+  private void rethrow(Throwable error) {
+    if (error instanceof RuntimeException runtimeException) {
+      throw runtimeException;
+    }
+    if (error != null) {
+      throw new IllegalStateException(error);
+    }
+  }
+
+  private Throwable await(CompletableFuture<Boolean> result) {
+    try {
+      result.get(timeoutMs, TimeUnit.MILLISECONDS);
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause();
+    } catch (TimeoutException e) {
+      return e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return e;
+    }
+  }
+
+  /**
+   * order movement queued to its partitions.
+   *
+   * @param request the update it answers, null for an expiry
+   */
+  private record Submission(CommandType type, String orderId,
+                            Map<Integer, List<Item>> itemsByPartition,
+                            Map<Integer, CompletableFuture<Boolean>> results,
+                            InventoryUpdateEvent request) {
+
+  }
+}
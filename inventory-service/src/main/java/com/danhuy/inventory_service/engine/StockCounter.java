@@ -0,0 +1,28 @@
+package com.danhuy.inventory_service.engine;
+
+/**
+ * In-memory stock of a product. Immutable: the writer thread of the owning partition replaces it on
+ * every change, so other threads always read a quantity and reserved quantity of the same moment.
+ */
+public class StockCounter {
+
+  private final int quantity;
+  private final int reservedQuantity;
+
+  StockCounter(int quantity, int reservedQuantity) {
+    this.quantity = quantity;
+    this.reservedQuantity = reservedQuantity;
+  }
+
+  public int getQuantity() {
+    return quantity;
+  }
+
+  public int getReservedQuantity() {
+    return reservedQuantity;
+  }
+
+  public int getAvailableQuantity() {
+    return quantity - reservedQuantity;
+  }
+}
@@ -0,0 +1,29 @@
+package com.danhuy.inventory_service.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Last sequence of the reservation engine log that is persisted in the inventory table, per
+ * partition.
+ */
+@Entity
+@Table(name = "engine_checkpoint")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EngineCheckpoint {
+
+  @Id
+  private Integer partitionNo;
+
+  @Column(nullable = false)
+  private Long lastSeq;
+}
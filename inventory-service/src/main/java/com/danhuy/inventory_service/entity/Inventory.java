@@ -7,7 +7,9 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import jakarta.persistence.Version;
 import java.time.LocalDateTime;
 import lombok.AllArgsConstructor;
@@ -18,7 +20,11 @@ import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 @Entity
-@Table(name = "inventory")
+@Table(name = "inventory",
+    uniqueConstraints = @UniqueConstraint(name = "uk_inventory_product_id",
+        columnNames = "productId"),
+    indexes = @Index(name = "idx_inventory_available_quantity",
+        columnList = "availableQuantity, productId"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -44,6 +50,22 @@ public class Inventory {
   @Column(nullable = false)
   private Integer reservedQuantity;
 
+  /**
+   * quantity - reservedQuantity, computed by the database to index low-stock queries. Read only,
+   * not refreshed in the entity after an update.
+   */
+  @Column(insertable = false, updatable = false,
+      columnDefinition = "INT GENERATED ALWAYS AS (quantity - reserved_quantity) STORED")
+  private Integer availableQuantity;
+
+  /**
+   * hot SKU, stock is split across {@link InventoryBucket} rows. quantity and reservedQuantity of
+   * this row are then only a rolled-up snapshot.
+   */
+  @Column(nullable = false)
+  @Builder.Default
+  private boolean sharded = false;
+
   @Version
   private Long version;
 
@@ -63,6 +85,16 @@ public class Inventory {
     return (quantity - reservedQuantity) >= requestedQuantity;
   }
 
+  /**
+   * check reserved quantity
+   *
+   * @param requestedQuantity int
+   * @return true if at least requestedQuantity is reserved
+   */
+  public boolean hasReservedQuantity(int requestedQuantity) {
+    return reservedQuantity >= requestedQuantity;
+  }
+
   /**
    * reserve amount of product. (ordered)
    *
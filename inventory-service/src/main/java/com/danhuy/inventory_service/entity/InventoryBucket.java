@@ -0,0 +1,105 @@
+package com.danhuy.inventory_service.entity;
+
+import com.danhuy.common_service.enums.MessageEnum;
+import com.danhuy.common_service.exception.ex.AppException;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import jakarta.persistence.Version;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+/**
+ * One slice of the stock of a sharded (hot) product. Reservations lock a single bucket instead of
+ * the whole {@link Inventory} row.
+ */
+@Entity
+@Table(name = "inventory_bucket",
+    uniqueConstraints = @UniqueConstraint(name = "uk_inventory_bucket_product_bucket",
+        columnNames = {"productId", "bucketNo"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InventoryBucket {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(nullable = false)
+  private Long productId;
+
+  @Column(nullable = false)
+  private Integer bucketNo;
+
+  /**
+   * root of quantity in this bucket.
+   */
+  @Column(nullable = false)
+  private Integer quantity;
+
+  /**
+   * reserved quantity in this bucket.
+   */
+  @Column(nullable = false)
+  private Integer reservedQuantity;
+
+  // incremented by every movement, the stock version of a sharded product adds the bucket versions
+  // to the inventory row version
+  @Version
+  @Column(columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+  private long version;
+
+  @UpdateTimestamp // auto setup timestamp
+  private LocalDateTime updatedAt;
+
+  public int getAvailableQuantity() {
+    return quantity - reservedQuantity;
+  }
+
+  /**
+   * reserve amount of product in this bucket.
+   *
+   * @param amount int
+   */
+  public void reserveQuantity(int amount) {
+    if (getAvailableQuantity() < amount) {
+      throw new AppException(MessageEnum.NOT_ENOUGH_RESERVE_QUANTITY, productId);
+    }
+    this.reservedQuantity += amount;
+  }
+
+  /**
+   * release reserved amount of product in this bucket.
+   *
+   * @param amount int
+   */
+  public void releaseReservedQuantity(int amount) {
+    if (this.reservedQuantity < amount) {
+      throw new AppException(MessageEnum.NOT_RELEASE_RESERVE_QUANTITY);
+    }
+    this.reservedQuantity -= amount;
+  }
+
+  /**
+   * commit reserved amount, reduce both root and reserved quantity.
+   *
+   * @param amount int
+   */
+  public void commitReservedQuantity(int amount) {
+    if (this.reservedQuantity < amount || this.quantity < amount) {
+      throw new AppException(MessageEnum.NOT_REDUCE_QUANTITY);
+    }
+    this.quantity -= amount;
+    this.reservedQuantity -= amount;
+  }
+}
@@ -0,0 +1,71 @@
+package com.danhuy.inventory_service.entity;
+
+import com.danhuy.inventory_service.enums.HoldStatus;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+/**
+ * Quantity of a product reserved by an order (reservation ledger). An ACTIVE hold is released by
+ * the expiry sweeper once expiresAt is reached; committed holds are the units sold to orders.
+ */
+@Entity
+@Table(name = "reservation_hold",
+    uniqueConstraints = @UniqueConstraint(name = "uk_reservation_hold_order_product",
+        columnNames = {"orderId", "productId"}),
+    indexes = {
+        @Index(name = "idx_reservation_hold_status_expires", columnList = "status, expiresAt"),
+        @Index(name = "idx_reservation_hold_committed", columnList = "committedAt, id")})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReservationHold {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(nullable = false)
+  private String orderId;
+
+  @Column(nullable = false)
+  private Long productId;
+
+  @Column(nullable = false)
+  private Integer quantity;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false, length = 16)
+  private HoldStatus status;
+
+  @Column(nullable = false)
+  private LocalDateTime expiresAt;
+
+  // set once when the hold is committed, position of the hold in the units-sold feed
+  private LocalDateTime committedAt;
+
+  @CreationTimestamp // auto setup timestamp
+  private LocalDateTime createdAt;
+
+  @UpdateTimestamp // auto setup timestamp
+  private LocalDateTime updatedAt;
+
+  public boolean isActive() {
+    return status == HoldStatus.ACTIVE;
+  }
+}
@@ -0,0 +1,8 @@
+package com.danhuy.inventory_service.enums;
+
+public enum HoldStatus {
+  ACTIVE,
+  COMMITTED,
+  RELEASED,
+  EXPIRED
+}
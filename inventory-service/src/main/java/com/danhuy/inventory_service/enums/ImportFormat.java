@@ -0,0 +1,11 @@
+package com.danhuy.inventory_service.enums;
+
+/**
+ * Body format of the bulk inventory import, one row per line.
+ */
+public enum ImportFormat {
+  // productId,quantity (optional header line)
+  CSV,
+  // {"productId": 1, "quantity": 10}
+  NDJSON
+}
@@ -0,0 +1,17 @@
+package com.danhuy.inventory_service.enums;
+
+/**
+ * Kind of stock movement recorded in the movement journal.
+ */
+public enum MovementType {
+  CREATE,
+  // manual update of the total quantity
+  UPDATE,
+  // bulk import of the total quantity
+  IMPORT,
+  RESERVE,
+  COMMIT,
+  RELEASE,
+  // reservation released by the expiry sweeper
+  EXPIRE
+}
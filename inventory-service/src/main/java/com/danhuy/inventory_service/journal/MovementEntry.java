@@ -0,0 +1,21 @@
+package com.danhuy.inventory_service.journal;
+
+import com.danhuy.inventory_service.enums.MovementType;
+import java.time.LocalDateTime;
+
+/**
+ * One stock movement waiting in the journal buffer.
+ *
+ * @param productId             id of product
+ * @param type                  MovementType
+ * @param quantity              moved amount, or the new total quantity
+ * @param orderId               order of the movement, null for manual changes
+ * @param quantityAfter         quantity after the movement, null when unknown
+ * @param reservedQuantityAfter reserved quantity after the movement, null when unknown
+ * @param createdAt             time of the movement
+ */
+record MovementEntry(long productId, MovementType type, int quantity, String orderId,
+                     Integer quantityAfter, Integer reservedQuantityAfter,
+                     LocalDateTime createdAt) {
+
+}
@@ -0,0 +1,202 @@
+package com.danhuy.inventory_service.journal;
+
+import com.danhuy.inventory_service.enums.MovementType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Append-only journal of stock movements. Movements of a transaction are kept aside and put into a
+ * bounded in-memory ring buffer after commit; a writer thread drains the buffer into batched
+ * inserts. Stock movements never wait for the journal: when the buffer is full the entry is
+ * dropped and counted (inventory.journal.dropped).
+ */
+@Component
+@Slf4j
+public class MovementJournal implements SmartLifecycle {
+
+  // start before the reservation engine and the listener containers, stop after them
+  private static final int PHASE = Integer.MAX_VALUE - 400;
+
+  private final MovementJournalRepository movementJournalRepository;
+  private final boolean enabled;
+  private final int batchSize;
+  private final long flushIntervalMs;
+  private final BlockingQueue<MovementEntry> buffer;
+  private final Counter dropped;
+
+  @Value("${inventory.journal.retention-days:90}")
+  private long retentionDays;
+
+  @Value("${inventory.journal.partitions-ahead-days:7}")
+  private long partitionsAheadDays;
+
+  private Thread writer;
+  private volatile boolean running;
+
+  public MovementJournal(MovementJournalRepository movementJournalRepository,
+      ObjectProvider<MeterRegistry> meterRegistry,
+      @Value("${inventory.journal.enabled:true}") boolean enabled,
+      @Value("${inventory.journal.buffer-size:65536}") int bufferSize,
+      @Value("${inventory.journal.batch-size:500}") int batchSize,
+      @Value("${inventory.journal.flush-interval-ms:200}") long flushIntervalMs) {
+    this.movementJournalRepository = movementJournalRepository;
+    this.enabled = enabled;
+    this.batchSize = batchSize;
+    this.flushIntervalMs = flushIntervalMs;
+    this.buffer = new ArrayBlockingQueue<>(bufferSize);
+
+    MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    this.dropped = Counter.builder("inventory.journal.dropped")
+        .description("Stock movements not journaled because the buffer was full")
+        .register(registry);
+    Gauge.builder("inventory.journal.buffer.size", buffer, BlockingQueue::size)
+        .register(registry);
+  }
+
+  /**
+   * record a stock movement, written once the current transaction commits.
+   *
+   * @param type                  MovementType
+   * @param productId             Long
+   * @param quantity              int moved amount, or the new total quantity
+   * @param orderId               String, null for manual changes
+   * @param quantityAfter         Integer, null when unknown
+   * @param reservedQuantityAfter Integer, null when unknown
+   */
+  public void record(MovementType type, Long productId, int quantity, String orderId,
+      Integer quantityAfter, Integer reservedQuantityAfter) {
+    if (!enabled) {
+      return;
+    }
+    MovementEntry entry = new MovementEntry(productId, type, quantity, orderId, quantityAfter,
+        reservedQuantityAfter, LocalDateTime.now());
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      offer(entry);
+      return;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<MovementEntry> pending =
+        (List<MovementEntry>) TransactionSynchronizationManager.getResource(this);
+    if (pending == null) {
+      List<MovementEntry> entries = new ArrayList<>();
+      TransactionSynchronizationManager.bindResource(this, entries);
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          TransactionSynchronizationManager.unbindResource(MovementJournal.this);
+          // a rolled back movement never happened
+          if (status == STATUS_COMMITTED) {
+            entries.forEach(MovementJournal.this::offer);
+          }
+        }
+      });
+      pending = entries;
+    }
+    pending.add(entry);
+  }
+
+  /**
+   * add the partitions of the coming days and drop the days past the retention period.
+   */
+  @Scheduled(cron = "${inventory.journal.maintenance-cron:0 15 0 * * *}")
+  public void maintainPartitions() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      LocalDate today = LocalDate.now();
+      movementJournalRepository.addPartitionsUntil(today, today.plusDays(partitionsAheadDays));
+      int droppedPartitions = movementJournalRepository.dropPartitionsBefore(
+          today.minusDays(retentionDays));
+      if (droppedPartitions > 0) {
+        log.info("Dropped {} expired movement journal partitions", droppedPartitions);
+      }
+    } catch (Exception e) {
+      log.error("Error maintaining movement journal partitions", e);
+    }
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    movementJournalRepository.createTableIfMissing();
+    maintainPartitions();
+
+    running = true;
+    writer = new Thread(this::drain, "inventory-journal-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  @Override
+  public void stop() {
+    if (!running) {
+      return;
+    }
+    // the writer empties the buffer before it ends
+    running = false;
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public int getPhase() {
+    return PHASE;
+  }
+
+  private void offer(MovementEntry entry) {
+    if (!buffer.offer(entry)) {
+      dropped.increment();
+    }
+  }
+
+  private void drain() {
+    List<MovementEntry> batch = new ArrayList<>(batchSize);
+    while (running || !buffer.isEmpty()) {
+      try {
+        MovementEntry first = buffer.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        buffer.drainTo(batch, batchSize - 1);
+        movementJournalRepository.insertBatch(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        log.error("Error writing {} stock movements to the journal", batch.size(), e);
+        dropped.increment(batch.size());
+      }
+      batch.clear();
+    }
+  }
+}
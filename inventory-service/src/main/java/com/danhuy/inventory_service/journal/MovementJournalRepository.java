@@ -0,0 +1,166 @@
+package com.danhuy.inventory_service.journal;
+
+import com.danhuy.inventory_service.dto.MovementResponse;
+import com.danhuy.inventory_service.enums.MovementType;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+/**
+ * JDBC access to the inventory_movement table. The table is partitioned by day on created_at, so
+ * it is created and maintained here instead of by Hibernate: a range query only reads the days it
+ * covers and old days are dropped as a whole partition.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MovementJournalRepository {
+
+  private static final String TABLE = "inventory_movement";
+  private static final String FUTURE_PARTITION = "p_future";
+  private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern(
+      "'p'yyyyMMdd");
+
+  private static final String CREATE_TABLE = """
+      CREATE TABLE IF NOT EXISTS inventory_movement (
+        id BIGINT NOT NULL AUTO_INCREMENT,
+        product_id BIGINT NOT NULL,
+        movement_type VARCHAR(20) NOT NULL,
+        quantity INT NOT NULL,
+        order_id VARCHAR(100) NULL,
+        quantity_after INT NULL,
+        reserved_quantity_after INT NULL,
+        created_at DATETIME(3) NOT NULL,
+        PRIMARY KEY (id, created_at),
+        KEY idx_inventory_movement_product_created (product_id, created_at)
+      ) PARTITION BY RANGE COLUMNS (created_at) (
+        PARTITION p_future VALUES LESS THAN (MAXVALUE)
+      )""";
+
+  private static final String INSERT = "INSERT INTO inventory_movement (product_id, "
+      + "movement_type, quantity, order_id, quantity_after, reserved_quantity_after, created_at) "
+      + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+  private static final String SELECT_BY_PRODUCT = "SELECT id, product_id, movement_type, "
+      + "quantity, order_id, quantity_after, reserved_quantity_after, created_at "
+      + "FROM inventory_movement WHERE product_id = ? AND created_at >= ? AND created_at < ? "
+      + "ORDER BY created_at, id LIMIT ? OFFSET ?";
+
+  private static final String COUNT_BY_PRODUCT = "SELECT COUNT(*) FROM inventory_movement "
+      + "WHERE product_id = ? AND created_at >= ? AND created_at < ?";
+
+  private static final RowMapper<MovementResponse> ROW_MAPPER = (rs, rowNum) ->
+      MovementResponse.builder()
+          .id(rs.getLong("id"))
+          .productId(rs.getLong("product_id"))
+          .type(MovementType.valueOf(rs.getString("movement_type")))
+          .quantity(rs.getInt("quantity"))
+          .orderId(rs.getString("order_id"))
+          .quantityAfter(rs.getObject("quantity_after", Integer.class))
+          .reservedQuantityAfter(rs.getObject("reserved_quantity_after", Integer.class))
+          .createdAt(rs.getTimestamp("created_at").toLocalDateTime())
+          .build();
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public void createTableIfMissing() {
+    jdbcTemplate.execute(CREATE_TABLE);
+  }
+
+  /**
+   * insert entries with one JDBC batch.
+   *
+   * @param entries List<MovementEntry>
+   */
+  void insertBatch(List<MovementEntry> entries) {
+    jdbcTemplate.batchUpdate(INSERT, entries, entries.size(), (ps, entry) -> {
+      ps.setLong(1, entry.productId());
+      ps.setString(2, entry.type().name());
+      ps.setInt(3, entry.quantity());
+      ps.setString(4, entry.orderId());
+      ps.setObject(5, entry.quantityAfter());
+      ps.setObject(6, entry.reservedQuantityAfter());
+      ps.setTimestamp(7, Timestamp.valueOf(entry.createdAt()));
+    });
+  }
+
+  /**
+   * movements of a product in [from, to), oldest first.
+   *
+   * @param productId Long
+   * @param from      LocalDateTime inclusive
+   * @param to        LocalDateTime exclusive
+   * @param pageable  Pageable
+   * @return Page<MovementResponse>
+   */
+  public Page<MovementResponse> findByProductId(Long productId, LocalDateTime from,
+      LocalDateTime to, Pageable pageable) {
+    List<MovementResponse> content = jdbcTemplate.query(SELECT_BY_PRODUCT, ROW_MAPPER, productId,
+        Timestamp.valueOf(from), Timestamp.valueOf(to), pageable.getPageSize(),
+        pageable.getOffset());
+    Long total = jdbcTemplate.queryForObject(COUNT_BY_PRODUCT, Long.class, productId,
+        Timestamp.valueOf(from), Timestamp.valueOf(to));
+    return new PageImpl<>(content, pageable, total == null ? 0 : total);
+  }
+
+  /**
+   * make sure every day up to lastDay has its partition, split off the future partition.
+   *
+   * @param today   LocalDate
+   * @param lastDay LocalDate
+   */
+  public void addPartitionsUntil(LocalDate today, LocalDate lastDay) {
+    LocalDate day = partitionDays().stream()
+        .max(LocalDate::compareTo)
+        .map(last -> last.plusDays(1))
+        .filter(next -> next.isAfter(today))
+        .orElse(today);
+
+    List<String> partitions = new ArrayList<>();
+    for (; !day.isAfter(lastDay); day = day.plusDays(1)) {
+      partitions.add("PARTITION " + day.format(PARTITION_NAME) + " VALUES LESS THAN ('"
+          + day.plusDays(1) + "')");
+    }
+    if (partitions.isEmpty()) {
+      return;
+    }
+    partitions.add("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN (MAXVALUE)");
+    jdbcTemplate.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + FUTURE_PARTITION
+        + " INTO (" + String.join(", ", partitions) + ")");
+  }
+
+  /**
+   * drop the partitions of the days before a day.
+   *
+   * @param day LocalDate first day to keep
+   * @return number of dropped partitions
+   */
+  public int dropPartitionsBefore(LocalDate day) {
+    List<String> expired = partitionDays().stream()
+        .filter(partitionDay -> partitionDay.isBefore(day))
+        .map(partitionDay -> partitionDay.format(PARTITION_NAME))
+        .toList();
+    if (!expired.isEmpty()) {
+      jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION "
+          + String.join(", ", expired));
+    }
+    return expired.size();
+  }
+
+  private List<LocalDate> partitionDays() {
+    return jdbcTemplate.queryForList("SELECT partition_name FROM information_schema.partitions "
+            + "WHERE table_schema = DATABASE() AND table_name = ? AND partition_name <> ?",
+            String.class, TABLE, FUTURE_PARTITION).stream()
+        .map(name -> LocalDate.parse(name, PARTITION_NAME))
+        .toList();
+  }
+}
@@ -4,7 +4,9 @@ import com.danhuy.common_service.event.inventory.InventoryCheckEvent;
 import com.danhuy.common_service.event.inventory.InventoryCheckResultEvent;
 import com.danhuy.common_service.event.inventory.InventoryUpdateEvent;
 import com.danhuy.common_service.event.inventory.InventoryUpdateResultEvent;
+import com.danhuy.inventory_service.engine.ReservationEngine;
 import com.danhuy.inventory_service.service.InventoryService;
+import java.util.List;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -18,6 +20,7 @@ import org.springframework.stereotype.Component;
 public class KafkaListeners {
 
   private final InventoryService inventoryService;
+  private final ReservationEngine reservationEngine;
   private final KafkaTemplate<String, Object> kafkaTemplate;
 
   @Value("${kafka.topics.inventory-check-result}")
@@ -56,33 +59,43 @@ public class KafkaListeners {
   }
 
   /**
-   * Update inventory when receive message inventory-update based on InventoryUpdateType.
+   * Update inventory when receive messages inventory-update based on InventoryUpdateType. A whole
+   * poll is applied at once (group commit) and its results are sent with one producer flush.
    *
-   * @param request InventoryUpdateEvent
+   * @param requests List<InventoryUpdateEvent>
    */
   @KafkaListener(
       topics = "${kafka.topics.inventory-update}",
-      groupId = "${spring.kafka.consumer.group-id}")
-  public void handleInventoryUpdate(InventoryUpdateEvent request) {
-    log.info("Received inventory update request for order: {}, type: {}",
-        request.getOrderId(), request.getUpdateType());
+      groupId = "${spring.kafka.consumer.group-id}",
+      containerFactory = "batchKafkaListenerContainerFactory",
+      properties = "max.poll.records=${inventory.update-batch.max-poll-records:500}")
+  public void handleInventoryUpdates(List<InventoryUpdateEvent> requests) {
+    log.info("Received {} inventory update requests", requests.size());
 
+    List<InventoryUpdateResultEvent> results;
     try {
-      // updating
-      InventoryUpdateResultEvent result = inventoryService.processInventoryUpdate(request);
-      // produce a message when updated
-      kafkaTemplate.send(INVENTORY_UPDATE_RESULT, request.getOrderId(), result);
-      log.info("Sent inventory update result for order: {}, success: {}",
-          request.getOrderId(), result.isSuccess());
+      // updating, in memory when the reservation engine is on
+      results = reservationEngine.isEnabled()
+          ? reservationEngine.process(requests)
+          : inventoryService.processInventoryUpdates(requests);
     } catch (Exception e) {
-      log.error("Error processing inventory update for order: {}", request.getOrderId(), e);
-      InventoryUpdateResultEvent errorResult = InventoryUpdateResultEvent.builder()
-          .orderId(request.getOrderId())
-          .success(false)
-          .message("Error processing inventory update: " + e.getMessage())
-          .updateType(request.getUpdateType())
-          .build();
-      kafkaTemplate.send(INVENTORY_UPDATE_RESULT, request.getOrderId(), errorResult);
+      log.error("Error processing inventory update batch", e);
+      results = requests.stream()
+          .map(request -> InventoryUpdateResultEvent.builder()
+              .orderId(request.getOrderId())
+              .success(false)
+              .message("Error processing inventory update: " + e.getMessage())
+              .updateType(request.getUpdateType())
+              .build())
+          .toList();
+    }
+
+    // produce a message per order, then flush the producer once for the batch
+    for (InventoryUpdateResultEvent result : results) {
+      kafkaTemplate.send(INVENTORY_UPDATE_RESULT, result.getOrderId(), result);
+      log.info("Sent inventory update result for order: {}, success: {}",
+          result.getOrderId(), result.isSuccess());
     }
+    kafkaTemplate.flush();
   }
-}
\ No newline at end of file
+}
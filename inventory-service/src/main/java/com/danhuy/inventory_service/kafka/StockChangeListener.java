@@ -0,0 +1,216 @@
+package com.danhuy.inventory_service.kafka;
+
+import com.danhuy.common_service.event.inventory.StockChangedEvent;
+import com.danhuy.inventory_service.cache.AvailabilityIndex;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Feed the availability index of this instance from the compacted inventory-updated topic (the
+ * inventory changelog). On startup, before the listener containers start, the index is loaded
+ * from the local snapshot and the changelog is replayed from the snapshot offsets; the index
+ * answers only once the replay caught up, stock checks read the database until then. The listener
+ * then goes on from where the replay stopped.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StockChangeListener implements SmartLifecycle, ConsumerSeekAware {
+
+  // start before the Kafka listener containers, stop after them. The web server is already up,
+  // readiness (ApplicationReadyEvent) is only published once start returns
+  private static final int PHASE = Integer.MAX_VALUE - 300;
+
+  private final AvailabilityIndex availabilityIndex;
+  private final ConsumerFactory<Object, Object> kafkaConsumerFactory;
+
+  @Value("${kafka.topics.inventory-updated}")
+  private String INVENTORY_UPDATED;
+
+  @Value("${inventory.availability-index.snapshot.replay-timeout-ms:30000}")
+  private long replayTimeoutMs;
+
+  // next offset to read by partition: changes before it are in the index
+  private final Map<Integer, Long> offsets = new ConcurrentHashMap<>();
+  private volatile boolean running;
+
+  /**
+   * Keep the availability index current. Every instance reads every change (own consumer group,
+   * named after the instance: host and port, like its Eureka instance id, so a restart reuses it).
+   *
+   * @param records List<ConsumerRecord<String, StockChangedEvent>>
+   */
+  @KafkaListener(
+      topics = "${kafka.topics.inventory-updated}",
+      groupId = "${spring.kafka.consumer.group-id}-availability-${spring.cloud.client.hostname}-"
+          + "${server.port}",
+      containerFactory = "batchKafkaListenerContainerFactory",
+      properties = "auto.offset.reset=latest")
+  public void handleStockChanged(List<ConsumerRecord<String, StockChangedEvent>> records) {
+    records.forEach(this::apply);
+  }
+
+  @Override
+  public void onPartitionsAssigned(Map<TopicPartition, Long> assignments,
+      ConsumerSeekCallback callback) {
+    // go on from the warm start, nothing is missed in between. Without one, from the latest
+    // offset: the offsets committed by the group before a restart are not in the index
+    assignments.keySet().forEach(partition -> {
+      Long offset = offsets.get(partition.partition());
+      if (offset != null) {
+        callback.seek(partition.topic(), partition.partition(), offset);
+      } else {
+        callback.seekToEnd(partition.topic(), partition.partition());
+      }
+    });
+  }
+
+  /**
+   * write the index and the offsets it includes to the local snapshot.
+   */
+  @Scheduled(initialDelayString = "${inventory.availability-index.snapshot.interval-ms:300000}",
+      fixedDelayString = "${inventory.availability-index.snapshot.interval-ms:300000}")
+  public void writeSnapshot() {
+    if (running) {
+      availabilityIndex.writeSnapshot(Map.copyOf(offsets));
+    }
+  }
+
+  @Override
+  public void start() {
+    if (availabilityIndex.isEnabled()) {
+      warmUp();
+    }
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    if (!running) {
+      return;
+    }
+    // the containers are stopped already, the snapshot holds every consumed change
+    writeSnapshot();
+    running = false;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public int getPhase() {
+    return PHASE;
+  }
+
+  private void warmUp() {
+    Properties properties = new Properties();
+    properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+    properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+
+    Map<TopicPartition, Long> endOffsets = null;
+    try (Consumer<Object, Object> consumer = kafkaConsumerFactory.createConsumer(
+        null, null, "-warmup", properties)) {
+      List<TopicPartition> partitions = consumer.partitionsFor(INVENTORY_UPDATED).stream()
+          .map(info -> new TopicPartition(info.topic(), info.partition()))
+          .toList();
+      endOffsets = consumer.endOffsets(partitions);
+
+      Map<Integer, Long> snapshotOffsets = availabilityIndex.restoreSnapshot();
+      if (snapshotOffsets != null && replay(consumer, partitions, snapshotOffsets, endOffsets)) {
+        availabilityIndex.publishRestored();
+        return;
+      }
+      availabilityIndex.discardRestored();
+      // cold start: the listener replays the changes made while the table is read
+      endOffsets = consumer.endOffsets(partitions);
+      startFrom(endOffsets);
+      availabilityIndex.reload();
+    } catch (Exception e) {
+      log.error("Error warming availability index from its snapshot, loading from the database",
+          e);
+      availabilityIndex.discardRestored();
+      if (endOffsets == null) {
+        log.warn("Changelog end offsets unknown, availability index follows the latest changes");
+        offsets.clear();
+      } else {
+        // recorded before the reload, changes made while the table is read are replayed
+        startFrom(endOffsets);
+      }
+      availabilityIndex.reload();
+    }
+  }
+
+  private void startFrom(Map<TopicPartition, Long> endOffsets) {
+    offsets.clear();
+    endOffsets.forEach((partition, offset) -> offsets.put(partition.partition(), offset));
+  }
+
+  /**
+   * replay the changelog from the snapshot offsets into the restored table.
+   *
+   * @return true if caught up with the end offsets before the replay timeout
+   */
+  private boolean replay(Consumer<Object, Object> consumer, List<TopicPartition> partitions,
+      Map<Integer, Long> snapshotOffsets, Map<TopicPartition, Long> endOffsets) {
+    consumer.assign(partitions);
+    for (TopicPartition partition : partitions) {
+      Long offset = snapshotOffsets.get(partition.partition());
+      if (offset == null) {
+        consumer.seekToBeginning(List.of(partition));
+      } else {
+        consumer.seek(partition, offset);
+      }
+    }
+
+    long deadline = System.currentTimeMillis() + replayTimeoutMs;
+    long replayed = 0;
+    while (!caughtUp(consumer, endOffsets) && System.currentTimeMillis() < deadline) {
+      for (ConsumerRecord<Object, Object> record : consumer.poll(Duration.ofMillis(500))) {
+        apply(record);
+        replayed++;
+      }
+    }
+
+    if (!caughtUp(consumer, endOffsets)) {
+      // too far behind, the database is faster than the rest of the changelog
+      log.warn("Availability index replay timed out after {} changes", replayed);
+      return false;
+    }
+    partitions.forEach(partition -> offsets.put(partition.partition(),
+        consumer.position(partition)));
+    log.info("Availability index caught up, {} changes replayed", replayed);
+    return true;
+  }
+
+  private boolean caughtUp(Consumer<Object, Object> consumer,
+      Map<TopicPartition, Long> endOffsets) {
+    return endOffsets.entrySet().stream()
+        .allMatch(entry -> consumer.position(entry.getKey()) >= entry.getValue());
+  }
+
+  private void apply(ConsumerRecord<?, ?> record) {
+    if (record.value() instanceof StockChangedEvent event) {
+      availabilityIndex.update(event.getProductId(), event.getAvailableQuantity(),
+          event.getVersion() == null ? 0L : event.getVersion());
+    }
+    offsets.put(record.partition(), record.offset() + 1);
+  }
+}
@@ -0,0 +1,59 @@
+package com.danhuy.inventory_service.kafka;
+
+import com.danhuy.common_service.event.inventory.StockChangedEvent;
+import com.danhuy.inventory_service.cache.AfterCommitChanges;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publish the latest stock of changed products on the compacted inventory-updated topic, once the
+ * stock movement is committed. Only the last value of a product in a transaction is sent, with the
+ * version of its inventory row so consumers can drop an older value that arrives last.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StockChangePublisher {
+
+  private final KafkaTemplate<String, Object> kafkaTemplate;
+
+  @Value("${kafka.topics.inventory-updated}")
+  private String INVENTORY_UPDATED;
+
+  /**
+   * publish the stock of a product after commit.
+   *
+   * @param productId        Long
+   * @param quantity         int
+   * @param reservedQuantity int
+   * @param version          LongSupplier version of the inventory row, read after commit (Ex:
+   *                         incremented by Hibernate on flush)
+   */
+  public void publish(Long productId, int quantity, int reservedQuantity, LongSupplier version) {
+    Supplier<StockChangedEvent> event = () -> StockChangedEvent.builder()
+        .productId(productId)
+        .quantity(quantity)
+        .reservedQuantity(reservedQuantity)
+        .availableQuantity(quantity - reservedQuantity)
+        .changedAt(LocalDateTime.now())
+        .version(version.getAsLong())
+        .build();
+    AfterCommitChanges.collect(this, productId, event, this::send);
+  }
+
+  private void send(Map<Long, Supplier<StockChangedEvent>> events) {
+    events.forEach((productId, event) ->
+        kafkaTemplate.send(INVENTORY_UPDATED, productId.toString(), event.get())
+            .exceptionally(ex -> {
+              log.error("Failed to send stock changed event for product: {}", productId, ex);
+              return null;
+            }));
+  }
+}
@@ -0,0 +1,10 @@
+package com.danhuy.inventory_service.repository;
+
+import com.danhuy.inventory_service.entity.EngineCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface EngineCheckpointRepository extends JpaRepository<EngineCheckpoint, Integer> {
+
+}
@@ -0,0 +1,59 @@
+package com.danhuy.inventory_service.repository;
+
+import com.danhuy.inventory_service.dto.ShardedStock;
+import com.danhuy.inventory_service.dto.StockTotals;
+import com.danhuy.inventory_service.entity.InventoryBucket;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface InventoryBucketRepository extends JpaRepository<InventoryBucket, Long> {
+
+  // lock timeout -2 = SKIP LOCKED in Hibernate
+  String SKIP_LOCKED = "-2";
+
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  List<InventoryBucket> findWithLockByProductIdOrderByBucketNo(Long productId);
+
+  // Pick a bucket that can take the whole amount, skip buckets locked by other reservations
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = SKIP_LOCKED))
+  @Query("SELECT b FROM InventoryBucket b WHERE b.productId = :productId "
+      + "AND b.quantity - b.reservedQuantity >= :amount ORDER BY b.bucketNo")
+  List<InventoryBucket> findAvailableSkipLocked(
+      @Param("productId") Long productId,
+      @Param("amount") int amount,
+      Pageable pageable);
+
+  // Pick a bucket holding enough reserved quantity, skip buckets locked by other movements
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = SKIP_LOCKED))
+  @Query("SELECT b FROM InventoryBucket b WHERE b.productId = :productId "
+      + "AND b.reservedQuantity >= :amount ORDER BY b.bucketNo")
+  List<InventoryBucket> findReservedSkipLocked(
+      @Param("productId") Long productId,
+      @Param("amount") int amount,
+      Pageable pageable);
+
+  @Query("SELECT new com.danhuy.inventory_service.dto.StockTotals("
+      + "COALESCE(SUM(b.quantity), 0L), COALESCE(SUM(b.reservedQuantity), 0L)) "
+      + "FROM InventoryBucket b WHERE b.productId = :productId")
+  StockTotals sumByProductId(@Param("productId") Long productId);
+
+  // One statement, so the totals and the version are of the same committed buckets
+  @Query("SELECT new com.danhuy.inventory_service.dto.ShardedStock("
+      + "SUM(b.quantity), SUM(b.reservedQuantity), MAX(i.version) + SUM(b.version)) "
+      + "FROM InventoryBucket b, Inventory i "
+      + "WHERE b.productId = :productId AND i.productId = b.productId")
+  ShardedStock findStockByProductId(@Param("productId") Long productId);
+
+  boolean existsByProductId(Long productId);
+}
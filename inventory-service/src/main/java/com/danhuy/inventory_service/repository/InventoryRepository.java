@@ -1,20 +1,79 @@
 package com.danhuy.inventory_service.repository;
 
+import com.danhuy.common_service.dto.StockLevelDto;
+import com.danhuy.inventory_service.dto.ProductAvailability;
 import com.danhuy.inventory_service.entity.Inventory;
 import jakarta.persistence.LockModeType;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface InventoryRepository extends JpaRepository<Inventory, Long> {
 
+  // read-only outside a transaction: isInStock falls back on it, served by a replica if routed
+  @Transactional(readOnly = true)
   Optional<Inventory> findByProductId(Long productId);
 
   @Lock(LockModeType.PESSIMISTIC_WRITE)
   Optional<Inventory> findWithLockByProductId(Long productId);
 
   List<Inventory> findByProductIdIn(List<Long> productIds);
+
+  // lock rows of a batch in ascending product id, the same order for every batch
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  List<Inventory> findWithLockByProductIdInOrderByProductId(Collection<Long> productIds);
+
+  // Low-stock products through idx_inventory_available_quantity, lowest first
+  @Query(value = "SELECT i FROM Inventory i WHERE i.availableQuantity <= :threshold "
+      + "ORDER BY i.availableQuantity, i.productId",
+      countQuery = "SELECT COUNT(i) FROM Inventory i WHERE i.availableQuantity <= :threshold")
+  Page<Inventory> findLowStock(@Param("threshold") int threshold, Pageable pageable);
+
+  // Keyset page of available quantities for the availability index, through uk_inventory_product_id
+  @Query("SELECT new com.danhuy.inventory_service.dto.ProductAvailability(i.productId, "
+      + "i.availableQuantity, i.version) FROM Inventory i WHERE i.productId > :after "
+      + "ORDER BY i.productId")
+  List<ProductAvailability> findAvailabilityAfter(@Param("after") long after, Pageable pageable);
+
+  // Keyset page of quantities in (after, upTo] for the stock reconciliation of product-service
+  @Query("SELECT new com.danhuy.common_service.dto.StockLevelDto(i.productId, i.quantity, "
+      + "i.version) FROM Inventory i WHERE i.productId > :after AND i.productId <= :upTo "
+      + "ORDER BY i.productId")
+  List<StockLevelDto> findStockLevels(@Param("after") long after, @Param("upTo") long upTo,
+      Pageable pageable);
+
+  // Read the sharded flag only, without loading (or locking) the entity
+  @Query("SELECT i.sharded FROM Inventory i WHERE i.productId = :productId")
+  Optional<Boolean> findShardedByProductId(@Param("productId") Long productId);
+
+  @Query("SELECT i.version FROM Inventory i WHERE i.productId = :productId")
+  Optional<Long> findVersionByProductId(@Param("productId") Long productId);
+
+  @Query("SELECT i.productId FROM Inventory i WHERE i.sharded = true")
+  List<Long> findShardedProductIds();
+
+  // Roll bucket totals of a sharded product up into its inventory row
+  @Modifying
+  @Query("UPDATE Inventory i SET i.quantity = :quantity, i.reservedQuantity = :reservedQuantity, "
+      + "i.version = i.version + 1 WHERE i.productId = :productId")
+  int updateStockSnapshot(
+      @Param("productId") Long productId,
+      @Param("quantity") int quantity,
+      @Param("reservedQuantity") int reservedQuantity);
+
+  // Keep the version of an unsharded product above the versions it was published with in buckets
+  @Modifying
+  @Query("UPDATE Inventory i SET i.version = i.version + :increment "
+      + "WHERE i.productId = :productId")
+  int incrementVersion(@Param("productId") Long productId, @Param("increment") long increment);
 }
\ No newline at end of file
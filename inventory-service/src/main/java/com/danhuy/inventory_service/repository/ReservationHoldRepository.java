@@ -0,0 +1,82 @@
+package com.danhuy.inventory_service.repository;
+
+import com.danhuy.inventory_service.entity.ReservationHold;
+import com.danhuy.inventory_service.enums.HoldStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ReservationHoldRepository extends JpaRepository<ReservationHold, Long> {
+
+  List<ReservationHold> findByOrderId(String orderId);
+
+  List<ReservationHold> findByStatus(HoldStatus status);
+
+  // lock holds of an order before consuming them
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  List<ReservationHold> findWithLockByOrderIdOrderByProductId(String orderId);
+
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  List<ReservationHold> findWithLockByOrderIdInOrderByOrderIdAscProductIdAsc(
+      Collection<String> orderIds);
+
+  // Expired holds through idx_reservation_hold_status_expires, skip holds being consumed
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+  @Query("SELECT h FROM ReservationHold h WHERE h.status = :status AND h.expiresAt <= :now "
+      + "ORDER BY h.expiresAt")
+  List<ReservationHold> findExpiredSkipLocked(
+      @Param("status") HoldStatus status,
+      @Param("now") LocalDateTime now,
+      Pageable pageable);
+
+  @Query("SELECT h FROM ReservationHold h WHERE h.status = :status AND h.expiresAt <= :now "
+      + "ORDER BY h.expiresAt")
+  List<ReservationHold> findExpired(
+      @Param("status") HoldStatus status,
+      @Param("now") LocalDateTime now,
+      Pageable pageable);
+
+  // Committed holds after a (committedAt, id) cursor and before a time, through
+  // idx_reservation_hold_committed
+  @Query("SELECT h FROM ReservationHold h WHERE h.committedAt < :before "
+      + "AND (h.committedAt > :afterCommittedAt "
+      + "OR (h.committedAt = :afterCommittedAt AND h.id > :afterId)) "
+      + "ORDER BY h.committedAt, h.id")
+  List<ReservationHold> findCommittedAfter(
+      @Param("afterCommittedAt") LocalDateTime afterCommittedAt,
+      @Param("afterId") long afterId,
+      @Param("before") LocalDateTime before,
+      Pageable pageable);
+
+  // Expire holds while they are still ACTIVE (a write-behind may have consumed them meanwhile)
+  @Transactional
+  @Modifying
+  @Query("UPDATE ReservationHold h SET h.status = :expired, h.updatedAt = :now "
+      + "WHERE h.id IN :ids AND h.status = :active")
+  int expireActive(
+      @Param("ids") Collection<Long> ids,
+      @Param("active") HoldStatus active,
+      @Param("expired") HoldStatus expired,
+      @Param("now") LocalDateTime now);
+
+  // Purge consumed holds in chunks, also through idx_reservation_hold_status_expires
+  @Transactional
+  @Modifying
+  @Query(value = "DELETE FROM reservation_hold "
+      + "WHERE status IN ('COMMITTED', 'RELEASED', 'EXPIRED') AND expires_at < :before "
+      + "LIMIT :limit", nativeQuery = true)
+  int deleteConsumedBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
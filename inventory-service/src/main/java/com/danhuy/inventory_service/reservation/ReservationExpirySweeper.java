@@ -0,0 +1,121 @@
+package com.danhuy.inventory_service.reservation;
+
+import com.danhuy.common_service.dto.OrderItemDto;
+import com.danhuy.inventory_service.engine.ReservationEngine;
+import com.danhuy.inventory_service.entity.ReservationHold;
+import com.danhuy.inventory_service.enums.HoldStatus;
+import com.danhuy.inventory_service.repository.ReservationHoldRepository;
+import com.danhuy.inventory_service.service.InventoryService;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Give the stock of abandoned orders back: ACTIVE holds past their expiresAt are released in
+ * batches (read through the status / expiresAt index), consumed holds are purged after the
+ * retention period.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReservationExpirySweeper {
+
+  private final InventoryService inventoryService;
+  private final ReservationEngine reservationEngine;
+  private final ReservationHoldRepository reservationHoldRepository;
+
+  @Value("${inventory.reservation.sweeper.batch-size:200}")
+  private int batchSize;
+
+  @Value("${inventory.reservation.retention-days:7}")
+  private long retentionDays;
+
+  /**
+   * release expired holds, one transaction per batch.
+   */
+  @Scheduled(fixedDelayString = "${inventory.reservation.sweeper.interval-ms:60000}")
+  public void releaseExpiredHolds() {
+    try {
+      if (reservationEngine.isEnabled()) {
+        while (releaseThroughEngine() == batchSize) {
+          log.debug("Expired holds left, sweep next batch");
+        }
+      } else {
+        while (inventoryService.releaseExpiredHolds(batchSize) == batchSize) {
+          log.debug("Expired holds left, sweep next batch");
+        }
+      }
+    } catch (Exception e) {
+      log.error("Error releasing expired reservation holds", e);
+    }
+  }
+
+  /**
+   * delete committed / released / expired holds older than the retention period.
+   */
+  @Scheduled(cron = "${inventory.reservation.purge-cron:0 30 3 * * *}")
+  public void purgeConsumedHolds() {
+    LocalDateTime before = LocalDateTime.now().minusDays(retentionDays);
+    int total = 0;
+    int deleted;
+    do {
+      deleted = reservationHoldRepository.deleteConsumedBefore(before, batchSize);
+      total += deleted;
+    } while (deleted == batchSize);
+    log.info("Purged {} consumed reservation holds", total);
+  }
+
+  /**
+   * The engine owns the holds, send it an EXPIRE per order. Holds are written behind: the engine
+   * writes the released ones as EXPIRED. A no-op for the engine (consumed in memory and not written
+   * yet, or a hold it does not know) is marked EXPIRED here while still ACTIVE, so it is not read
+   * again by every run; a pending write-behind still writes its final status over it.
+   *
+   * @return number of holds handled, less than the batch when holds are left for the next run
+   */
+  private int releaseThroughEngine() {
+    List<ReservationHold> expiredHolds = reservationHoldRepository.findExpired(
+        HoldStatus.ACTIVE, LocalDateTime.now(), PageRequest.of(0, batchSize));
+
+    Map<String, List<ReservationHold>> holdsByOrder = expiredHolds.stream()
+        .collect(Collectors.groupingBy(ReservationHold::getOrderId, LinkedHashMap::new,
+            Collectors.toList()));
+
+    int handled = 0;
+    List<Long> noOpHoldIds = new ArrayList<>();
+    for (Map.Entry<String, List<ReservationHold>> entry : holdsByOrder.entrySet()) {
+      List<ReservationHold> holds = entry.getValue();
+      try {
+        if (!reservationEngine.expire(entry.getKey(),
+            holds.stream().map(this::toItem).toList())) {
+          holds.forEach(hold -> noOpHoldIds.add(hold.getId()));
+        }
+        handled += holds.size();
+      } catch (RuntimeException e) {
+        // left ACTIVE, tried again on the next run
+        log.error("Engine cannot expire the hold of order {}", entry.getKey(), e);
+      }
+    }
+    if (!noOpHoldIds.isEmpty()) {
+      reservationHoldRepository.expireActive(noOpHoldIds, HoldStatus.ACTIVE, HoldStatus.EXPIRED,
+          LocalDateTime.now());
+    }
+    return handled;
+  }
+
+  private OrderItemDto toItem(ReservationHold hold) {
+    OrderItemDto item = new OrderItemDto();
+    item.setProductId(hold.getProductId());
+    item.setQuantity(hold.getQuantity());
+    return item;
+  }
+}
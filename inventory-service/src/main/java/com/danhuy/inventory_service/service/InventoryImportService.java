@@ -0,0 +1,12 @@
+package com.danhuy.inventory_service.service;
+
+import com.danhuy.inventory_service.dto.BulkImportResponse;
+import com.danhuy.inventory_service.enums.ImportFormat;
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface InventoryImportService {
+
+  // Create or update the quantity of many products from a streamed CSV / NDJSON body
+  BulkImportResponse importInventory(InputStream body, ImportFormat format) throws IOException;
+}
@@ -1,11 +1,15 @@
 package com.danhuy.inventory_service.service;
 
+import com.danhuy.common_service.dto.CommittedHoldDto;
+import com.danhuy.common_service.dto.StockLevelDto;
 import com.danhuy.common_service.event.inventory.InventoryCheckEvent;
 import com.danhuy.common_service.event.inventory.InventoryCheckResultEvent;
 import com.danhuy.common_service.event.inventory.InventoryUpdateEvent;
 import com.danhuy.common_service.event.inventory.InventoryUpdateResultEvent;
 import com.danhuy.inventory_service.dto.InventoryRequest;
 import com.danhuy.inventory_service.dto.InventoryResponse;
+import com.danhuy.inventory_service.dto.MovementResponse;
+import java.time.LocalDateTime;
 import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -22,14 +26,28 @@ public interface InventoryService {
   // Get inventory by product ID
   InventoryResponse getInventoryByProductId(Long productId);
 
+  // Get inventory records of many products at once
+  List<InventoryResponse> getAvailability(List<Long> productIds);
+
   // Get all inventory records with pagination
   Page<InventoryResponse> getAllInventory(Pageable pageable);
 
   // Check if inventory is available for products
   boolean isInStock(Long productId, Integer quantity);
 
+  // Get quantities of a product id range, in product id order
+  List<StockLevelDto> getStockLevels(long afterProductId, long toProductId, int size);
+
+  // Get the committed holds (units sold) after a (committedAt, id) cursor, in cursor order
+  List<CommittedHoldDto> getCommittedHolds(LocalDateTime afterCommittedAt, long afterId,
+      int size);
+
+  // Get stock movements of a product over a time range, oldest first
+  Page<MovementResponse> getMovements(Long productId, LocalDateTime from, LocalDateTime to,
+      Pageable pageable);
+
   // Get list of products that are low in stock
-  List<InventoryResponse> getLowStockProducts(Integer threshold);
+  Page<InventoryResponse> getLowStockProducts(Integer threshold, Pageable pageable);
   // ***** END API *****
 
   // ***** MESSAGE *****
@@ -38,5 +56,13 @@ public interface InventoryService {
 
   // Process inventory update request (from Kafka)
   InventoryUpdateResultEvent processInventoryUpdate(InventoryUpdateEvent request);
+
+  // Process a batch of inventory update requests (from Kafka)
+  List<InventoryUpdateResultEvent> processInventoryUpdates(List<InventoryUpdateEvent> requests);
   // ***** END MESSAGE *****
+
+  // ***** JOB *****
+  // Release a batch of expired reservation holds
+  int releaseExpiredHolds(int batchSize);
+  // ***** END JOB *****
 }
\ No newline at end of file
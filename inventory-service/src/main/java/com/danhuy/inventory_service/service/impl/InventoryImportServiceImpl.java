@@ -0,0 +1,253 @@
+package com.danhuy.inventory_service.service.impl;
+
+import com.danhuy.inventory_service.cache.InventoryCacheService;
+import com.danhuy.inventory_service.cache.LowStockWatchlist;
+import com.danhuy.inventory_service.dto.BulkImportResponse;
+import com.danhuy.inventory_service.dto.BulkImportResponse.LineError;
+import com.danhuy.inventory_service.dto.InventoryRequest;
+import com.danhuy.inventory_service.engine.ReservationEngine;
+import com.danhuy.inventory_service.entity.Inventory;
+import com.danhuy.inventory_service.enums.ImportFormat;
+import com.danhuy.inventory_service.enums.MovementType;
+import com.danhuy.inventory_service.journal.MovementJournal;
+import com.danhuy.inventory_service.kafka.StockChangePublisher;
+import com.danhuy.inventory_service.repository.InventoryRepository;
+import com.danhuy.inventory_service.service.InventoryImportService;
+import com.danhuy.inventory_service.service.InventoryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Bulk create / update of inventory quantities (warehouse sync). The body is read line by line,
+ * rows are upserted with JDBC batches, one transaction per batch, and caches are evicted per batch.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InventoryImportServiceImpl implements InventoryImportService {
+
+  // sharded rows are left to the sharding service, their quantity lives in the buckets
+  private static final String UPSERT_INVENTORY =
+      "INSERT INTO inventory (product_id, quantity, reserved_quantity, sharded, version, "
+          + "created_at, updated_at) VALUES (?, ?, 0, false, 1, ?, ?) ON DUPLICATE KEY UPDATE "
+          + "quantity = IF(sharded, quantity, VALUES(quantity)), "
+          + "reserved_quantity = IF(sharded, reserved_quantity, "
+          + "LEAST(reserved_quantity, VALUES(quantity))), "
+          + "version = version + 1, updated_at = VALUES(updated_at)";
+  // engine mode: only create missing rows, the engine owns the quantity of existing ones
+  private static final String INSERT_MISSING_INVENTORY =
+      "INSERT INTO inventory (product_id, quantity, reserved_quantity, sharded, version, "
+          + "created_at, updated_at) VALUES (?, ?, 0, false, 1, ?, ?) "
+          + "ON DUPLICATE KEY UPDATE product_id = product_id";
+
+  private final InventoryService inventoryService;
+  private final InventoryRepository inventoryRepository;
+  private final InventoryCacheService inventoryCacheService;
+  private final LowStockWatchlist lowStockWatchlist;
+  private final StockChangePublisher stockChangePublisher;
+  private final ReservationEngine reservationEngine;
+  private final MovementJournal movementJournal;
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectMapper objectMapper;
+  private final Validator validator;
+
+  @Value("${inventory.bulk-import.batch-size:1000}")
+  private int batchSize;
+
+  @Value("${inventory.bulk-import.max-errors:1000}")
+  private int maxErrors;
+
+  /**
+   * Import a CSV / NDJSON body without buffering it. A bad line only fails itself, a failed batch
+   * fails its rows and the import goes on. A repeated product takes the quantity of its last line,
+   * within a batch the later line replaces the earlier one, and batches are applied in order.
+   *
+   * @param body   InputStream
+   * @param format ImportFormat
+   * @return BulkImportResponse summary with per-line errors
+   * @throws IOException when the body cannot be read
+   */
+  @Override
+  public BulkImportResponse importInventory(InputStream body, ImportFormat format)
+      throws IOException {
+    BulkImportResponse summary = new BulkImportResponse();
+    Set<Long> shardedIds = reservationEngine.isEnabled()
+        ? Set.of()
+        : new HashSet<>(inventoryRepository.findShardedProductIds());
+    // product id -> quantity, and product id -> line for errors of a failed batch. A repeated
+    // product overwrites both, the last line wins as it does across batches
+    Map<Long, Integer> batch = new LinkedHashMap<>();
+    Map<Long, Long> lines = new LinkedHashMap<>();
+
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(body, StandardCharsets.UTF_8))) {
+      String line;
+      long lineNo = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNo++;
+        if (line.isBlank() || (lineNo == 1 && format == ImportFormat.CSV && isCsvHeader(line))) {
+          continue;
+        }
+        summary.setProcessedLines(summary.getProcessedLines() + 1);
+
+        InventoryRequest row;
+        try {
+          row = parse(line, format);
+        } catch (Exception e) {
+          addError(summary, lineNo, e.getMessage());
+          continue;
+        }
+
+        if (shardedIds.contains(row.getProductId())) {
+          importSharded(summary, lineNo, row);
+          continue;
+        }
+        batch.put(row.getProductId(), row.getQuantity());
+        lines.put(row.getProductId(), lineNo);
+        if (batch.size() >= batchSize) {
+          flush(summary, batch, lines, shardedIds);
+        }
+      }
+    }
+    flush(summary, batch, lines, shardedIds);
+
+    log.info("Inventory import finished: {} lines, {} imported, {} failed",
+        summary.getProcessedLines(), summary.getImportedRows(), summary.getFailedRows());
+    return summary;
+  }
+
+  // one transaction per batch. Rows sharded since the import started are left untouched by the
+  // upsert, they are imported through the sharding service afterward
+  private void flush(BulkImportResponse summary, Map<Long, Integer> batch,
+      Map<Long, Long> lines, Set<Long> shardedIds) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    List<Map.Entry<Long, Integer>> rows = new ArrayList<>(batch.entrySet());
+    boolean engineMode = reservationEngine.isEnabled();
+    List<Long> shardedInBatch = new ArrayList<>();
+
+    try {
+      transactionTemplate.executeWithoutResult(status -> {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(engineMode ? INSERT_MISSING_INVENTORY : UPSERT_INVENTORY, rows,
+            batchSize, (ps, row) -> {
+              ps.setLong(1, row.getKey());
+              ps.setInt(2, row.getValue());
+              ps.setTimestamp(3, now);
+              ps.setTimestamp(4, now);
+            });
+        if (!engineMode) {
+          // sent after commit, the engine flush does it in engine mode
+          for (Inventory inventory : inventoryRepository.findByProductIdIn(
+              new ArrayList<>(batch.keySet()))) {
+            if (inventory.isSharded()) {
+              shardedInBatch.add(inventory.getProductId());
+            } else {
+              movementJournal.record(MovementType.IMPORT, inventory.getProductId(),
+                  batch.get(inventory.getProductId()), null, inventory.getQuantity(),
+                  inventory.getReservedQuantity());
+              lowStockWatchlist.track(inventory.getProductId(),
+                  inventory.getQuantity() - inventory.getReservedQuantity(),
+                  inventory::getVersion);
+              stockChangePublisher.publish(inventory.getProductId(), inventory.getQuantity(),
+                  inventory.getReservedQuantity(), inventory::getVersion);
+            }
+          }
+        }
+      });
+      if (engineMode) {
+        reservationEngine.setQuantities(batch);
+        batch.forEach((productId, quantity) -> movementJournal.record(MovementType.IMPORT,
+            productId, quantity, null, null, null));
+      }
+      inventoryCacheService.evictInventoryCaches(batch.keySet());
+      summary.setImportedRows(summary.getImportedRows() + batch.size() - shardedInBatch.size());
+    } catch (Exception e) {
+      log.error("Error importing inventory batch of {} rows", batch.size(), e);
+      lines.values().forEach(lineNo -> addError(summary, lineNo,
+          "Batch failed: " + e.getMessage()));
+      shardedInBatch.clear();
+    }
+
+    for (Long productId : shardedInBatch) {
+      shardedIds.add(productId);
+      importSharded(summary, lines.get(productId), InventoryRequest.builder()
+          .productId(productId)
+          .quantity(batch.get(productId))
+          .build());
+    }
+
+    batch.clear();
+    lines.clear();
+  }
+
+  private void importSharded(BulkImportResponse summary, long lineNo, InventoryRequest row) {
+    try {
+      inventoryService.updateInventory(row.getProductId(), row);
+      summary.setImportedRows(summary.getImportedRows() + 1);
+    } catch (Exception e) {
+      addError(summary, lineNo, e.getMessage());
+    }
+  }
+
+  private InventoryRequest parse(String line, ImportFormat format) throws IOException {
+    InventoryRequest row;
+    if (format == ImportFormat.NDJSON) {
+      row = objectMapper.readValue(line, InventoryRequest.class);
+    } else {
+      String[] columns = line.split(",");
+      if (columns.length != 2) {
+        throw new IllegalArgumentException("Expected 2 columns: productId,quantity");
+      }
+      row = InventoryRequest.builder()
+          .productId(Long.valueOf(columns[0].trim()))
+          .quantity(Integer.valueOf(columns[1].trim()))
+          .build();
+    }
+
+    Set<ConstraintViolation<InventoryRequest>> violations = validator.validate(row);
+    if (!violations.isEmpty()) {
+      throw new IllegalArgumentException(violations.stream()
+          .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+          .collect(Collectors.joining("; ")));
+    }
+    return row;
+  }
+
+  private boolean isCsvHeader(String line) {
+    String first = line.split(",")[0].trim();
+    return !first.isEmpty() && !Character.isDigit(first.charAt(0));
+  }
+
+  private void addError(BulkImportResponse summary, long lineNo, String message) {
+    summary.setFailedRows(summary.getFailedRows() + 1);
+    if (summary.getErrors().size() < maxErrors) {
+      summary.getErrors().add(new LineError(lineNo, message));
+    } else {
+      summary.setErrorsTruncated(true);
+    }
+  }
+}
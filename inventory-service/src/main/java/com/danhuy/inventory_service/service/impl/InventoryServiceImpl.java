@@ -4,30 +4,63 @@ import static com.danhuy.common_service.enums.InventoryUpdateType.COMMIT;
 import static com.danhuy.common_service.enums.InventoryUpdateType.RELEASE;
 import static com.danhuy.common_service.enums.InventoryUpdateType.RESERVE;
 
+import com.danhuy.common_service.dto.CommittedHoldDto;
 import com.danhuy.common_service.dto.OrderItemDto;
+import com.danhuy.common_service.dto.StockLevelDto;
+import com.danhuy.common_service.enums.InventoryUpdateType;
 import com.danhuy.common_service.enums.MessageEnum;
 import com.danhuy.common_service.event.inventory.InventoryCheckEvent;
 import com.danhuy.common_service.event.inventory.InventoryCheckResultEvent;
 import com.danhuy.common_service.event.inventory.InventoryUpdateEvent;
 import com.danhuy.common_service.event.inventory.InventoryUpdateResultEvent;
 import com.danhuy.common_service.exception.ex.AppException;
+import com.danhuy.inventory_service.cache.AvailabilityIndex;
 import com.danhuy.inventory_service.cache.InventoryCacheService;
+import com.danhuy.inventory_service.cache.LowStockWatchlist;
 import com.danhuy.inventory_service.dto.InventoryRequest;
 import com.danhuy.inventory_service.dto.InventoryResponse;
+import com.danhuy.inventory_service.dto.MovementResponse;
+import com.danhuy.inventory_service.dto.StockTotals;
+import com.danhuy.inventory_service.engine.ReservationEngine;
+import com.danhuy.inventory_service.engine.StockCounter;
 import com.danhuy.inventory_service.entity.Inventory;
+import com.danhuy.inventory_service.entity.ReservationHold;
+import com.danhuy.inventory_service.enums.HoldStatus;
+import com.danhuy.inventory_service.enums.MovementType;
+import com.danhuy.inventory_service.journal.MovementJournal;
+import com.danhuy.inventory_service.journal.MovementJournalRepository;
+import com.danhuy.inventory_service.kafka.StockChangePublisher;
 import com.danhuy.inventory_service.repository.InventoryRepository;
+import com.danhuy.inventory_service.repository.ReservationHoldRepository;
 import com.danhuy.inventory_service.service.InventoryService;
+import com.danhuy.inventory_service.sharding.InventoryShardingService;
+import com.danhuy.inventory_service.sharding.LockContentionTracker;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 @RequiredArgsConstructor
@@ -36,6 +69,22 @@ public class InventoryServiceImpl implements InventoryService {
 
   private final InventoryRepository inventoryRepository;
   private final InventoryCacheService inventoryCacheService;
+  private final InventoryShardingService inventoryShardingService;
+  private final LockContentionTracker lockContentionTracker;
+  private final ReservationEngine reservationEngine;
+  private final ReservationHoldRepository reservationHoldRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final LowStockWatchlist lowStockWatchlist;
+  private final AvailabilityIndex availabilityIndex;
+  private final StockChangePublisher stockChangePublisher;
+  private final MovementJournal movementJournal;
+  private final MovementJournalRepository movementJournalRepository;
+
+  @Value("${inventory.reservation.hold-ttl-minutes:30}")
+  private long holdTtlMinutes;
+
+  @Value("${inventory.reservation.commit-settle-ms:10000}")
+  private long commitSettleMs;
 
   // ***** API *****
 
@@ -60,6 +109,8 @@ public class InventoryServiceImpl implements InventoryService {
         .build();
 
     Inventory savedInventory = inventoryRepository.save(inventory);
+    journal(MovementType.CREATE, savedInventory, savedInventory.getQuantity(), null);
+    stockChanged(savedInventory);
     return mapToResponse(savedInventory);
   }
 
@@ -77,16 +128,38 @@ public class InventoryServiceImpl implements InventoryService {
         .orElseThrow(
             () -> new AppException(MessageEnum.INVENTORY_NOT_EXISTED, productId));
 
-    inventory.setQuantity(inventoryRequest.getQuantity());
+    if (reservationEngine.isEnabled()) {
+      // The engine owns the stock and writes it behind into the inventory row
+      StockCounter stock = reservationEngine.setQuantity(productId, inventoryRequest.getQuantity());
+      movementJournal.record(MovementType.UPDATE, productId, inventoryRequest.getQuantity(), null,
+          stock.getQuantity(), stock.getReservedQuantity());
+      // the watchlist follows the row version, updated once the engine has written the row
+      inventoryCacheService.evictInventoryCache(productId);
+      return mapToResponse(inventory);
+    }
 
-    // Make sure reserved quantity is not more than total quantity
-    if (inventory.getReservedQuantity() > inventory.getQuantity()) {
-      inventory.setReservedQuantity(inventory.getQuantity());
+    if (inventory.isSharded()) {
+      // Spread the new quantity over the buckets, keep the snapshot in the inventory row
+      StockTotals totals = inventoryShardingService.setTotalQuantity(productId,
+          inventoryRequest.getQuantity());
+      inventory.setQuantity(totals.quantity().intValue());
+      inventory.setReservedQuantity(totals.reservedQuantity().intValue());
+    } else {
+      inventory.setQuantity(inventoryRequest.getQuantity());
+
+      // Make sure reserved quantity is not more than total quantity
+      if (inventory.getReservedQuantity() > inventory.getQuantity()) {
+        inventory.setReservedQuantity(inventory.getQuantity());
+      }
     }
 
     Inventory updatedInventory = inventoryRepository.save(inventory);
-    // Evict inventory from the cache
-    inventoryCacheService.evictInventoryCache(productId);
+    journal(MovementType.UPDATE, updatedInventory, inventoryRequest.getQuantity(), null);
+    if (!updatedInventory.isSharded()) {
+      // Write the new stock through to the cache and the low-stock watchlist, the sharding
+      // service does it for sharded products
+      stockChanged(updatedInventory);
+    }
     return mapToResponse(updatedInventory);
   }
 
@@ -103,19 +176,52 @@ public class InventoryServiceImpl implements InventoryService {
 
     if (cachedInventory != null) {
       log.info("Inventory found in cache: {}", productId);
-      return cachedInventory;
+      return withEngineStock(cachedInventory);
     }
 
-    Inventory inventory = inventoryRepository.findByProductId(productId)
-        .orElseThrow(
-            () -> new AppException(MessageEnum.INVENTORY_NOT_EXISTED, productId));
-
-    InventoryResponse response = mapToResponse(inventory);
+    // read-write transaction: what is cached comes from the primary, never from a lagging replica
+    InventoryResponse response = transactionTemplate.execute(status -> mapToResponse(
+        inventoryRepository.findByProductId(productId).orElseThrow(
+            () -> new AppException(MessageEnum.INVENTORY_NOT_EXISTED, productId))));
     // Cache the inventory information
     inventoryCacheService.cacheInventory(response);
     return response;
   }
 
+  /**
+   * Get inventory information of many products: one MGET for the cached ones, one query for the
+   * misses, then one pipeline to cache them.
+   *
+   * @param productIds List<Long>
+   * @return List<InventoryResponse> in the order of productIds, unknown products are left out
+   */
+  @Override
+  public List<InventoryResponse> getAvailability(List<Long> productIds) {
+    List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(productIds));
+    Map<Long, InventoryResponse> responses = new HashMap<>(
+        inventoryCacheService.getInventoriesFromCache(distinctIds));
+
+    List<Long> missedIds = distinctIds.stream()
+        .filter(productId -> !responses.containsKey(productId))
+        .toList();
+    if (!missedIds.isEmpty()) {
+      // from the primary, see getInventoryByProductId
+      List<InventoryResponse> loaded = transactionTemplate.execute(status -> inventoryRepository
+          .findByProductIdIn(missedIds).stream()
+          .map(this::mapToResponse)
+          .toList());
+      // Cache the inventory information
+      inventoryCacheService.cacheInventories(loaded);
+      loaded.forEach(response -> responses.put(response.getProductId(), response));
+    }
+
+    return distinctIds.stream()
+        .map(responses::get)
+        .filter(Objects::nonNull)
+        .map(this::withEngineStock)
+        .toList();
+  }
+
   /**
    * Get all inventory information of the product.
    *
@@ -123,13 +229,15 @@ public class InventoryServiceImpl implements InventoryService {
    * @return Page<InventoryResponse>
    */
   @Override
+  @Transactional(readOnly = true)
   public Page<InventoryResponse> getAllInventory(Pageable pageable) {
     return inventoryRepository.findAll(pageable)
         .map(this::mapToResponse);
   }
 
   /**
-   * Check the available quantity of the product.
+   * Check the available quantity of the product. Answered from memory (reservation engine, then
+   * availability index), the database is read only for products the index does not know.
    *
    * @param productId Long
    * @param quantity  Integer
@@ -137,24 +245,107 @@ public class InventoryServiceImpl implements InventoryService {
    */
   @Override
   public boolean isInStock(Long productId, Integer quantity) {
+    StockCounter engineStock = reservationEngine.getStock(productId);
+    if (engineStock != null) {
+      return engineStock.getAvailableQuantity() >= quantity;
+    }
+    if (availabilityIndex.isReady()) {
+      int availableQuantity = availabilityIndex.getAvailableQuantity(productId);
+      if (availableQuantity != AvailabilityIndex.MISSING) {
+        return availableQuantity >= quantity;
+      }
+    }
     return inventoryRepository.findByProductId(productId)
-        .map(inventory -> inventory.hasAvailableQuantity(quantity))
+        .map(inventory -> getAvailableQuantity(inventory) >= quantity)
         .orElse(false);
   }
 
   /**
-   * Get all inventory information if quantity below a threshold
+   * Get quantities of the products in (afterProductId, toProductId], by product id (keyset page).
+   *
+   * @param afterProductId long, exclusive
+   * @param toProductId    long, inclusive
+   * @param size           int
+   * @return List<StockLevelDto>
+   */
+  @Override
+  @Transactional(readOnly = true)
+  public List<StockLevelDto> getStockLevels(long afterProductId, long toProductId, int size) {
+    return inventoryRepository.findStockLevels(afterProductId, toProductId,
+        PageRequest.ofSize(size));
+  }
+
+  /**
+   * Get the committed holds (units sold to orders) after a (committedAt, id) cursor, in cursor
+   * order. Holds committed in the last settle period are left for later: a transaction that
+   * stamped an earlier committedAt may not be visible yet.
+   *
+   * @param afterCommittedAt LocalDateTime, cursor time
+   * @param afterId          long, exclusive within the cursor time
+   * @param size             int
+   * @return List<CommittedHoldDto>
+   */
+  @Override
+  @Transactional(readOnly = true)
+  public List<CommittedHoldDto> getCommittedHolds(LocalDateTime afterCommittedAt, long afterId,
+      int size) {
+    LocalDateTime before = LocalDateTime.now().minus(Duration.ofMillis(commitSettleMs));
+    return reservationHoldRepository.findCommittedAfter(afterCommittedAt, afterId, before,
+            PageRequest.of(0, size)).stream()
+        .map(hold -> new CommittedHoldDto(hold.getId(), hold.getProductId(), hold.getQuantity(),
+            hold.getCommittedAt()))
+        .toList();
+  }
+
+  /**
+   * Get the stock movements of a product in [from, to), oldest first, from the movement journal.
+   *
+   * @param productId Long
+   * @param from      LocalDateTime inclusive
+   * @param to        LocalDateTime exclusive
+   * @param pageable  Pageable
+   * @return Page<MovementResponse>
+   */
+  @Override
+  @Transactional(readOnly = true)
+  public Page<MovementResponse> getMovements(Long productId, LocalDateTime from, LocalDateTime to,
+      Pageable pageable) {
+    return movementJournalRepository.findByProductId(productId, from, to, pageable);
+  }
+
+  /**
+   * Get all inventory information if available quantity below a threshold. Read from the low-stock
+   * watchlist, or from the indexed available_quantity column when the watchlist is off.
    *
    * @param threshold Integer
-   * @return List<InventoryResponse>
+   * @param pageable  Pageable
+   * @return Page<InventoryResponse>
    */
   @Override
-  public List<InventoryResponse> getLowStockProducts(Integer threshold) {
-    return inventoryRepository.findAll().stream()
-        .filter(
-            inventory -> (inventory.getQuantity() - inventory.getReservedQuantity()) <= threshold)
-        .map(this::mapToResponse)
-        .collect(Collectors.toList());
+  @Transactional(readOnly = true)
+  public Page<InventoryResponse> getLowStockProducts(Integer threshold, Pageable pageable) {
+    if (lowStockWatchlist.isEnabled()) {
+      try {
+        List<Long> productIds = new ArrayList<>(lowStockWatchlist.findProductIds(threshold,
+            pageable.getOffset(), pageable.getPageSize()));
+        Map<Long, Inventory> inventoryMap = inventoryRepository.findByProductIdIn(productIds)
+            .stream()
+            .collect(Collectors.toMap(Inventory::getProductId, inventory -> inventory));
+
+        // keep the order of the watchlist (lowest available quantity first)
+        List<InventoryResponse> content = productIds.stream()
+            .map(inventoryMap::get)
+            .filter(Objects::nonNull)
+            .map(this::mapToResponse)
+            .toList();
+        return new PageImpl<>(content, pageable, lowStockWatchlist.count(threshold));
+      } catch (Exception e) {
+        log.error("Error reading low-stock watchlist, query the database", e);
+      }
+    }
+
+    return inventoryRepository.findLowStock(threshold, pageable)
+        .map(this::mapToResponse);
   }
 
   // ***** END API *****
@@ -197,9 +388,10 @@ public class InventoryServiceImpl implements InventoryService {
         continue;
       }
 
-      if (!inventory.hasAvailableQuantity(item.getQuantity())) {
+      long availableQuantity = getAvailableQuantity(inventory);
+      if (availableQuantity < item.getQuantity()) {
         outOfStockItems.add("Product ID " + item.getProductId() +
-            " has only " + (inventory.getQuantity() - inventory.getReservedQuantity()) +
+            " has only " + availableQuantity +
             " available but " + item.getQuantity() + " requested");
       }
     }
@@ -218,34 +410,69 @@ public class InventoryServiceImpl implements InventoryService {
   }
 
   /**
-   * Process inventory update.
+   * Process inventory update in its own transaction. A failure rolls the whole order back before
+   * its failed result is built.
    *
    * @param request InventoryUpdateRequest
    * @return InventoryUpdateResult
    */
   @Override
-  @Transactional
   public InventoryUpdateResultEvent processInventoryUpdate(InventoryUpdateEvent request) {
     log.info("Processing inventory update for order: {}, type: {}",
         request.getOrderId(), request.getUpdateType());
 
     try {
-      return switch (request.getUpdateType()) {
+      return transactionTemplate.execute(status -> switch (request.getUpdateType()) {
         case RESERVE -> reserveInventory(request);
         case COMMIT -> commitInventory(request);
         case RELEASE -> releaseInventory(request);
-      };
+      });
+    } catch (DataIntegrityViolationException e) {
+      if (request.getUpdateType() != RESERVE) {
+        log.error("Error processing inventory update for order: {}", request.getOrderId(), e);
+        return failedResult(request, e);
+      }
+      // a concurrent delivery of the same order inserted its holds first (unique order, product)
+      log.info("Order {} was reserved concurrently, skip", request.getOrderId());
+      return successResult(request.getOrderId(), RESERVE);
     } catch (Exception e) {
       log.error("Error processing inventory update for order: {}", request.getOrderId(), e);
-      return InventoryUpdateResultEvent.builder()
-          .orderId(request.getOrderId())
-          .success(false)
-          .message("Error processing inventory update : " + e.getMessage())
-          .updateType(request.getUpdateType())
-          .build();
+      return failedResult(request, e);
     }
   }
 
+  /**
+   * Process a poll of inventory updates in one transaction. Rows of the whole batch are locked
+   * up front in ascending product id, every order is validated before it changes anything, so a
+   * failed order only gets a failed result and does not roll back the others. Orders touching
+   * sharded products, and every order when the batch transaction itself fails, are processed one
+   * by one afterward.
+   *
+   * @param requests List<InventoryUpdateEvent>
+   * @return List<InventoryUpdateResultEvent> in the order of the requests
+   */
+  @Override
+  public List<InventoryUpdateResultEvent> processInventoryUpdates(
+      List<InventoryUpdateEvent> requests) {
+    log.info("Processing inventory update batch of {} orders", requests.size());
+    InventoryUpdateResultEvent[] results = new InventoryUpdateResultEvent[requests.size()];
+
+    try {
+      transactionTemplate.executeWithoutResult(status -> applyBatch(requests, results));
+    } catch (Exception e) {
+      log.error("Error processing inventory update batch, retry order by order", e);
+      Arrays.fill(results, null);
+    }
+
+    for (int i = 0; i < requests.size(); i++) {
+      if (results[i] == null) {
+        // own transaction, rolled back as a whole when the order fails
+        results[i] = processInventoryUpdate(requests.get(i));
+      }
+    }
+    return Arrays.asList(results);
+  }
+
   /**
    * Reserve inventory (RESERVE) - tạm thời đặt chỗ trước chứ không trừ quantity
    *
@@ -253,27 +480,36 @@ public class InventoryServiceImpl implements InventoryService {
    * @return InventoryUpdateResultEvent
    */
   private InventoryUpdateResultEvent reserveInventory(InventoryUpdateEvent request) {
-    // update for every item
-    for (OrderItemDto item : request.getOrderItems()) {
-      // lock record to update quantity in stock
-      Inventory inventory = inventoryRepository.findWithLockByProductId(item.getProductId())
-          .orElseThrow(
-              () -> new AppException(MessageEnum.INVENTORY_NOT_EXISTED, item.getProductId()));
-
-      if (!inventory.hasAvailableQuantity(item.getQuantity())) {
-        throw new AppException(MessageEnum.NOT_ENOUGH_RESERVE_QUANTITY, item.getProductId());
-      }
+    String orderId = request.getOrderId();
+    if (!reservationHoldRepository.findByOrderId(orderId).isEmpty()) {
+      // redelivered message, the order already holds its stock. Two deliveries running at once
+      // both pass this check: the second fails on the unique hold and is rolled back
+      log.info("Order {} is already reserved, skip", orderId);
+      return successResult(orderId, RESERVE);
+    }
 
-      inventory.reserveQuantity(item.getQuantity());
-      inventoryRepository.save(inventory);
+    // merge items of the same product, one hold per (orderId, productId)
+    Map<Long, Integer> requested = new TreeMap<>();
+    for (OrderItemDto item : request.getOrderItems()) {
+      requested.merge(item.getProductId(), item.getQuantity(), Integer::sum);
     }
 
-    return InventoryUpdateResultEvent.builder()
-        .orderId(request.getOrderId())
-        .success(true)
-        .message(MessageEnum.RESERVE_INVENTORY_SUCCESS.getMessage())
-        .updateType(RESERVE)
-        .build();
+    LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(holdTtlMinutes);
+    List<ReservationHold> holds = new ArrayList<>(requested.size());
+    // update for every item
+    requested.forEach((productId, quantity) -> {
+      reserveStock(productId, quantity, orderId);
+      holds.add(ReservationHold.builder()
+          .orderId(orderId)
+          .productId(productId)
+          .quantity(quantity)
+          .status(HoldStatus.ACTIVE)
+          .expiresAt(expiresAt)
+          .build());
+    });
+    reservationHoldRepository.saveAll(holds);
+
+    return successResult(orderId, RESERVE);
   }
 
   /**
@@ -283,24 +519,9 @@ public class InventoryServiceImpl implements InventoryService {
    * @return InventoryUpdateResultEvent
    */
   private InventoryUpdateResultEvent commitInventory(InventoryUpdateEvent request) {
-    // update for every item
-    for (OrderItemDto item : request.getOrderItems()) {
-      // lock record to update quantity in stock
-      Inventory inventory = inventoryRepository.findWithLockByProductId(item.getProductId())
-          .orElseThrow(
-              () -> new AppException(MessageEnum.INVENTORY_NOT_EXISTED, item.getProductId()));
+    consumeHolds(request, HoldStatus.COMMITTED);
 
-      inventory.reduceQuantity(item.getQuantity());
-      inventory.releaseReservedQuantity(item.getQuantity());
-      inventoryRepository.save(inventory);
-    }
-
-    return InventoryUpdateResultEvent.builder()
-        .orderId(request.getOrderId())
-        .success(true)
-        .message("Inventory committed successfully")
-        .updateType(COMMIT)
-        .build();
+    return successResult(request.getOrderId(), COMMIT);
   }
 
   /**
@@ -310,35 +531,443 @@ public class InventoryServiceImpl implements InventoryService {
    * @return InventoryUpdateResultEvent
    */
   private InventoryUpdateResultEvent releaseInventory(InventoryUpdateEvent request) {
-    // update for every item
-    for (OrderItemDto item : request.getOrderItems()) {
-      // lock record to update quantity in stock
-      Inventory inventory = inventoryRepository.findWithLockByProductId(item.getProductId())
-          .orElseThrow(
-              () -> new AppException(MessageEnum.INVENTORY_NOT_EXISTED, item.getProductId()));
+    consumeHolds(request, HoldStatus.RELEASED);
+
+    return successResult(request.getOrderId(), RELEASE);
+  }
+
+  /**
+   * Consume the ACTIVE holds of an order (COMMIT or RELEASE). A redelivered message finds no ACTIVE
+   * hold anymore and does nothing.
+   *
+   * @param request InventoryUpdateEvent
+   * @param status  HoldStatus COMMITTED or RELEASED
+   */
+  private void consumeHolds(InventoryUpdateEvent request, HoldStatus status) {
+    String orderId = request.getOrderId();
+    boolean commit = status == HoldStatus.COMMITTED;
+    MovementType type = commit ? MovementType.COMMIT : MovementType.RELEASE;
+    List<ReservationHold> holds = reservationHoldRepository
+        .findWithLockByOrderIdOrderByProductId(orderId);
+
+    if (holds.isEmpty()) {
+      // reserved before the ledger existed, fall back to the items of the message
+      for (OrderItemDto item : request.getOrderItems()) {
+        consumeStock(item.getProductId(), item.getQuantity(), type, orderId);
+      }
+      return;
+    }
+
+    List<ReservationHold> activeHolds = holds.stream().filter(ReservationHold::isActive).toList();
+    if (activeHolds.isEmpty()) {
+      if (commit && holds.stream().noneMatch(hold -> hold.getStatus() == HoldStatus.COMMITTED)) {
+        // stock has gone back to the shelf, the order cannot be committed anymore
+        throw new AppException(MessageEnum.RESERVATION_EXPIRED, orderId);
+      }
+      log.info("Holds of order {} are already consumed, skip {}", orderId, status);
+      return;
+    }
+
+    LocalDateTime committedAt = commit ? LocalDateTime.now() : null;
+    for (ReservationHold hold : activeHolds) {
+      consumeStock(hold.getProductId(), hold.getQuantity(), type, orderId);
+      hold.setStatus(status);
+      hold.setCommittedAt(committedAt);
+    }
+    reservationHoldRepository.saveAll(activeHolds);
+  }
+
+  /**
+   * Apply a batch inside the current transaction, filling results. A null result means the order
+   * is left to be processed on its own.
+   *
+   * @param requests List<InventoryUpdateEvent>
+   * @param results  InventoryUpdateResultEvent[]
+   */
+  private void applyBatch(List<InventoryUpdateEvent> requests,
+      InventoryUpdateResultEvent[] results) {
+    Set<String> orderIds = requests.stream()
+        .map(InventoryUpdateEvent::getOrderId)
+        .collect(Collectors.toSet());
+    Map<String, List<ReservationHold>> holdsByOrder = new HashMap<>();
+    for (ReservationHold hold : reservationHoldRepository
+        .findWithLockByOrderIdInOrderByOrderIdAscProductIdAsc(orderIds)) {
+      holdsByOrder.computeIfAbsent(hold.getOrderId(), id -> new ArrayList<>()).add(hold);
+    }
+
+    Set<Long> productIds = new TreeSet<>();
+    requests.forEach(request -> request.getOrderItems()
+        .forEach(item -> productIds.add(item.getProductId())));
+    holdsByOrder.values().forEach(holds -> holds
+        .forEach(hold -> productIds.add(hold.getProductId())));
+
+    // lock every row of the batch at once, in ascending product id
+    Map<Long, Inventory> inventories = new HashMap<>();
+    for (Inventory inventory : inventoryRepository
+        .findWithLockByProductIdInOrderByProductId(productIds)) {
+      inventories.put(inventory.getProductId(), inventory);
+    }
+
+    Set<String> deferredOrders = new HashSet<>();
+    for (int i = 0; i < requests.size(); i++) {
+      InventoryUpdateEvent request = requests.get(i);
+      // keep the order of messages of the same order
+      if (deferredOrders.contains(request.getOrderId())) {
+        continue;
+      }
+
+      try {
+        results[i] = applyInBatch(request, inventories, holdsByOrder);
+      } catch (AppException e) {
+        log.warn("Inventory update of order {} failed in batch: {}", request.getOrderId(),
+            e.getMessage());
+        results[i] = failedResult(request, e);
+      }
+      if (results[i] == null) {
+        deferredOrders.add(request.getOrderId());
+      }
+    }
+
+    inventoryRepository.saveAll(inventories.values());
+    inventories.values().stream()
+        .filter(inventory -> !inventory.isSharded())
+        .forEach(this::stockChanged);
+    reservationHoldRepository.saveAll(holdsByOrder.values().stream()
+        .flatMap(List::stream)
+        .toList());
+  }
+
+  /**
+   * Apply one order of a batch on the locked rows. Everything is checked before the first row is
+   * changed.
+   *
+   * @param request      InventoryUpdateEvent
+   * @param inventories  locked inventory rows by product id
+   * @param holdsByOrder locked holds by order id, new holds are added to it
+   * @return InventoryUpdateResultEvent, null if the order touches a sharded product
+   */
+  private InventoryUpdateResultEvent applyInBatch(InventoryUpdateEvent request,
+      Map<Long, Inventory> inventories, Map<String, List<ReservationHold>> holdsByOrder) {
+    String orderId = request.getOrderId();
+    InventoryUpdateType type = request.getUpdateType();
+    List<ReservationHold> holds = holdsByOrder.computeIfAbsent(orderId, id -> new ArrayList<>());
+
+    Map<Long, Integer> quantities = new TreeMap<>();
+    List<ReservationHold> activeHolds = List.of();
+    if (type == RESERVE && !holds.isEmpty()) {
+      return successResult(orderId, type);
+    } else if (type == RESERVE || holds.isEmpty()) {
+      for (OrderItemDto item : request.getOrderItems()) {
+        quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+      }
+    } else {
+      activeHolds = holds.stream().filter(ReservationHold::isActive).toList();
+      if (activeHolds.isEmpty()) {
+        if (type == COMMIT && holds.stream()
+            .noneMatch(hold -> hold.getStatus() == HoldStatus.COMMITTED)) {
+          throw new AppException(MessageEnum.RESERVATION_EXPIRED, orderId);
+        }
+        return successResult(orderId, type);
+      }
+      activeHolds.forEach(hold -> quantities.merge(hold.getProductId(), hold.getQuantity(),
+          Integer::sum));
+    }
 
-      inventory.releaseReservedQuantity(item.getQuantity());
-      inventoryRepository.save(inventory);
+    for (Long productId : quantities.keySet()) {
+      Inventory inventory = inventories.get(productId);
+      if (inventory == null) {
+        throw new AppException(MessageEnum.INVENTORY_NOT_EXISTED, productId);
+      }
+      if (inventory.isSharded()) {
+        // buckets are locked by the sharding service, not part of the batch
+        return null;
+      }
     }
 
+    quantities.forEach((productId, quantity) -> {
+      Inventory inventory = inventories.get(productId);
+      if (type == RESERVE && !inventory.hasAvailableQuantity(quantity)) {
+        throw new AppException(MessageEnum.NOT_ENOUGH_RESERVE_QUANTITY, productId);
+      }
+      if (type != RESERVE && !inventory.hasReservedQuantity(quantity)) {
+        throw new AppException(MessageEnum.NOT_RELEASE_RESERVE_QUANTITY);
+      }
+    });
+
+    LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(holdTtlMinutes);
+    quantities.forEach((productId, quantity) -> {
+      Inventory inventory = inventories.get(productId);
+      if (type == RESERVE) {
+        inventory.reserveQuantity(quantity);
+        holds.add(ReservationHold.builder()
+            .orderId(orderId)
+            .productId(productId)
+            .quantity(quantity)
+            .status(HoldStatus.ACTIVE)
+            .expiresAt(expiresAt)
+            .build());
+      } else {
+        inventory.releaseReservedQuantity(quantity);
+        if (type == COMMIT) {
+          inventory.reduceQuantity(quantity);
+        }
+      }
+      journal(MovementType.valueOf(type.name()), inventory, quantity, orderId);
+    });
+    HoldStatus consumedStatus = type == COMMIT ? HoldStatus.COMMITTED : HoldStatus.RELEASED;
+    LocalDateTime committedAt = type == COMMIT ? LocalDateTime.now() : null;
+    activeHolds.forEach(hold -> {
+      hold.setStatus(consumedStatus);
+      hold.setCommittedAt(committedAt);
+    });
+
+    return successResult(orderId, type);
+  }
+
+  private InventoryUpdateResultEvent successResult(String orderId, InventoryUpdateType type) {
     return InventoryUpdateResultEvent.builder()
-        .orderId(request.getOrderId())
+        .orderId(orderId)
         .success(true)
-        .message("Inventory released successfully")
-        .updateType(RELEASE)
+        .message(switch (type) {
+          case RESERVE -> MessageEnum.RESERVE_INVENTORY_SUCCESS.getMessage();
+          case COMMIT -> "Inventory committed successfully";
+          case RELEASE -> "Inventory released successfully";
+        })
+        .updateType(type)
+        .build();
+  }
+
+  private InventoryUpdateResultEvent failedResult(InventoryUpdateEvent request, Exception e) {
+    return InventoryUpdateResultEvent.builder()
+        .orderId(request.getOrderId())
+        .success(false)
+        .message("Error processing inventory update : " + e.getMessage())
+        .updateType(request.getUpdateType())
         .build();
   }
 
   // ***** END MESSAGE *****
 
+  // ***** JOB *****
+
+  /**
+   * Release a batch of expired holds. Holds being consumed by a running COMMIT / RELEASE are
+   * skipped, they are not expired anymore when that transaction ends.
+   *
+   * @param batchSize int
+   * @return number of expired holds in the batch
+   */
+  @Override
+  @Transactional
+  public int releaseExpiredHolds(int batchSize) {
+    List<ReservationHold> expiredHolds = new ArrayList<>(reservationHoldRepository
+        .findExpiredSkipLocked(HoldStatus.ACTIVE, LocalDateTime.now(),
+            PageRequest.of(0, batchSize)));
+    // same lock order as stock movements
+    expiredHolds.sort(Comparator.comparing(ReservationHold::getProductId));
+
+    for (ReservationHold hold : expiredHolds) {
+      try {
+        consumeStock(hold.getProductId(), hold.getQuantity(), MovementType.EXPIRE,
+            hold.getOrderId());
+      } catch (AppException e) {
+        // reserved quantity was already trimmed by a manual update, only close the hold
+        log.warn("Cannot release expired hold of order {}, product {}: {}", hold.getOrderId(),
+            hold.getProductId(), e.getMessage());
+      }
+      hold.setStatus(HoldStatus.EXPIRED);
+    }
+    reservationHoldRepository.saveAll(expiredHolds);
+
+    if (!expiredHolds.isEmpty()) {
+      log.info("Released {} expired reservation holds", expiredHolds.size());
+    }
+    return expiredHolds.size();
+  }
+
+  // ***** END JOB *****
+
+  /**
+   * Reserve quantity of a product (sharded or not).
+   *
+   * @param productId Long
+   * @param quantity  int
+   * @param orderId   String
+   */
+  private void reserveStock(Long productId, int quantity, String orderId) {
+    Inventory inventory = isSharded(productId) ? null : lockRowStock(productId);
+    if (inventory == null) {
+      inventoryShardingService.reserve(productId, quantity);
+      movementJournal.record(MovementType.RESERVE, productId, quantity, orderId, null, null);
+      return;
+    }
+
+    if (!inventory.hasAvailableQuantity(quantity)) {
+      throw new AppException(MessageEnum.NOT_ENOUGH_RESERVE_QUANTITY, productId);
+    }
+
+    inventory.reserveQuantity(quantity);
+    inventoryRepository.save(inventory);
+    journal(MovementType.RESERVE, inventory, quantity, orderId);
+    stockChanged(inventory);
+  }
+
+  /**
+   * Commit (reduce quantity) or release reserved quantity of a product (sharded or not).
+   *
+   * @param productId Long
+   * @param quantity  int
+   * @param type      MovementType COMMIT, RELEASE or EXPIRE
+   * @param orderId   String
+   */
+  private void consumeStock(Long productId, int quantity, MovementType type, String orderId) {
+    boolean commit = type == MovementType.COMMIT;
+    Inventory inventory = isSharded(productId) ? null : lockRowStock(productId);
+    if (inventory == null) {
+      if (commit) {
+        inventoryShardingService.commit(productId, quantity);
+      } else {
+        inventoryShardingService.release(productId, quantity);
+      }
+      movementJournal.record(type, productId, quantity, orderId, null, null);
+      return;
+    }
+
+    // release first, reduceQuantity caps reserved quantity at the new quantity
+    inventory.releaseReservedQuantity(quantity);
+    if (commit) {
+      inventory.reduceQuantity(quantity);
+    }
+    inventoryRepository.save(inventory);
+    journal(type, inventory, quantity, orderId);
+    stockChanged(inventory);
+  }
+
+  /**
+   * Lock the inventory row of a product read as not sharded. The product may have been promoted
+   * to buckets before the lock was granted; the row is only a snapshot then, rebalance would
+   * overwrite a movement written to it.
+   *
+   * @param productId Long
+   * @return Inventory locked, null if the stock is in buckets now
+   */
+  private Inventory lockRowStock(Long productId) {
+    Inventory inventory = lockInventory(productId);
+    return inventory.isSharded() ? null : inventory;
+  }
+
+  /**
+   * Check whether stock of the product is split into buckets, without locking the inventory row.
+   *
+   * @param productId Long
+   * @return true if sharded
+   */
+  private boolean isSharded(Long productId) {
+    return inventoryRepository.findShardedByProductId(productId)
+        .orElseThrow(() -> new AppException(MessageEnum.INVENTORY_NOT_EXISTED, productId));
+  }
+
+  /**
+   * Lock the inventory row of the product and record how long the lock took.
+   *
+   * @param productId Long
+   * @return Inventory
+   */
+  private Inventory lockInventory(Long productId) {
+    long start = System.nanoTime();
+    Inventory inventory = inventoryRepository.findWithLockByProductId(productId)
+        .orElseThrow(() -> new AppException(MessageEnum.INVENTORY_NOT_EXISTED, productId));
+    lockContentionTracker.record(productId, System.nanoTime() - start);
+    return inventory;
+  }
+
+  /**
+   * Propagate the stock of a changed inventory row (not sharded) to the low-stock watchlist, the
+   * inventory-updated topic and, once committed, write it through to the cache. The version is read
+   * after commit, when Hibernate has incremented it.
+   *
+   * @param inventory Inventory
+   */
+  private void stockChanged(Inventory inventory) {
+    lowStockWatchlist.track(inventory.getProductId(),
+        inventory.getQuantity() - inventory.getReservedQuantity(), inventory::getVersion);
+    stockChangePublisher.publish(inventory.getProductId(), inventory.getQuantity(),
+        inventory.getReservedQuantity(), inventory::getVersion);
+    inventoryCacheService.refreshAfterCommit(inventory.getProductId(),
+        () -> mapToResponse(inventory));
+  }
+
+  /**
+   * Record a movement of a product in the movement journal, with the stock of the row after it.
+   *
+   * @param type      MovementType
+   * @param inventory Inventory
+   * @param quantity  int
+   * @param orderId   String, null for movements without order
+   */
+  private void journal(MovementType type, Inventory inventory, int quantity, String orderId) {
+    // buckets hold the stock of a sharded product, the row is only a snapshot
+    boolean known = !inventory.isSharded();
+    movementJournal.record(type, inventory.getProductId(), quantity, orderId,
+        known ? inventory.getQuantity() : null, known ? inventory.getReservedQuantity() : null);
+  }
+
+  /**
+   * The engine is ahead of the cache (write-behind), overlay its stock.
+   *
+   * @param response InventoryResponse
+   * @return InventoryResponse
+   */
+  private InventoryResponse withEngineStock(InventoryResponse response) {
+    StockCounter engineStock = reservationEngine.getStock(response.getProductId());
+    if (engineStock == null) {
+      return response;
+    }
+    // copy, the cached instance may be shared by the local cache
+    return InventoryResponse.builder()
+        .id(response.getId())
+        .productId(response.getProductId())
+        .quantity(engineStock.getQuantity())
+        .reservedQuantity(engineStock.getReservedQuantity())
+        .availableQuantity(engineStock.getAvailableQuantity())
+        .updatedAt(response.getUpdatedAt())
+        .version(response.getVersion())
+        .build();
+  }
+
+  private long getAvailableQuantity(Inventory inventory) {
+    StockCounter engineStock = reservationEngine.getStock(inventory.getProductId());
+    if (engineStock != null) {
+      return engineStock.getAvailableQuantity();
+    }
+    return inventory.isSharded()
+        ? inventoryShardingService.getTotals(inventory.getProductId()).availableQuantity()
+        : inventory.getQuantity() - inventory.getReservedQuantity();
+  }
+
   private InventoryResponse mapToResponse(Inventory inventory) {
+    int quantity = inventory.getQuantity();
+    int reservedQuantity = inventory.getReservedQuantity();
+    StockCounter engineStock = reservationEngine.getStock(inventory.getProductId());
+    if (engineStock != null) {
+      // The engine is ahead of the inventory row (write-behind)
+      quantity = engineStock.getQuantity();
+      reservedQuantity = engineStock.getReservedQuantity();
+    } else if (inventory.isSharded()) {
+      // Sharded product: the inventory row is only a snapshot, aggregate the buckets
+      StockTotals totals = inventoryShardingService.getTotals(inventory.getProductId());
+      quantity = totals.quantity().intValue();
+      reservedQuantity = totals.reservedQuantity().intValue();
+    }
+
     return InventoryResponse.builder()
         .id(inventory.getId())
         .productId(inventory.getProductId())
-        .quantity(inventory.getQuantity())
-        .reservedQuantity(inventory.getReservedQuantity())
-        .availableQuantity(inventory.getQuantity() - inventory.getReservedQuantity())
+        .quantity(quantity)
+        .reservedQuantity(reservedQuantity)
+        .availableQuantity(quantity - reservedQuantity)
         .updatedAt(inventory.getUpdatedAt())
+        .version(inventory.getVersion())
         .build();
   }
 }
\ No newline at end of file
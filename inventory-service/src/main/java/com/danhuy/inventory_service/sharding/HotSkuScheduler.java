@@ -0,0 +1,66 @@
+package com.danhuy.inventory_service.sharding;
+
+import com.danhuy.inventory_service.engine.ReservationEngine;
+import com.danhuy.inventory_service.repository.InventoryRepository;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Promote products with high lock contention to sharded inventory, and keep the buckets of sharded
+ * products balanced.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HotSkuScheduler {
+
+  private final LockContentionTracker lockContentionTracker;
+  private final InventoryShardingService inventoryShardingService;
+  private final InventoryRepository inventoryRepository;
+  private final ReservationEngine reservationEngine;
+
+  @Value("${inventory.sharding.promotion.lock-wait-threshold-ms:50}")
+  private long lockWaitThresholdMs;
+
+  @Value("${inventory.sharding.promotion.min-samples:20}")
+  private long minSamples;
+
+  /**
+   * promote products whose average lock wait in the last window is over the threshold.
+   */
+  @Scheduled(fixedDelayString = "${inventory.sharding.promotion.interval-ms:10000}")
+  public void promoteHotProducts() {
+    List<Long> hotProducts = lockContentionTracker.drainHotProducts(lockWaitThresholdMs,
+        minSamples);
+    // no row lock to spread when the reservation engine owns the stock
+    if (!inventoryShardingService.isEnabled() || reservationEngine.isEnabled()) {
+      return;
+    }
+
+    for (Long productId : hotProducts) {
+      try {
+        inventoryShardingService.promote(productId);
+      } catch (Exception e) {
+        log.error("Error promoting product {} to sharded inventory", productId, e);
+      }
+    }
+  }
+
+  /**
+   * rebalance the buckets of all sharded products.
+   */
+  @Scheduled(fixedDelayString = "${inventory.sharding.rebalance-interval-ms:30000}")
+  public void rebalanceShardedProducts() {
+    for (Long productId : inventoryRepository.findShardedProductIds()) {
+      try {
+        inventoryShardingService.rebalance(productId);
+      } catch (Exception e) {
+        log.error("Error rebalancing sharded inventory of product {}", productId, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,313 @@
+package com.danhuy.inventory_service.sharding;
+
+import com.danhuy.common_service.enums.MessageEnum;
+import com.danhuy.common_service.exception.ex.AppException;
+import com.danhuy.inventory_service.cache.AfterCommitChanges;
+import com.danhuy.inventory_service.cache.InventoryCacheService;
+import com.danhuy.inventory_service.cache.LowStockWatchlist;
+import com.danhuy.inventory_service.dto.ShardedStock;
+import com.danhuy.inventory_service.dto.StockTotals;
+import com.danhuy.inventory_service.entity.Inventory;
+import com.danhuy.inventory_service.entity.InventoryBucket;
+import com.danhuy.inventory_service.kafka.StockChangePublisher;
+import com.danhuy.inventory_service.repository.InventoryBucketRepository;
+import com.danhuy.inventory_service.repository.InventoryRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Stock movements of sharded (hot) products. The available quantity of a sharded product is split
+ * across N {@link InventoryBucket} rows, so concurrent reservations lock different rows. Every
+ * movement reaches the watchlist, the inventory-updated topic and the cache after commit, with the
+ * row version plus the bucket versions, since a bucket movement leaves the row version as it is.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InventoryShardingService {
+
+  private static final PageRequest FIRST = PageRequest.of(0, 1);
+
+  private final InventoryRepository inventoryRepository;
+  private final InventoryBucketRepository inventoryBucketRepository;
+  private final LowStockWatchlist lowStockWatchlist;
+  private final InventoryCacheService inventoryCacheService;
+  private final StockChangePublisher stockChangePublisher;
+
+  @Value("${inventory.sharding.enabled:false}")
+  private boolean enabled;
+
+  @Value("${inventory.sharding.bucket-count:8}")
+  private int bucketCount;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Reserve amount of a sharded product. Take the first free bucket that can hold the whole
+   * amount, otherwise lock all buckets and spread the reservation over them.
+   *
+   * @param productId Long
+   * @param amount    int
+   */
+  public void reserve(Long productId, int amount) {
+    List<InventoryBucket> candidates = inventoryBucketRepository.findAvailableSkipLocked(
+        productId, amount, FIRST);
+    if (!candidates.isEmpty()) {
+      InventoryBucket bucket = candidates.get(0);
+      bucket.reserveQuantity(amount);
+      inventoryBucketRepository.save(bucket);
+      stockChanged(productId);
+      return;
+    }
+
+    List<InventoryBucket> buckets = lockBuckets(productId);
+    if (sum(buckets, InventoryBucket::getAvailableQuantity) < amount) {
+      throw new AppException(MessageEnum.NOT_ENOUGH_RESERVE_QUANTITY, productId);
+    }
+
+    int remaining = amount;
+    for (InventoryBucket bucket : buckets) {
+      int taken = Math.min(remaining, bucket.getAvailableQuantity());
+      if (taken > 0) {
+        bucket.reserveQuantity(taken);
+        remaining -= taken;
+      }
+    }
+    inventoryBucketRepository.saveAll(buckets);
+    stockChanged(productId);
+  }
+
+  /**
+   * Commit reserved amount of a sharded product (reduce quantity and reserved quantity).
+   *
+   * @param productId Long
+   * @param amount    int
+   */
+  public void commit(Long productId, int amount) {
+    consumeReserved(productId, amount, true);
+  }
+
+  /**
+   * Release reserved amount of a sharded product.
+   *
+   * @param productId Long
+   * @param amount    int
+   */
+  public void release(Long productId, int amount) {
+    consumeReserved(productId, amount, false);
+  }
+
+  /**
+   * Aggregate the buckets of a sharded product.
+   *
+   * @param productId Long
+   * @return StockTotals
+   */
+  public StockTotals getTotals(Long productId) {
+    return inventoryBucketRepository.sumByProductId(productId);
+  }
+
+  /**
+   * Set the total quantity of a sharded product (manual update). Reserved quantity is kept unless
+   * it no longer fits, the available part is spread evenly over the buckets.
+   *
+   * @param productId Long
+   * @param quantity  int
+   * @return StockTotals after the update
+   */
+  public StockTotals setTotalQuantity(Long productId, int quantity) {
+    List<InventoryBucket> buckets = lockBuckets(productId);
+
+    // Make sure reserved quantity is not more than total quantity
+    int overReserved = sum(buckets, InventoryBucket::getReservedQuantity) - quantity;
+    for (int i = buckets.size() - 1; i >= 0 && overReserved > 0; i--) {
+      InventoryBucket bucket = buckets.get(i);
+      int trimmed = Math.min(overReserved, bucket.getReservedQuantity());
+      bucket.setReservedQuantity(bucket.getReservedQuantity() - trimmed);
+      overReserved -= trimmed;
+    }
+
+    int reserved = sum(buckets, InventoryBucket::getReservedQuantity);
+    spreadAvailable(buckets, quantity - reserved);
+    inventoryBucketRepository.saveAll(buckets);
+    stockChanged(productId);
+    return new StockTotals((long) quantity, (long) reserved);
+  }
+
+  /**
+   * Split the stock of a product into buckets and mark it as sharded.
+   *
+   * @param productId Long
+   * @return true if the product has been promoted
+   */
+  @Transactional
+  public boolean promote(Long productId) {
+    Inventory inventory = inventoryRepository.findWithLockByProductId(productId)
+        .orElseThrow(() -> new AppException(MessageEnum.INVENTORY_NOT_EXISTED, productId));
+
+    if (inventory.isSharded() || inventoryBucketRepository.existsByProductId(productId)) {
+      return false;
+    }
+
+    int reserved = inventory.getReservedQuantity();
+    int available = inventory.getQuantity() - reserved;
+    List<InventoryBucket> buckets = new ArrayList<>(bucketCount);
+    for (int i = 0; i < bucketCount; i++) {
+      int reservedShare = share(reserved, i);
+      buckets.add(InventoryBucket.builder()
+          .productId(productId)
+          .bucketNo(i)
+          .quantity(reservedShare + share(available, i))
+          .reservedQuantity(reservedShare)
+          .build());
+    }
+    inventoryBucketRepository.saveAll(buckets);
+
+    inventory.setSharded(true);
+    inventoryRepository.save(inventory);
+    log.info("Product {} promoted to sharded inventory with {} buckets", productId, bucketCount);
+    return true;
+  }
+
+  /**
+   * Move available stock between buckets so that every bucket holds an even share again, then
+   * roll the totals up into the inventory row.
+   *
+   * @param productId Long
+   */
+  @Transactional
+  public void rebalance(Long productId) {
+    List<InventoryBucket> buckets = lockBuckets(productId);
+    int reserved = sum(buckets, InventoryBucket::getReservedQuantity);
+    int available = sum(buckets, InventoryBucket::getAvailableQuantity);
+
+    spreadAvailable(buckets, available);
+    inventoryBucketRepository.saveAll(buckets);
+    inventoryRepository.updateStockSnapshot(productId, available + reserved, reserved);
+    stockChanged(productId);
+    log.debug("Product {} rebalanced, available: {}, reserved: {}", productId, available,
+        reserved);
+  }
+
+  /**
+   * Fold the buckets of a sharded product back into its inventory row.
+   *
+   * @param productId Long
+   */
+  @Transactional
+  public void unshard(Long productId) {
+    List<InventoryBucket> buckets = inventoryBucketRepository
+        .findWithLockByProductIdOrderByBucketNo(productId);
+    Inventory inventory = inventoryRepository.findWithLockByProductId(productId)
+        .orElseThrow(() -> new AppException(MessageEnum.INVENTORY_NOT_EXISTED, productId));
+    if (!inventory.isSharded()) {
+      return;
+    }
+
+    long bucketVersions = buckets.stream().mapToLong(InventoryBucket::getVersion).sum();
+    if (!buckets.isEmpty()) {
+      inventory.setQuantity(sum(buckets, InventoryBucket::getQuantity));
+      inventory.setReservedQuantity(sum(buckets, InventoryBucket::getReservedQuantity));
+      inventoryBucketRepository.deleteAll(buckets);
+    }
+    inventory.setSharded(false);
+    inventoryRepository.save(inventory);
+    // the row alone versions the stock from now on, keep it above the published versions
+    inventoryRepository.incrementVersion(productId, bucketVersions);
+    log.info("Product {} is not sharded anymore", productId);
+  }
+
+  private void consumeReserved(Long productId, int amount, boolean reduceQuantity) {
+    List<InventoryBucket> buckets = inventoryBucketRepository.findReservedSkipLocked(
+        productId, amount, FIRST);
+    if (buckets.isEmpty()) {
+      buckets = lockBuckets(productId);
+      if (sum(buckets, InventoryBucket::getReservedQuantity) < amount) {
+        throw new AppException(MessageEnum.NOT_RELEASE_RESERVE_QUANTITY);
+      }
+    }
+
+    int remaining = amount;
+    for (InventoryBucket bucket : buckets) {
+      int taken = Math.min(remaining, bucket.getReservedQuantity());
+      if (taken > 0) {
+        if (reduceQuantity) {
+          bucket.commitReservedQuantity(taken);
+        } else {
+          bucket.releaseReservedQuantity(taken);
+        }
+        remaining -= taken;
+      }
+    }
+    inventoryBucketRepository.saveAll(buckets);
+    stockChanged(productId);
+  }
+
+  /**
+   * propagate the stock of a sharded product once the movement is committed, one read per product
+   * and transaction.
+   *
+   * @param productId Long
+   */
+  private void stockChanged(Long productId) {
+    AfterCommitChanges.collect(this, productId, Boolean.TRUE,
+        changes -> propagate(changes.keySet()));
+  }
+
+  // read after commit: concurrent movements lock other buckets, the version and totals of the
+  // committed buckets only grow together
+  private void propagate(Set<Long> productIds) {
+    for (Long productId : productIds) {
+      try {
+        ShardedStock stock = inventoryBucketRepository.findStockByProductId(productId);
+        if (stock != null && stock.quantity() != null) {
+          int quantity = stock.quantity().intValue();
+          int reserved = stock.reservedQuantity().intValue();
+          long version = stock.version();
+          lowStockWatchlist.track(productId, quantity - reserved, () -> version);
+          stockChangePublisher.publish(productId, quantity, reserved, () -> version);
+        }
+      } catch (Exception e) {
+        // the next movement or rebalance publishes the stock again
+        log.error("Error propagating stock of sharded product {}", productId, e);
+      }
+      inventoryCacheService.evictAfterCommit(productId);
+    }
+  }
+
+  private List<InventoryBucket> lockBuckets(Long productId) {
+    List<InventoryBucket> buckets = inventoryBucketRepository
+        .findWithLockByProductIdOrderByBucketNo(productId);
+    if (buckets.isEmpty()) {
+      throw new AppException(MessageEnum.INVENTORY_NOT_EXISTED, productId);
+    }
+    return buckets;
+  }
+
+  private void spreadAvailable(List<InventoryBucket> buckets, int available) {
+    int size = buckets.size();
+    for (int i = 0; i < size; i++) {
+      InventoryBucket bucket = buckets.get(i);
+      int availableShare = available / size + (i < available % size ? 1 : 0);
+      bucket.setQuantity(bucket.getReservedQuantity() + availableShare);
+    }
+  }
+
+  private int share(int total, int bucketNo) {
+    return total / bucketCount + (bucketNo < total % bucketCount ? 1 : 0);
+  }
+
+  private int sum(List<InventoryBucket> buckets, ToIntFunction<InventoryBucket> field) {
+    return buckets.stream().mapToInt(field).sum();
+  }
+}
@@ -0,0 +1,60 @@
+package com.danhuy.inventory_service.sharding;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Measure how long stock movements wait for the row lock of each product. The window is reset
+ * every time hot products are drained.
+ */
+@Component
+public class LockContentionTracker {
+
+  private volatile Map<Long, Stats> window = new ConcurrentHashMap<>();
+
+  /**
+   * record time spent acquiring the lock of a product.
+   *
+   * @param productId Long
+   * @param waitNanos long
+   */
+  public void record(Long productId, long waitNanos) {
+    Stats stats = window.computeIfAbsent(productId, id -> new Stats());
+    stats.samples.increment();
+    stats.waitNanos.add(waitNanos);
+  }
+
+  /**
+   * get products whose average lock wait is over the threshold, then start a new window.
+   *
+   * @param thresholdMillis long
+   * @param minSamples      long
+   * @return List<Long> product ids
+   */
+  public List<Long> drainHotProducts(long thresholdMillis, long minSamples) {
+    Map<Long, Stats> current = window;
+    window = new ConcurrentHashMap<>();
+
+    long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    return current.entrySet().stream()
+        .filter(entry -> entry.getValue().samples.sum() >= minSamples)
+        .filter(entry -> entry.getValue().averageWaitNanos() >= thresholdNanos)
+        .map(Map.Entry::getKey)
+        .toList();
+  }
+
+  private static final class Stats {
+
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    private long averageWaitNanos() {
+      long count = samples.sum();
+      return count == 0 ? 0 : waitNanos.sum() / count;
+    }
+  }
+}
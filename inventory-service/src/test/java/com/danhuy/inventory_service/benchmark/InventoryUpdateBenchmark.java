@@ -0,0 +1,252 @@
+package com.danhuy.inventory_service.benchmark;
+
+import com.danhuy.inventory_service.benchmark.LockingStrategy.InsufficientStockException;
+import com.danhuy.inventory_service.benchmark.LockingStrategy.RetriesExhaustedException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Throughput of RESERVE + COMMIT orders (the two inventory updates of processInventoryUpdate)
+ * under pessimistic locking, optimistic retry on version and atomic conditional updates, against
+ * an embedded H2 database in MySQL mode.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test}, tune with system properties:
+ * benchmark.threads (1,8,32), benchmark.skew (uniform,zipfian), benchmark.items-per-order (3),
+ * benchmark.skus (1000), benchmark.zipf-theta (0.99), benchmark.duration-seconds (10).
+ */
+class InventoryUpdateBenchmark {
+
+  private static final String URL =
+      "jdbc:h2:mem:inventory_benchmark;MODE=MySQL;LOCK_TIMEOUT=2000;DB_CLOSE_DELAY=-1";
+  // H2 error codes
+  private static final int DEADLOCK = 40001;
+  private static final int LOCK_TIMEOUT = 50200;
+
+  private final int[] threadCounts = Arrays.stream(
+      System.getProperty("benchmark.threads", "1,8,32").split(","))
+      .mapToInt(value -> Integer.parseInt(value.trim()))
+      .toArray();
+  private final String[] skews = System.getProperty("benchmark.skew", "uniform,zipfian")
+      .split(",");
+  private final int itemsPerOrder = Integer.getInteger("benchmark.items-per-order", 3);
+  private final int skus = Integer.getInteger("benchmark.skus", 1000);
+  private final double zipfTheta = Double.parseDouble(
+      System.getProperty("benchmark.zipf-theta", "0.99"));
+  private final long durationMillis = Long.getLong("benchmark.duration-seconds", 10) * 1000;
+
+  @Test
+  void compareLockingStrategies() throws Exception {
+    List<Result> results = new ArrayList<>();
+    for (String skew : skews) {
+      ZipfianGenerator zipfian = "zipfian".equalsIgnoreCase(skew.trim())
+          ? new ZipfianGenerator(skus, zipfTheta) : null;
+      for (int threads : threadCounts) {
+        for (LockingStrategy strategy : LockingStrategy.values()) {
+          resetInventory();
+          results.add(run(strategy, threads, skew.trim(), zipfian));
+        }
+      }
+    }
+    print(results);
+  }
+
+  private Result run(LockingStrategy strategy, int threads, String skew,
+      ZipfianGenerator zipfian) throws InterruptedException {
+    Worker[] workers = new Worker[threads];
+    CountDownLatch done = new CountDownLatch(threads);
+    long deadline = System.currentTimeMillis() + durationMillis;
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new Worker(strategy, zipfian, deadline, done);
+      new Thread(workers[i], "benchmark-" + strategy + "-" + i).start();
+    }
+    done.await();
+
+    Result result = new Result(strategy, threads, skew);
+    long[] latencies = Arrays.stream(workers)
+        .flatMapToLong(worker -> Arrays.stream(worker.latencies, 0, worker.count))
+        .sorted()
+        .toArray();
+    for (Worker worker : workers) {
+      result.orders += worker.orders;
+      result.retries += worker.retries;
+      result.deadlocks += worker.deadlocks;
+      result.lockTimeouts += worker.lockTimeouts;
+      result.outOfStock += worker.outOfStock;
+      result.gaveUp += worker.gaveUp;
+    }
+    result.throughput = result.orders * 1000.0 / durationMillis;
+    result.p50Millis = percentile(latencies, 0.50) / 1_000_000.0;
+    result.p99Millis = percentile(latencies, 0.99) / 1_000_000.0;
+    return result;
+  }
+
+  private final class Worker implements Runnable {
+
+    private final LockingStrategy strategy;
+    private final ZipfianGenerator zipfian;
+    private final long deadline;
+    private final CountDownLatch done;
+
+    // latency of every inventory update (RESERVE or COMMIT), nanos
+    private long[] latencies = new long[1 << 16];
+    private int count;
+    private long orders;
+    private long retries;
+    private long deadlocks;
+    private long lockTimeouts;
+    private long outOfStock;
+    private long gaveUp;
+
+    private Worker(LockingStrategy strategy, ZipfianGenerator zipfian, long deadline,
+        CountDownLatch done) {
+      this.strategy = strategy;
+      this.zipfian = zipfian;
+      this.deadline = deadline;
+      this.done = done;
+    }
+
+    @Override
+    public void run() {
+      Random random = ThreadLocalRandom.current();
+      try (Connection connection = DriverManager.getConnection(URL)) {
+        connection.setAutoCommit(false);
+        while (System.currentTimeMillis() < deadline) {
+          long[] productIds = pickProducts(random);
+          int[] quantities = new int[productIds.length];
+          for (int i = 0; i < quantities.length; i++) {
+            quantities[i] = 1 + random.nextInt(3);
+          }
+          if (update(connection, productIds, quantities, true)
+              && update(connection, productIds, quantities, false)) {
+            orders++;
+          }
+        }
+      } catch (SQLException e) {
+        throw new IllegalStateException(e);
+      } finally {
+        done.countDown();
+      }
+    }
+
+    /**
+     * one inventory update, retried after a deadlock or lock timeout like a redelivered message.
+     * Running out of stock or of optimistic retries fails the order.
+     */
+    private boolean update(Connection connection, long[] productIds, int[] quantities,
+        boolean reserve) throws SQLException {
+      while (true) {
+        long start = System.nanoTime();
+        try {
+          retries += strategy.apply(connection, productIds, quantities, reserve);
+          record(System.nanoTime() - start);
+          return true;
+        } catch (InsufficientStockException e) {
+          connection.rollback();
+          outOfStock++;
+          return false;
+        } catch (RetriesExhaustedException e) {
+          connection.rollback();
+          gaveUp++;
+          return false;
+        } catch (SQLException e) {
+          connection.rollback();
+          if (e.getErrorCode() == DEADLOCK) {
+            deadlocks++;
+          } else if (e.getErrorCode() == LOCK_TIMEOUT) {
+            lockTimeouts++;
+          } else {
+            throw e;
+          }
+        }
+      }
+    }
+
+    private long[] pickProducts(Random random) {
+      TreeSet<Long> productIds = new TreeSet<>();
+      while (productIds.size() < Math.min(itemsPerOrder, skus)) {
+        long rank = zipfian == null ? random.nextInt(skus) : zipfian.next(random);
+        productIds.add(rank + 1);
+      }
+      // ascending product id, the lock order of the service
+      return productIds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private void record(long nanos) {
+      if (count == latencies.length) {
+        latencies = Arrays.copyOf(latencies, count * 2);
+      }
+      latencies[count++] = nanos;
+    }
+  }
+
+  private void resetInventory() throws SQLException {
+    try (Connection connection = DriverManager.getConnection(URL);
+        Statement statement = connection.createStatement()) {
+      statement.execute("DROP TABLE IF EXISTS inventory");
+      statement.execute("CREATE TABLE inventory (product_id BIGINT PRIMARY KEY, "
+          + "quantity INT NOT NULL, reserved_quantity INT NOT NULL, version BIGINT NOT NULL)");
+      try (PreparedStatement insert = connection.prepareStatement(
+          "INSERT INTO inventory VALUES (?, 100000000, 0, 1)")) {
+        for (long productId = 1; productId <= skus; productId++) {
+          insert.setLong(1, productId);
+          insert.addBatch();
+        }
+        insert.executeBatch();
+      }
+    }
+  }
+
+  private static long percentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+  }
+
+  private void print(List<Result> results) {
+    System.out.printf("%nInventory update benchmark: %d SKUs, %d items per order, %d s per run%n",
+        skus, itemsPerOrder, durationMillis / 1000);
+    System.out.printf("%-8s %-12s %7s %12s %9s %9s %9s %9s %9s %9s %9s%n", "skew", "strategy",
+        "threads", "orders/s", "p50 ms", "p99 ms", "retries", "deadlock", "timeout", "no stock",
+        "gave up");
+    for (Result result : results) {
+      System.out.printf("%-8s %-12s %7d %12.1f %9.2f %9.2f %9d %9d %9d %9d %9d%n", result.skew,
+          result.strategy, result.threads, result.throughput, result.p50Millis,
+          result.p99Millis, result.retries, result.deadlocks, result.lockTimeouts,
+          result.outOfStock, result.gaveUp);
+    }
+  }
+
+  private static final class Result {
+
+    private final LockingStrategy strategy;
+    private final int threads;
+    private final String skew;
+    private long orders;
+    private long retries;
+    private long deadlocks;
+    private long lockTimeouts;
+    private long outOfStock;
+    private long gaveUp;
+    private double throughput;
+    private double p50Millis;
+    private double p99Millis;
+
+    private Result(LockingStrategy strategy, int threads, String skew) {
+      this.strategy = strategy;
+      this.threads = threads;
+      this.skew = skew;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package com.danhuy.inventory_service.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The three ways a RESERVE / COMMIT of an order can update its inventory rows. Each call is one
+ * transaction over rows sorted by product id, like InventoryServiceImpl.
+ */
+enum LockingStrategy {
+
+  /**
+   * SELECT ... FOR UPDATE every row (findWithLockByProductId), check, then write.
+   */
+  PESSIMISTIC {
+    @Override
+    int apply(Connection connection, long[] productIds, int[] quantities, boolean reserve)
+        throws SQLException {
+      int[][] stocks = new int[productIds.length][];
+      try (PreparedStatement select = connection.prepareStatement(
+          "SELECT quantity, reserved_quantity, version FROM inventory WHERE product_id = ? "
+              + "FOR UPDATE")) {
+        for (int i = 0; i < productIds.length; i++) {
+          stocks[i] = read(select, productIds[i]);
+          check(stocks[i], quantities[i], reserve);
+        }
+      }
+      try (PreparedStatement update = connection.prepareStatement(
+          "UPDATE inventory SET quantity = ?, reserved_quantity = ?, version = version + 1 "
+              + "WHERE product_id = ?")) {
+        for (int i = 0; i < productIds.length; i++) {
+          int[] next = move(stocks[i], quantities[i], reserve);
+          update.setInt(1, next[0]);
+          update.setInt(2, next[1]);
+          update.setLong(3, productIds[i]);
+          update.addBatch();
+        }
+        update.executeBatch();
+      }
+      connection.commit();
+      return 0;
+    }
+  },
+
+  /**
+   * Read without lock, write only if the version has not changed (@Version), retry otherwise.
+   */
+  OPTIMISTIC {
+    @Override
+    int apply(Connection connection, long[] productIds, int[] quantities, boolean reserve)
+        throws SQLException {
+      for (int retries = 0; retries < MAX_RETRIES; retries++) {
+        int[][] stocks = new int[productIds.length][];
+        try (PreparedStatement select = connection.prepareStatement(
+            "SELECT quantity, reserved_quantity, version FROM inventory WHERE product_id = ?")) {
+          for (int i = 0; i < productIds.length; i++) {
+            stocks[i] = read(select, productIds[i]);
+            check(stocks[i], quantities[i], reserve);
+          }
+        }
+
+        boolean conflict = false;
+        try (PreparedStatement update = connection.prepareStatement(
+            "UPDATE inventory SET quantity = ?, reserved_quantity = ?, version = version + 1 "
+                + "WHERE product_id = ? AND version = ?")) {
+          for (int i = 0; i < productIds.length && !conflict; i++) {
+            int[] next = move(stocks[i], quantities[i], reserve);
+            update.setInt(1, next[0]);
+            update.setInt(2, next[1]);
+            update.setLong(3, productIds[i]);
+            update.setInt(4, stocks[i][2]);
+            conflict = update.executeUpdate() == 0;
+          }
+        }
+        if (!conflict) {
+          connection.commit();
+          return retries;
+        }
+        connection.rollback();
+      }
+      throw new RetriesExhaustedException(MAX_RETRIES);
+    }
+  },
+
+  /**
+   * One conditional UPDATE per row, the database checks the stock while it writes.
+   */
+  ATOMIC {
+    @Override
+    int apply(Connection connection, long[] productIds, int[] quantities, boolean reserve)
+        throws SQLException {
+      String sql = reserve
+          ? "UPDATE inventory SET reserved_quantity = reserved_quantity + ?, "
+          + "version = version + 1 WHERE product_id = ? AND quantity - reserved_quantity >= ?"
+          : "UPDATE inventory SET quantity = quantity - ?, "
+              + "reserved_quantity = reserved_quantity - ?, version = version + 1 "
+              + "WHERE product_id = ? AND reserved_quantity >= ?";
+      try (PreparedStatement update = connection.prepareStatement(sql)) {
+        for (int i = 0; i < productIds.length; i++) {
+          int parameter = 1;
+          update.setInt(parameter++, quantities[i]);
+          if (!reserve) {
+            update.setInt(parameter++, quantities[i]);
+          }
+          update.setLong(parameter++, productIds[i]);
+          update.setInt(parameter, quantities[i]);
+          if (update.executeUpdate() == 0) {
+            throw new InsufficientStockException(productIds[i]);
+          }
+        }
+      }
+      connection.commit();
+      return 0;
+    }
+  };
+
+  static final int MAX_RETRIES = 100;
+
+  /**
+   * apply a RESERVE (reserve = true) or COMMIT of an order and commit the transaction.
+   *
+   * @return number of optimistic retries
+   */
+  abstract int apply(Connection connection, long[] productIds, int[] quantities, boolean reserve)
+      throws SQLException;
+
+  private static int[] read(PreparedStatement select, long productId) throws SQLException {
+    select.setLong(1, productId);
+    try (ResultSet rs = select.executeQuery()) {
+      if (!rs.next()) {
+        throw new SQLException("Inventory not found: " + productId, "BENCH");
+      }
+      return new int[]{rs.getInt(1), rs.getInt(2), rs.getInt(3)};
+    }
+  }
+
+  private static void check(int[] stock, int quantity, boolean reserve) {
+    int available = reserve ? stock[0] - stock[1] : stock[1];
+    if (available < quantity) {
+      throw new InsufficientStockException(0);
+    }
+  }
+
+  private static int[] move(int[] stock, int quantity, boolean reserve) {
+    return reserve
+        ? new int[]{stock[0], stock[1] + quantity}
+        : new int[]{stock[0] - quantity, stock[1] - quantity};
+  }
+
+  /**
+   * Not enough stock for the order, the transaction is rolled back (not a concurrency failure).
+   */
+  static final class InsufficientStockException extends RuntimeException {
+
+    InsufficientStockException(long productId) {
+      super("Not enough stock for product " + productId, null, false, false);
+    }
+  }
+
+  /**
+   * Every optimistic attempt hit a concurrent write, the update gives up (a failed operation).
+   */
+  static final class RetriesExhaustedException extends RuntimeException {
+
+    RetriesExhaustedException(int retries) {
+      super("Too many optimistic lock retries: " + retries, null, false, false);
+    }
+  }
+}
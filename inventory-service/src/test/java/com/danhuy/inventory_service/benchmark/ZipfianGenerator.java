@@ -0,0 +1,44 @@
+package com.danhuy.inventory_service.benchmark;
+
+import java.util.Random;
+
+/**
+ * Zipfian distributed ranks in [0, items): rank 0 is the hottest SKU. Gray et al., "Quickly
+ * generating billion-record synthetic databases" (the YCSB generator).
+ */
+final class ZipfianGenerator {
+
+  private final long items;
+  private final double theta;
+  private final double zetan;
+  private final double alpha;
+  private final double eta;
+
+  ZipfianGenerator(long items, double theta) {
+    this.items = items;
+    this.theta = theta;
+    this.zetan = zeta(items, theta);
+    this.alpha = 1.0 / (1.0 - theta);
+    this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+  }
+
+  long next(Random random) {
+    double u = random.nextDouble();
+    double uz = u * zetan;
+    if (uz < 1.0) {
+      return 0;
+    }
+    if (uz < 1.0 + Math.pow(0.5, theta)) {
+      return 1;
+    }
+    return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+  }
+
+  private static double zeta(long n, double theta) {
+    double sum = 0;
+    for (long i = 1; i <= n; i++) {
+      sum += 1 / Math.pow(i, theta);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,142 @@
+package com.danhuy.inventory_service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class LongIntHashTableTest {
+
+  @Test
+  void putsAndGetsValues() {
+    LongIntHashTable table = new LongIntHashTable(16);
+
+    assertTrue(table.put(1, 10, 1));
+    assertTrue(table.put(2, 0, 1));
+    assertTrue(table.put(Long.MAX_VALUE, -5, 1));
+
+    assertEquals(10, table.get(1));
+    assertEquals(0, table.get(2));
+    assertEquals(-5, table.get(Long.MAX_VALUE));
+    assertEquals(LongIntHashTable.MISSING, table.get(3));
+    assertEquals(3, table.size());
+  }
+
+  @Test
+  void replacesAValueWithASameOrNewerVersionOnly() {
+    LongIntHashTable table = new LongIntHashTable(16);
+    table.put(1, 10, 5);
+
+    assertFalse(table.put(1, 20, 4));
+    assertEquals(10, table.get(1));
+    assertTrue(table.put(1, 30, 5));
+    assertEquals(30, table.get(1));
+    assertTrue(table.put(1, 40, 6));
+    assertEquals(40, table.get(1));
+    assertEquals(1, table.size());
+  }
+
+  @Test
+  void rejectsKeysThatAreNotPositive() {
+    LongIntHashTable table = new LongIntHashTable(16);
+
+    assertThrows(IllegalArgumentException.class, () -> table.put(0, 1, 1));
+    assertThrows(IllegalArgumentException.class, () -> table.put(-1, 1, 1));
+  }
+
+  @Test
+  void failsWhenFullInsteadOfLooping() {
+    // 16 slots, one is kept empty to end the probes
+    LongIntHashTable table = new LongIntHashTable(8);
+    for (long key = 1; key <= 15; key++) {
+      table.put(key, (int) key, 1);
+    }
+
+    assertTrue(table.needsGrow());
+    assertThrows(IllegalStateException.class, () -> table.put(16, 16, 1));
+    assertEquals(LongIntHashTable.MISSING, table.get(16));
+    assertEquals(15, table.get(15));
+  }
+
+  @Test
+  void growsUnderLoadKeepingValuesAndVersions() {
+    LongIntHashTable table = new LongIntHashTable(8);
+    Map<Long, Integer> expected = new HashMap<>();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < 100_000; i++) {
+      if (table.needsGrow()) {
+        table = table.grow();
+      }
+      // sequential ids and sparse ones, like product ids
+      long key = i % 2 == 0 ? i + 1 : random.nextLong(1, Long.MAX_VALUE);
+      int value = random.nextInt();
+      table.put(key, value, 7);
+      expected.put(key, value);
+    }
+
+    assertEquals(expected.size(), table.size());
+    for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), table.get(entry.getKey()));
+    }
+    // versions are copied: an older value is still dropped after the grow
+    long key = expected.keySet().iterator().next();
+    assertFalse(table.put(key, 1, 6));
+  }
+
+  @Test
+  void visitsEveryEntry() {
+    LongIntHashTable table = new LongIntHashTable(16);
+    for (long key = 1; key <= 10; key++) {
+      table.put(key, (int) key * 2, key + 100);
+    }
+
+    Map<Long, Long> visited = new HashMap<>();
+    table.forEach((key, value, version) -> {
+      assertEquals(key * 2, value);
+      visited.put(key, version);
+    });
+
+    assertEquals(10, visited.size());
+    visited.forEach((key, version) -> assertEquals(key + 100, version));
+  }
+
+  @Test
+  void readersSeeTheValueOfEveryKeyTheySee() throws InterruptedException {
+    int keys = 200_000;
+    LongIntHashTable table = new LongIntHashTable(keys);
+    AtomicBoolean writing = new AtomicBoolean(true);
+    AtomicLong wrongReads = new AtomicLong();
+    Thread[] readers = new Thread[3];
+    for (int i = 0; i < readers.length; i++) {
+      readers[i] = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (writing.get()) {
+          long key = random.nextLong(1, keys + 1);
+          int value = table.get(key);
+          if (value != LongIntHashTable.MISSING && value != key) {
+            wrongReads.incrementAndGet();
+          }
+        }
+      });
+      readers[i].start();
+    }
+
+    for (long key = 1; key <= keys; key++) {
+      table.put(key, (int) key, 1);
+    }
+    writing.set(false);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    assertEquals(0, wrongReads.get());
+    assertEquals(keys, table.size());
+  }
+}
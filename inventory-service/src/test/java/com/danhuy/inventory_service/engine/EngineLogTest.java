@@ -0,0 +1,176 @@
+package com.danhuy.inventory_service.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.danhuy.inventory_service.engine.EngineCommand.CommandType;
+import com.danhuy.inventory_service.engine.EngineCommand.Item;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EngineLogTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void replaysAppendedRecordsInOrder() throws IOException {
+    List<EngineCommand> commands = List.of(
+        command(CommandType.RESERVE, "order-1", new Item(1, 2), new Item(7, 1)),
+        command(CommandType.COMMIT, "order-1", new Item(1, 2), new Item(7, 1)),
+        command(CommandType.SET_QUANTITY, "", new Item(3, 100)),
+        command(CommandType.EXPIRE, "đơn-2", new Item(Long.MAX_VALUE, Integer.MAX_VALUE)));
+    try (EngineLog engineLog = new EngineLog(dir, 0, 100)) {
+      engineLog.openSegment(1);
+      for (int i = 0; i < commands.size(); i++) {
+        engineLog.append(i + 1, commands.get(i));
+      }
+      engineLog.sync();
+    }
+
+    Map<Long, EngineCommand> replayed = new LinkedHashMap<>();
+    long lastSeq = new EngineLog(dir, 0, 100).replay(0, replayed::put);
+
+    assertEquals(4, lastSeq);
+    assertEquals(List.of(1L, 2L, 3L, 4L), new ArrayList<>(replayed.keySet()));
+    assertEquals(commands, new ArrayList<>(replayed.values()));
+  }
+
+  @Test
+  void skipsRecordsUpToAfterSeq() throws IOException {
+    write(0, 100, 5);
+
+    Map<Long, EngineCommand> replayed = new LinkedHashMap<>();
+    long lastSeq = new EngineLog(dir, 0, 100).replay(3, replayed::put);
+
+    assertEquals(5, lastSeq);
+    assertEquals(List.of(4L, 5L), new ArrayList<>(replayed.keySet()));
+    // nothing past the checkpoint
+    assertEquals(7, new EngineLog(dir, 0, 100).replay(7, (seq, command) -> {
+    }));
+  }
+
+  @Test
+  void keepsPartitionsApart() throws IOException {
+    write(0, 100, 3);
+    write(1, 100, 5);
+
+    assertEquals(List.of(1L, 2L, 3L), replay(0));
+    assertEquals(List.of(1L, 2L, 3L, 4L, 5L), replay(1));
+  }
+
+  @Test
+  void rollsSegmentsAndDeletesPersistedOnes() throws IOException {
+    try (EngineLog engineLog = new EngineLog(dir, 0, 2)) {
+      engineLog.openSegment(1);
+      for (long seq = 1; seq <= 5; seq++) {
+        engineLog.append(seq, command(CommandType.RESERVE, "order-" + seq, new Item(seq, 1)));
+      }
+      assertEquals(List.of("partition-0-1.log", "partition-0-3.log", "partition-0-5.log"),
+          segmentNames());
+
+      // 1..3 persisted: the first segment only, the second still holds 4
+      engineLog.deleteUpTo(3);
+      assertEquals(List.of("partition-0-3.log", "partition-0-5.log"), segmentNames());
+      // the current segment is never deleted
+      engineLog.deleteUpTo(5);
+      assertEquals(List.of("partition-0-5.log"), segmentNames());
+    }
+
+    assertEquals(List.of(5L), replay(0));
+  }
+
+  @Test
+  void stopsAtARecordCutShort() throws IOException {
+    write(0, 100, 3);
+    Path segment = dir.resolve("partition-0-1.log");
+    long size = Files.size(segment);
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      file.setLength(size - 3);
+    }
+
+    assertEquals(List.of(1L, 2L), replay(0));
+  }
+
+  @Test
+  void stopsAtARecordFailingItsCrc() throws IOException {
+    write(0, 100, 3);
+    Path segment = dir.resolve("partition-0-1.log");
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      // last byte of the last record (quantity of its item)
+      file.seek(file.length() - 1);
+      int last = file.read();
+      file.seek(file.length() - 1);
+      file.write(last ^ 0xFF);
+    }
+
+    assertEquals(List.of(1L, 2L), replay(0));
+  }
+
+  @Test
+  void stopsAtARecordWithAnImpossibleSize() throws IOException {
+    write(0, 100, 2);
+    Path segment = dir.resolve("partition-0-1.log");
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      file.seek(file.length());
+      file.writeInt(-1);
+      file.writeInt(0);
+    }
+
+    assertEquals(List.of(1L, 2L), replay(0));
+  }
+
+  @Test
+  void appendsAfterTheLastGoodRecordOfATornSegment() throws IOException {
+    // the first record of the segment is torn: the segment is opened again at the same sequence
+    write(0, 100, 1);
+    Path segment = dir.resolve("partition-0-1.log");
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      file.setLength(file.length() - 1);
+    }
+
+    try (EngineLog engineLog = new EngineLog(dir, 0, 100)) {
+      long lastSeq = engineLog.replay(0, (seq, command) -> {
+      });
+      assertEquals(0, lastSeq);
+      engineLog.openSegment(lastSeq + 1);
+      engineLog.append(1, command(CommandType.RESERVE, "order-1", new Item(1, 1)));
+      engineLog.append(2, command(CommandType.RESERVE, "order-2", new Item(1, 1)));
+    }
+
+    assertEquals(List.of(1L, 2L), replay(0));
+  }
+
+  private void write(int partitionNo, int segmentSize, int records) throws IOException {
+    try (EngineLog engineLog = new EngineLog(dir, partitionNo, segmentSize)) {
+      engineLog.openSegment(1);
+      for (long seq = 1; seq <= records; seq++) {
+        engineLog.append(seq, command(CommandType.RESERVE, "order-" + seq, new Item(seq, 1)));
+      }
+    }
+  }
+
+  private List<Long> replay(int partitionNo) throws IOException {
+    List<Long> seqs = new ArrayList<>();
+    new EngineLog(dir, partitionNo, 100).replay(0, (seq, command) -> seqs.add(seq));
+    return seqs;
+  }
+
+  private List<String> segmentNames() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.map(path -> path.getFileName().toString()).sorted().toList();
+    }
+  }
+
+  private static EngineCommand command(CommandType type, String orderId, Item... items) {
+    return new EngineCommand(type, orderId, List.of(items), 1_700_000_000_000L, null);
+  }
+}
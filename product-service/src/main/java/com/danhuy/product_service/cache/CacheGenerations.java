@@ -0,0 +1,206 @@
+package com.danhuy.product_service.cache;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Generation counters of the product cache namespaces. The generation is part of every key of its
+ * namespace, so invalidating a whole namespace is one INCR instead of a KEYS scan: keys of the old
+ * generation are not read anymore and expire with their TTL, or are swept in the background with
+ * SCAN. Generations are read from Redis at most every refresh-ms, other nodes see a new
+ * generation after that delay, or right away when a product event makes them refresh.
+ *
+ * <p>Redis holds the generations, a node takes them as they are. A lost counter is seeded with
+ * the current time in millis (SET NX) rather than restarting from 0, so generations keep going up
+ * and keys cached before the loss are never read again.
+ */
+@Component
+@Slf4j
+public class CacheGenerations {
+
+  private static final String GENERATION_KEY_PREFIX = "products:generation:";
+
+  private final StringRedisTemplate stringRedisTemplate;
+  private final long refreshMs;
+  private final boolean sweepEnabled;
+  private final int sweepBatchSize;
+  private final ExecutorService sweeper = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "product-cache-sweeper");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // by namespace ordinal, replaced as a whole
+  private volatile long[] generations = new long[Namespace.values().length];
+  // one thread reloads per refresh, the others keep the loaded generations
+  private final AtomicLong loadedAt = new AtomicLong();
+  // bumps made by this node, a reload started before a bump must not overwrite it
+  private long bumps;
+
+  public CacheGenerations(StringRedisTemplate stringRedisTemplate,
+      @Value("${product.cache.generation.refresh-ms:1000}") long refreshMs,
+      @Value("${product.cache.generation.sweep-enabled:true}") boolean sweepEnabled,
+      @Value("${product.cache.generation.sweep-batch-size:500}") int sweepBatchSize) {
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.refreshMs = refreshMs;
+    this.sweepEnabled = sweepEnabled;
+    this.sweepBatchSize = sweepBatchSize;
+  }
+
+  /**
+   * build a key of the current generation of a namespace.
+   *
+   * @param namespace Namespace
+   * @param suffix    String
+   * @return String Ex: `product:v3:1`
+   */
+  public String key(Namespace namespace, String suffix) {
+    return namespace.keyPrefix + "v" + current(namespace) + ":" + suffix;
+  }
+
+  /**
+   * invalidate every key of a namespace (one INCR), the old generation is swept in the background.
+   *
+   * @param namespace Namespace
+   */
+  public void bump(Namespace namespace) {
+    String key = GENERATION_KEY_PREFIX + namespace.name;
+    // INCR of a lost counter would restart from 1
+    seed(key);
+    Long generation = stringRedisTemplate.opsForValue().increment(key);
+    if (generation == null) {
+      return;
+    }
+    synchronized (this) {
+      long[] updated = generations.clone();
+      updated[namespace.ordinal()] = generation;
+      generations = updated;
+      bumps++;
+    }
+    log.debug("Cache namespace {} moved to generation {}", namespace.name, generation);
+
+    if (sweepEnabled) {
+      String pattern = namespace.keyPrefix + "v" + (generation - 1) + ":*";
+      sweeper.execute(() -> sweep(pattern));
+    }
+  }
+
+  /**
+   * read the generations from Redis now instead of after refresh-ms, Ex: another node has just
+   * invalidated a namespace.
+   */
+  public void refresh() {
+    loadedAt.set(System.currentTimeMillis());
+    reload();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    sweeper.shutdownNow();
+  }
+
+  private long current(Namespace namespace) {
+    long now = System.currentTimeMillis();
+    long last = loadedAt.get();
+    if (now - last >= refreshMs && loadedAt.compareAndSet(last, now)) {
+      reload();
+    }
+    return generations[namespace.ordinal()];
+  }
+
+  private void reload() {
+    long bumpsBefore;
+    synchronized (this) {
+      bumpsBefore = bumps;
+    }
+    List<String> keys = Arrays.stream(Namespace.values())
+        .map(namespace -> GENERATION_KEY_PREFIX + namespace.name)
+        .toList();
+    List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+    if (values == null) {
+      return;
+    }
+    long[] loaded = new long[values.size()];
+    for (int i = 0; i < loaded.length; i++) {
+      String value = values.get(i);
+      loaded[i] = value != null ? Long.parseLong(value) : seedAndGet(keys.get(i));
+    }
+    synchronized (this) {
+      if (bumps != bumpsBefore) {
+        // read before a bump of this node, reloaded on the next refresh
+        return;
+      }
+      generations = loaded;
+    }
+  }
+
+  // create a missing counter at the current time in millis, above every generation used before
+  private void seed(String key) {
+    stringRedisTemplate.opsForValue()
+        .setIfAbsent(key, String.valueOf(System.currentTimeMillis()));
+  }
+
+  private long seedAndGet(String key) {
+    seed(key);
+    String value = stringRedisTemplate.opsForValue().get(key);
+    return value == null ? 0 : Long.parseLong(value);
+  }
+
+  // incremental SCAN + UNLINK in batches, never a blocking KEYS
+  private void sweep(String pattern) {
+    long removed = 0;
+    ScanOptions options = ScanOptions.scanOptions().match(pattern).count(sweepBatchSize).build();
+    try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+      List<String> batch = new ArrayList<>(sweepBatchSize);
+      while (cursor.hasNext()) {
+        batch.add(cursor.next());
+        if (batch.size() == sweepBatchSize) {
+          removed += unlink(batch);
+        }
+      }
+      removed += unlink(batch);
+      log.debug("Swept {} cache keys matching {}", removed, pattern);
+    } catch (Exception e) {
+      // the keys still expire with their TTL
+      log.warn("Error sweeping cache keys matching {}", pattern, e);
+    }
+  }
+
+  private long unlink(List<String> batch) {
+    if (batch.isEmpty()) {
+      return 0;
+    }
+    Long removed = stringRedisTemplate.unlink(batch);
+    batch.clear();
+    return removed == null ? 0 : removed;
+  }
+
+  /**
+   * product cache namespaces, each one invalidated as a whole.
+   */
+  public enum Namespace {
+    // product details and the list of all products
+    PRODUCT("product", "product:"),
+    CATEGORY("category", "products:category:"),
+    SEARCH("search", "products:search:");
+
+    private final String name;
+    private final String keyPrefix;
+
+    Namespace(String name, String keyPrefix) {
+      this.name = name;
+      this.keyPrefix = keyPrefix;
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package com.danhuy.product_service.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A product cache entry with its soft expiry. Past the soft expiry the value is still served while
+ * it is refreshed in the background; Redis drops the entry at the hard expiry (its TTL). A
+ * negative entry has no value but the error of the load (Ex: product not existed).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedValue {
+
+  private Object value;
+  // epoch millis
+  private long softExpiresAt;
+  // time the value took to load, slow values are refreshed earlier (XFetch)
+  private long loadMillis;
+  // MessageEnum name of the error of the load, null for a value
+  private String error;
+}
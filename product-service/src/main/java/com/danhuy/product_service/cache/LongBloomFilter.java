@@ -0,0 +1,78 @@
+package com.danhuy.product_service.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of long keys: {@link #mightContain} is never false for a key that was added, and is
+ * true for a key that was not with about the false positive rate it was sized for. Adds and
+ * lookups are thread-safe and take no lock; keys cannot be removed.
+ */
+class LongBloomFilter {
+
+  private final AtomicLongArray bits;
+  private final long bitCount;
+  private final int hashCount;
+
+  /**
+   * size the filter for a number of keys.
+   *
+   * @param expectedKeys      long
+   * @param falsePositiveRate double
+   */
+  LongBloomFilter(long expectedKeys, double falsePositiveRate) {
+    long keys = Math.max(1, expectedKeys);
+    // m = -n ln(p) / ln(2)^2, k = m / n ln(2)
+    long optimalBits = (long) Math.ceil(-keys * Math.log(falsePositiveRate)
+        / (Math.log(2) * Math.log(2)));
+    int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+    this.bits = new AtomicLongArray(words);
+    this.bitCount = (long) words * 64;
+    this.hashCount = (int) Math.max(1, Math.round((double) bitCount / keys * Math.log(2)));
+  }
+
+  void add(long key) {
+    long hash1 = mix(key);
+    long hash2 = mix(hash1) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      long current = bits.get(word);
+      // a set bit never gets cleared: retry only while the bit is still missing
+      while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+        current = bits.get(word);
+      }
+    }
+  }
+
+  boolean mightContain(long key) {
+    long hash1 = mix(key);
+    long hash2 = mix(hash1) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+      if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  long bitCount() {
+    return bitCount;
+  }
+
+  int hashCount() {
+    return hashCount;
+  }
+
+  // finalizer of MurmurHash3 (64 bits): consecutive ids spread over the whole array
+  private static long mix(long key) {
+    long hash = key;
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -1,37 +1,145 @@
 package com.danhuy.product_service.cache;
 
+import com.danhuy.common_service.enums.MessageEnum;
+import com.danhuy.common_service.exception.ex.AppException;
+import com.danhuy.product_service.cache.CacheGenerations.Namespace;
 import com.danhuy.product_service.dto.ProductResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import lombok.RequiredArgsConstructor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class ProductCacheService {
 
-  private static final String PRODUCT_KEY_PREFIX = "product:";
-  private static final String PRODUCTS_LIST_KEY = "products:all";
-  private static final String PRODUCTS_BY_CATEGORY_PREFIX = "products:category:";
-  private static final String PRODUCTS_SEARCH_PREFIX = "products:search:";
-  private static final long DEFAULT_TTL = 3600; // 1 hour in seconds
+  private static final String PRODUCTS_LIST_SUFFIX = "all";
+  private static final String PRODUCT_LOCK_PREFIX = "products:lock:";
+  // delete the lock only if it is still ours (it may have expired and been taken by another node)
+  private static final RedisScript<Long> RELEASE_LOCK = new DefaultRedisScript<>(
+      "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) "
+          + "else return 0 end", Long.class);
 
   private final RedisTemplate<String, Object> redisTemplate;
+  private final StringRedisTemplate stringRedisTemplate;
+  private final CacheGenerations cacheGenerations;
+  private final ProductNearCache productNearCache;
+  private final boolean lockEnabled;
+  private final long lockTtlMs;
+  private final long lockWaitMs;
+  private final long lockPollMs;
+  private final long softTtlSeconds;
+  private final long hardTtlSeconds;
+  private final double xfetchBeta;
+  private final long negativeTtlSeconds;
+  // cache key -> load in progress in this node
+  private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+  // cache keys being refreshed in the background by this node
+  private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+  private final ThreadPoolExecutor refresher;
+  // loads run in a read-write transaction of their own: from the primary, never from a replica
+  private final TransactionTemplate primaryRead;
+  private final Counter localCoalesced;
+  private final Counter remoteCoalesced;
+  private final Counter refreshes;
+
+  public ProductCacheService(RedisTemplate<String, Object> redisTemplate,
+      StringRedisTemplate stringRedisTemplate, CacheGenerations cacheGenerations,
+      ProductNearCache productNearCache, PlatformTransactionManager transactionManager,
+      ObjectProvider<MeterRegistry> meterRegistry,
+      @Value("${product.cache.single-flight.lock-enabled:true}") boolean lockEnabled,
+      @Value("${product.cache.single-flight.lock-ttl-ms:3000}") long lockTtlMs,
+      @Value("${product.cache.single-flight.lock-wait-ms:1000}") long lockWaitMs,
+      @Value("${product.cache.single-flight.lock-poll-ms:25}") long lockPollMs,
+      @Value("${product.cache.soft-ttl-seconds:3600}") long softTtlSeconds,
+      @Value("${product.cache.hard-ttl-seconds:4200}") long hardTtlSeconds,
+      @Value("${product.cache.xfetch-beta:1.0}") double xfetchBeta,
+      @Value("${product.cache.negative-ttl-seconds:60}") long negativeTtlSeconds,
+      @Value("${product.cache.refresh-threads:2}") int refreshThreads,
+      @Value("${product.cache.refresh-queue-capacity:1000}") int refreshQueueCapacity) {
+    this.redisTemplate = redisTemplate;
+    this.stringRedisTemplate = stringRedisTemplate;
+    this.cacheGenerations = cacheGenerations;
+    this.productNearCache = productNearCache;
+    this.primaryRead = new TransactionTemplate(transactionManager);
+    this.primaryRead.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.lockEnabled = lockEnabled;
+    this.lockTtlMs = lockTtlMs;
+    this.lockWaitMs = lockWaitMs;
+    this.lockPollMs = lockPollMs;
+    this.softTtlSeconds = softTtlSeconds;
+    this.hardTtlSeconds = Math.max(hardTtlSeconds, softTtlSeconds);
+    this.xfetchBeta = xfetchBeta;
+    this.negativeTtlSeconds = negativeTtlSeconds;
+    this.refresher = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0L,
+        TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(refreshQueueCapacity), runnable -> {
+          Thread thread = new Thread(runnable, "product-cache-refresh");
+          thread.setDaemon(true);
+          return thread;
+        });
+
+    // the global registry is picked up by actuator when it is on the classpath
+    MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    this.localCoalesced = Counter.builder("product.cache.coalesced")
+        .description("Cache misses served by the load of another request")
+        .tag("scope", "local")
+        .register(registry);
+    this.remoteCoalesced = Counter.builder("product.cache.coalesced")
+        .description("Cache misses served by the load of another request")
+        .tag("scope", "remote")
+        .register(registry);
+    this.refreshes = Counter.builder("product.cache.refreshes")
+        .description("Entries refreshed in the background before their hard expiry")
+        .register(registry);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    refresher.shutdownNow();
+  }
 
   /**
-   * cache for product detail
+   * cache for product detail, once the current transaction commits (a rolled back product is never
+   * cached)
    *
    * @param product ProductResponse
    */
   public void cacheProduct(ProductResponse product) {
-    // Ex: `product:1`
-    String key = PRODUCT_KEY_PREFIX + product.getId();
-
-    redisTemplate.opsForValue().set(key, product, DEFAULT_TTL, TimeUnit.SECONDS);
-    log.debug("Product cached with key: {}", key);
+    afterCommit(() -> {
+      // Ex: `product:v3:1`
+      write(productKey(product.getId()), product, 0);
+      productNearCache.put(product);
+    });
   }
 
   /**
@@ -41,18 +149,31 @@ public class ProductCacheService {
    * @return ProductResponse
    */
   public ProductResponse getProductFromCache(Long productId) {
-    // Ex: `product:1`
-    String key = PRODUCT_KEY_PREFIX + productId;
-
-    ProductResponse product = (ProductResponse) redisTemplate.opsForValue().get(key);
+    // Ex: `product:v3:1`, a negative entry is no product
+    return (ProductResponse) valueOf(read(productKey(productId)));
+  }
 
+  /**
+   * get product detail from the local near-cache, then from Redis (stale past its soft expiry,
+   * then refreshed in the background), or load it once: concurrent misses of a product wait for a
+   * single loader in this node, and with the Redis lock for a single loader in the cluster. A
+   * product not found is cached for a short time as well (negative entry), its lookups fail
+   * without the DB. Only a fresh value goes into the near-cache, a stale one would stay there for
+   * its whole time to live.
+   *
+   * @param productId Long
+   * @param loader    Supplier<ProductResponse> reads the product from the DB
+   * @return ProductResponse
+   */
+  public ProductResponse getOrLoadProduct(Long productId, Supplier<ProductResponse> loader) {
+    ProductResponse product = productNearCache.get(productId);
     if (product != null) {
-      log.debug("Product found in cache with key: {}", key);
       return product;
     }
 
-    log.debug("Product not found in cache with key: {}", key);
-    return null;
+    long stamp = productNearCache.stamp();
+    return getOrLoad(productKey(productId), loader,
+        fresh -> productNearCache.putIfValid(fresh, stamp));
   }
 
   /**
@@ -61,9 +182,8 @@ public class ProductCacheService {
    * @param products List<ProductResponse>
    */
   public void cacheProductsList(List<ProductResponse> products) {
-    // for cache all products
-    redisTemplate.opsForValue().set(PRODUCTS_LIST_KEY, products, DEFAULT_TTL, TimeUnit.SECONDS);
-    log.debug("Products list cached with key: {}", PRODUCTS_LIST_KEY);
+    // for cache all products, Ex: `product:v3:all`
+    write(productsListKey(), products, 0);
   }
 
   /**
@@ -73,16 +193,7 @@ public class ProductCacheService {
    */
   @SuppressWarnings("unchecked")
   public List<ProductResponse> getProductsListFromCache() {
-    List<ProductResponse> products = (List<ProductResponse>) redisTemplate.opsForValue()
-        .get(PRODUCTS_LIST_KEY);
-
-    if (products != null) {
-      log.debug("Products list found in cache");
-      return products;
-    }
-
-    log.debug("Products list not found in cache");
-    return null;
+    return (List<ProductResponse>) valueOf(read(productsListKey()));
   }
 
   /**
@@ -92,11 +203,7 @@ public class ProductCacheService {
    * @param products   List<ProductResponse>
    */
   public void cacheProductsByCategory(Long categoryId, List<ProductResponse> products) {
-    // Ex: `products:category:1`
-    String key = PRODUCTS_BY_CATEGORY_PREFIX + categoryId;
-
-    redisTemplate.opsForValue().set(key, products, DEFAULT_TTL, TimeUnit.SECONDS);
-    log.debug("Products by category cached with key: {}", key);
+    write(categoryKey(categoryId), products, 0);
   }
 
   /**
@@ -107,18 +214,19 @@ public class ProductCacheService {
    */
   @SuppressWarnings("unchecked")
   public List<ProductResponse> getProductsByCategoryFromCache(Long categoryId) {
-    // Ex: `products:category:1`
-    String key = PRODUCTS_BY_CATEGORY_PREFIX + categoryId;
-
-    List<ProductResponse> products = (List<ProductResponse>) redisTemplate.opsForValue().get(key);
-
-    if (products != null) {
-      log.debug("Products by category found in cache with key: {}", key);
-      return products;
-    }
+    return (List<ProductResponse>) valueOf(read(categoryKey(categoryId)));
+  }
 
-    log.debug("Products by category not found in cache with key: {}", key);
-    return null;
+  /**
+   * get products by category from the cache, or load them once (see getOrLoadProduct).
+   *
+   * @param categoryId Long
+   * @param loader     Supplier<List<ProductResponse>> reads the products from the DB
+   * @return List<ProductResponse>
+   */
+  public List<ProductResponse> getOrLoadProductsByCategory(Long categoryId,
+      Supplier<List<ProductResponse>> loader) {
+    return getOrLoad(categoryKey(categoryId), loader);
   }
 
   /**
@@ -128,11 +236,7 @@ public class ProductCacheService {
    * @param products  List<ProductResponse>
    */
   public void cacheSearchResults(String searchKey, List<ProductResponse> products) {
-    // Ex: `products:search:name=Apple`
-    String key = PRODUCTS_SEARCH_PREFIX + searchKey.toLowerCase().replace(" ", "_");
-
-    redisTemplate.opsForValue().set(key, products, DEFAULT_TTL, TimeUnit.SECONDS);
-    log.debug("Search results cached with key: {}", key);
+    write(searchKey(searchKey), products, 0);
   }
 
   /**
@@ -143,43 +247,306 @@ public class ProductCacheService {
    */
   @SuppressWarnings("unchecked")
   public List<ProductResponse> getSearchResultsFromCache(String searchKey) {
-    // Ex: `products:search:name=Apple`
-    String key = PRODUCTS_SEARCH_PREFIX + searchKey.toLowerCase().replace(" ", "_");
-
-    List<ProductResponse> products = (List<ProductResponse>) redisTemplate.opsForValue().get(key);
-
-    if (products != null) {
-      log.debug("Search results found in cache with key: {}", key);
-      return products;
-    }
+    return (List<ProductResponse>) valueOf(read(searchKey(searchKey)));
+  }
 
-    log.debug("Search results not found in cache with key: {}", key);
-    return null;
+  /**
+   * get search results from the cache, or load them once (see getOrLoadProduct).
+   *
+   * @param searchKey String
+   * @param loader    Supplier<List<ProductResponse>> searches in the DB
+   * @return List<ProductResponse>
+   */
+  public List<ProductResponse> getOrLoadSearchResults(String searchKey,
+      Supplier<List<ProductResponse>> loader) {
+    return getOrLoad(searchKey(searchKey), loader);
   }
 
   /**
-   * evict product cache by product id
+   * evict product cache by product id, once the current transaction commits so a load running in
+   * between cannot put the old row back
    *
    * @param productId Long
    */
   public void evictProductCache(Long productId) {
-    String key = PRODUCT_KEY_PREFIX + productId;
-    redisTemplate.delete(key);
-    // Cũng xóa các cache danh sách để đảm bảo dữ liệu nhất quán
-    redisTemplate.delete(PRODUCTS_LIST_KEY);
-    log.debug("Product cache evicted for key: {}", key);
+    afterCommit(() -> {
+      String key = productKey(productId);
+      // Cũng xóa các cache danh sách để đảm bảo dữ liệu nhất quán
+      redisTemplate.delete(List.of(key, productsListKey()));
+      productNearCache.invalidate(productId);
+      log.debug("Product cache evicted for key: {}", key);
+    });
   }
 
   /**
-   * evict all product caches
+   * evict caches of many products at once
+   *
+   * @param productIds Collection<Long>
+   */
+  public void evictProductCaches(Collection<Long> productIds) {
+    List<String> keys = new ArrayList<>(productIds.size() + 1);
+    productIds.forEach(productId -> keys.add(productKey(productId)));
+    keys.add(productsListKey());
+    // one DEL for all keys
+    redisTemplate.delete(keys);
+    productNearCache.invalidate(productIds);
+    log.debug("Product cache evicted for {} products", productIds.size());
+  }
+
+  /**
+   * evict caches of many products once the current transaction commits, so a load running in
+   * between cannot put the old row back. Outside of a transaction they are evicted right away.
+   *
+   * @param productIds Collection<Long>
+   */
+  public void evictProductCachesAfterCommit(Collection<Long> productIds) {
+    afterCommit(() -> evictProductCaches(productIds));
+  }
+
+  /**
+   * evict all product caches - one INCR per namespace instead of KEYS, old keys expire with their
+   * TTL - once the current transaction commits
    */
   public void evictAllProductCaches() {
-    // Xóa tất cả các khóa với pattern tương ứng
-    redisTemplate.delete(redisTemplate.keys(PRODUCT_KEY_PREFIX + "*"));
-    redisTemplate.delete(redisTemplate.keys(PRODUCTS_BY_CATEGORY_PREFIX + "*"));
-    redisTemplate.delete(redisTemplate.keys(PRODUCTS_SEARCH_PREFIX + "*"));
-    redisTemplate.delete(PRODUCTS_LIST_KEY);
-    log.debug("All product caches evicted");
+    afterCommit(() -> {
+      for (Namespace namespace : Namespace.values()) {
+        cacheGenerations.bump(namespace);
+      }
+      productNearCache.invalidateAll();
+      log.debug("All product caches evicted");
+    });
+  }
+
+  private void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
+  }
+
+  private String productKey(Long productId) {
+    return cacheGenerations.key(Namespace.PRODUCT, String.valueOf(productId));
+  }
+
+  private String productsListKey() {
+    return cacheGenerations.key(Namespace.PRODUCT, PRODUCTS_LIST_SUFFIX);
+  }
+
+  private String categoryKey(Long categoryId) {
+    // Ex: `products:category:v2:1`
+    return cacheGenerations.key(Namespace.CATEGORY, String.valueOf(categoryId));
+  }
+
+  private String searchKey(String searchKey) {
+    // Ex: `products:search:v5:name=apple`
+    return cacheGenerations.key(Namespace.SEARCH, searchKey.toLowerCase().replace(" ", "_"));
+  }
+
+  private <T> T getOrLoad(String key, Supplier<T> loader) {
+    return getOrLoad(key, loader, fresh -> {
+    });
+  }
+
+  /**
+   * see getOrLoadProduct.
+   *
+   * @param onFresh gets the value unless it is served stale
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T getOrLoad(String key, Supplier<T> loader, Consumer<T> onFresh) {
+    CachedValue entry = read(key);
+    if (entry != null) {
+      if (shouldRefresh(entry)) {
+        refreshInBackground(key, loader);
+      }
+      T value = valueOrThrow(entry);
+      if (System.currentTimeMillis() < entry.getSoftExpiresAt()) {
+        onFresh.accept(value);
+      }
+      return value;
+    }
+
+    CompletableFuture<Object> flight = new CompletableFuture<>();
+    CompletableFuture<Object> leader = inFlight.putIfAbsent(key, flight);
+    if (leader != null) {
+      localCoalesced.increment();
+      T value;
+      try {
+        value = (T) leader.join();
+      } catch (CompletionException e) {
+        // same error as the loader, Ex: product not existed
+        throw e.getCause() instanceof RuntimeException cause ? cause : e;
+      }
+      onFresh.accept(value);
+      return value;
+    }
+
+    try {
+      T value = loadOnce(key, loader);
+      flight.complete(value);
+      onFresh.accept(value);
+      return value;
+    } catch (RuntimeException e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, flight);
+    }
+  }
+
+  // XFetch: refresh when now - loadMillis * beta * ln(random) reaches the soft expiry, so the
+  // earlier the slower the load, and always past the soft expiry
+  private boolean shouldRefresh(CachedValue entry) {
+    double random = ThreadLocalRandom.current().nextDouble();
+    return System.currentTimeMillis() - entry.getLoadMillis() * xfetchBeta * Math.log(random)
+        >= entry.getSoftExpiresAt();
+  }
+
+  private void refreshInBackground(String key, Supplier<?> loader) {
+    // one refresh per key in this node, and with the lock one in the cluster
+    if (!refreshing.add(key)) {
+      return;
+    }
+    try {
+      refresher.execute(() -> {
+        try {
+          String token = lockEnabled ? tryLock(key) : "";
+          if (token == null) {
+            return;
+          }
+          try {
+            loadAndCache(key, loader);
+            refreshes.increment();
+          } finally {
+            unlock(key, token);
+          }
+        } catch (AppException e) {
+          // not there anymore, Ex: product deleted
+          writeError(key, e);
+        } catch (Exception e) {
+          // the stale value is served until the next try or the hard expiry
+          log.warn("Error refreshing cache key: {}", key, e);
+        } finally {
+          refreshing.remove(key);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      refreshing.remove(key);
+    }
+  }
+
+  private <T> T loadOnce(String key, Supplier<T> loader) {
+    if (!lockEnabled) {
+      return loadAndCache(key, loader);
+    }
+
+    String token = tryLock(key);
+    if (token != null) {
+      try {
+        // another node may have cached it between the miss and the lock
+        CachedValue entry = read(key);
+        return entry != null ? valueOrThrow(entry) : loadAndCache(key, loader);
+      } finally {
+        unlock(key, token);
+      }
+    }
+
+    // another node is loading: wait for its result in the cache
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lockWaitMs);
+    while (System.nanoTime() < deadline) {
+      try {
+        Thread.sleep(lockPollMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      CachedValue entry = read(key);
+      if (entry != null) {
+        remoteCoalesced.increment();
+        return valueOrThrow(entry);
+      }
+      if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(PRODUCT_LOCK_PREFIX + key))) {
+        // the other loader is done and cached nothing (Ex: product not existed)
+        break;
+      }
+    }
+    // too slow or failed elsewhere: load here rather than fail the request
+    return loadAndCache(key, loader);
+  }
+
+  private <T> T loadAndCache(String key, Supplier<T> loader) {
+    long startedAt = System.currentTimeMillis();
+    T value;
+    try {
+      // a lagging replica would cache the row as it was before the last update for the soft TTL
+      value = primaryRead.execute(status -> loader.get());
+    } catch (AppException e) {
+      writeError(key, e);
+      throw e;
+    }
+    write(key, value, System.currentTimeMillis() - startedAt);
+    return value;
+  }
+
+  // Ex: `products:lock:product:v3:1`, null if another node holds it
+  private String tryLock(String key) {
+    String token = UUID.randomUUID().toString();
+    return Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+        .setIfAbsent(PRODUCT_LOCK_PREFIX + key, token, Duration.ofMillis(lockTtlMs)))
+        ? token : null;
+  }
+
+  private void unlock(String key, String token) {
+    if (lockEnabled) {
+      stringRedisTemplate.execute(RELEASE_LOCK, List.of(PRODUCT_LOCK_PREFIX + key), token);
+    }
+  }
+
+  private void write(String key, Object value, long loadMillis) {
+    CachedValue entry = new CachedValue(value,
+        System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(softTtlSeconds), loadMillis, null);
+    redisTemplate.opsForValue().set(key, entry, hardTtlSeconds, TimeUnit.SECONDS);
+    log.debug("Cached key: {}", key);
+  }
+
+  // negative entry: short TTL, never refreshed (soft expiry = hard expiry)
+  private void writeError(String key, AppException error) {
+    if (negativeTtlSeconds <= 0) {
+      return;
+    }
+    CachedValue entry = new CachedValue(null,
+        System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(negativeTtlSeconds), 0,
+        error.getMessageEnum().name());
+    redisTemplate.opsForValue().set(key, entry, negativeTtlSeconds, TimeUnit.SECONDS);
+    log.debug("Cached error {} for key: {}", entry.getError(), key);
+  }
+
+  private CachedValue read(String key) {
+    // entries written before soft expiry existed are misses
+    if (redisTemplate.opsForValue().get(key) instanceof CachedValue entry) {
+      log.debug("Found in cache key: {}", key);
+      return entry;
+    }
+    log.debug("Not found in cache key: {}", key);
+    return null;
+  }
+
+  private static Object valueOf(CachedValue entry) {
+    return entry != null ? entry.getValue() : null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T valueOrThrow(CachedValue entry) {
+    if (entry.getError() != null) {
+      throw new AppException(MessageEnum.valueOf(entry.getError()));
+    }
+    return (T) entry.getValue();
   }
 
 }
@@ -0,0 +1,175 @@
+package com.danhuy.product_service.cache;
+
+import com.danhuy.product_service.repository.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Bloom filter of the ids of active products, so lookups of ids that never existed (crawlers,
+ * stale links) are rejected without touching Redis or the DB. Deleted products stay in the filter
+ * until the next rebuild, the negative cache of {@link ProductCacheService} answers for them and
+ * for the false positives.
+ *
+ * <p>Rebuilt from the products table (primary) at startup and every refresh interval, sized for
+ * the catalog; created products are added on every node from the product events. Ids added within
+ * the recent-add retention are carried into every rebuilt filter, so a product created around the
+ * read of a rebuild is never dropped. Until it is loaded, every id is let through.
+ */
+@Component
+@Slf4j
+public class ProductIdFilter {
+
+  private final ProductRepository productRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final boolean enabled;
+  private final double falsePositiveRate;
+  private final double growthFactor;
+  private final long minExpectedSize;
+  private final int pageSize;
+  private final long recentAddRetentionMs;
+  private final Counter rejections;
+  // ids added lately, oldest first
+  private final Deque<RecentAdd> recentAdds = new ArrayDeque<>();
+
+  private volatile LongBloomFilter filter;
+  // ids added while the filter is rebuilt, replayed into the new filter before the swap
+  private List<Long> addedWhileBuilding;
+
+  public ProductIdFilter(ProductRepository productRepository,
+      TransactionTemplate transactionTemplate, ObjectProvider<MeterRegistry> meterRegistry,
+      @Value("${product.id-filter.enabled:true}") boolean enabled,
+      @Value("${product.id-filter.false-positive-rate:0.01}") double falsePositiveRate,
+      @Value("${product.id-filter.growth-factor:2.0}") double growthFactor,
+      @Value("${product.id-filter.min-expected-size:10000}") long minExpectedSize,
+      @Value("${product.id-filter.page-size:10000}") int pageSize,
+      @Value("${product.id-filter.recent-add-retention-ms:600000}") long recentAddRetentionMs) {
+    this.productRepository = productRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.enabled = enabled;
+    this.falsePositiveRate = falsePositiveRate;
+    this.growthFactor = growthFactor;
+    this.minExpectedSize = minExpectedSize;
+    this.pageSize = pageSize;
+    this.recentAddRetentionMs = recentAddRetentionMs;
+
+    // the global registry is picked up by actuator when it is on the classpath
+    MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    this.rejections = Counter.builder("product.id-filter.rejections")
+        .description("Product lookups rejected by the Bloom filter")
+        .register(registry);
+  }
+
+  /**
+   * whether a product may exist; false means it surely does not.
+   *
+   * @param productId Long
+   * @return boolean, true while the filter is off or not loaded yet
+   */
+  public boolean mightExist(Long productId) {
+    LongBloomFilter current = filter;
+    if (!enabled || current == null || current.mightContain(productId)) {
+      return true;
+    }
+    rejections.increment();
+    return false;
+  }
+
+  /**
+   * add a product (created). Also kept for the recent-add retention, before the first build too.
+   *
+   * @param productId Long
+   */
+  public synchronized void add(Long productId) {
+    if (!enabled) {
+      return;
+    }
+    if (filter != null) {
+      filter.add(productId);
+    }
+    if (addedWhileBuilding != null) {
+      addedWhileBuilding.add(productId);
+    }
+    long now = System.currentTimeMillis();
+    recentAdds.addLast(new RecentAdd(productId, now));
+    dropOldAdds(now);
+  }
+
+  /**
+   * (re)build the filter from the ids of the active products (keyset pages by id) and swap it in.
+   * Runs at startup, then every refresh interval (drops deleted products, resizes for the
+   * catalog).
+   */
+  @Scheduled(fixedDelayString = "${product.id-filter.refresh-interval-ms:3600000}")
+  public void rebuild() {
+    if (!enabled) {
+      return;
+    }
+    synchronized (this) {
+      addedWhileBuilding = new ArrayList<>();
+    }
+    try {
+      // read the ids first to size the filter for them, in a read-write transaction: from the
+      // primary, a lagging replica misses the latest products
+      List<Long> productIds = transactionTemplate.execute(status -> readActiveIds());
+
+      LongBloomFilter rebuilt = new LongBloomFilter(
+          Math.max(minExpectedSize, (long) (productIds.size() * growthFactor)),
+          falsePositiveRate);
+      productIds.forEach(rebuilt::add);
+      synchronized (this) {
+        addedWhileBuilding.forEach(rebuilt::add);
+        dropOldAdds(System.currentTimeMillis());
+        recentAdds.forEach(recentAdd -> rebuilt.add(recentAdd.productId()));
+        filter = rebuilt;
+        addedWhileBuilding = null;
+      }
+      log.info("Product id filter built with {} products ({} bits, {} hashes)",
+          productIds.size(), rebuilt.bitCount(), rebuilt.hashCount());
+    } catch (Exception e) {
+      synchronized (this) {
+        addedWhileBuilding = null;
+      }
+      // keep the current filter, created products keep being added
+      log.error("Error building product id filter", e);
+    }
+  }
+
+  // keyset pages by id
+  private List<Long> readActiveIds() {
+    List<Long> productIds = new ArrayList<>();
+    long lastProductId = 0L;
+    List<Long> page;
+    do {
+      page = productRepository.findActiveIdsAfter(lastProductId, PageRequest.ofSize(pageSize));
+      productIds.addAll(page);
+      if (!page.isEmpty()) {
+        lastProductId = page.get(page.size() - 1);
+      }
+    } while (page.size() == pageSize);
+    return productIds;
+  }
+
+  // called holding the lock of this filter
+  private void dropOldAdds(long now) {
+    while (!recentAdds.isEmpty()
+        && now - recentAdds.peekFirst().addedAt() > recentAddRetentionMs) {
+      recentAdds.pollFirst();
+    }
+  }
+
+  private record RecentAdd(long productId, long addedAt) {
+
+  }
+}
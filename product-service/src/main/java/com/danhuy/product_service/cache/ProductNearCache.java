@@ -0,0 +1,120 @@
+package com.danhuy.product_service.cache;
+
+import com.danhuy.product_service.dto.ProductResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process L1 cache of product details in front of Redis (L2), so hot products are served
+ * without a network round trip nor a deserialization. Caffeine bounds it by size with W-TinyLFU
+ * admission (a one-off lookup does not push out a hot product) and by a time to live.
+ *
+ * <p>This node drops an entry when it changes the product; the other nodes drop it from the
+ * product updated / deleted events (see
+ * {@link com.danhuy.product_service.event.consumer.ProductCatalogConsumer}). The time to live
+ * bounds staleness when an event is late or lost, and for stock changes which send no product
+ * event.
+ */
+@Component
+public class ProductNearCache {
+
+  private final boolean enabled;
+  private final Cache<Long, ProductResponse> cache;
+  // incremented by every invalidation, a value read before one is not put
+  private final AtomicLong invalidations = new AtomicLong();
+
+  public ProductNearCache(ObjectProvider<MeterRegistry> meterRegistry,
+      @Value("${product.cache.local.enabled:true}") boolean enabled,
+      @Value("${product.cache.local.maximum-size:10000}") long maximumSize,
+      @Value("${product.cache.local.ttl-ms:30000}") long ttlMs) {
+    this.enabled = enabled;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(Duration.ofMillis(ttlMs))
+        .recordStats()
+        .build();
+
+    // the global registry is picked up by actuator when it is on the classpath
+    MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    CaffeineCacheMetrics.monitor(registry, cache, "product.l1");
+  }
+
+  /**
+   * get a product from L1.
+   *
+   * @param productId Long
+   * @return ProductResponse, null if not cached locally
+   */
+  public ProductResponse get(Long productId) {
+    return enabled ? cache.getIfPresent(productId) : null;
+  }
+
+  /**
+   * put a product changed by this node into L1.
+   *
+   * @param product ProductResponse
+   */
+  public void put(ProductResponse product) {
+    if (enabled) {
+      cache.put(product.getId(), product);
+    }
+  }
+
+  /**
+   * stamp to take before reading a product from L2 or the DB, see {@link #putIfValid}.
+   *
+   * @return long
+   */
+  public long stamp() {
+    return invalidations.get();
+  }
+
+  /**
+   * put a product read from L2 or the DB into L1, unless an invalidation happened since the read
+   * started: the value may be the one just invalidated.
+   *
+   * @param product ProductResponse
+   * @param stamp   long taken before the read
+   */
+  public void putIfValid(ProductResponse product, long stamp) {
+    if (!enabled) {
+      return;
+    }
+    cache.asMap().compute(product.getId(),
+        (productId, cached) -> invalidations.get() == stamp ? product : cached);
+  }
+
+  /**
+   * drop a product from L1 (changed here or on another node).
+   *
+   * @param productId Long
+   */
+  public void invalidate(Long productId) {
+    invalidations.incrementAndGet();
+    cache.invalidate(productId);
+  }
+
+  /**
+   * drop products from L1.
+   *
+   * @param productIds Collection<Long>
+   */
+  public void invalidate(Collection<Long> productIds) {
+    invalidations.incrementAndGet();
+    cache.invalidateAll(productIds);
+  }
+
+  public void invalidateAll() {
+    invalidations.incrementAndGet();
+    cache.invalidateAll();
+  }
+}
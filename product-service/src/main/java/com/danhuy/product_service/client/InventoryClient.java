@@ -0,0 +1,71 @@
+package com.danhuy.product_service.client;
+
+import com.danhuy.common_service.dto.CommittedHoldDto;
+import com.danhuy.common_service.dto.StockLevelDto;
+import com.danhuy.common_service.response.ApiResponse;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+@Component
+public class InventoryClient {
+
+  private static final ParameterizedTypeReference<ApiResponse<List<StockLevelDto>>> STOCK_LEVELS =
+      new ParameterizedTypeReference<>() {
+      };
+  private static final ParameterizedTypeReference<ApiResponse<List<CommittedHoldDto>>>
+      COMMITTED_HOLDS = new ParameterizedTypeReference<>() {
+      };
+
+  private final RestClient restClient;
+
+  public InventoryClient(RestClient.Builder loadBalancedRestClientBuilder,
+      @Value("${product.inventory-service.url:http://inventory-service}") String baseUrl) {
+    this.restClient = loadBalancedRestClientBuilder.baseUrl(baseUrl).build();
+  }
+
+  /**
+   * get inventory quantities of the products in (afterProductId, toProductId], by product id.
+   *
+   * @param afterProductId long, exclusive
+   * @param toProductId    long, inclusive
+   * @param size           int
+   * @return List<StockLevelDto>
+   */
+  public List<StockLevelDto> getStockLevels(long afterProductId, long toProductId, int size) {
+    ApiResponse<List<StockLevelDto>> response = restClient.get()
+        .uri(uriBuilder -> uriBuilder.path("/api/inventory/stock-levels")
+            .queryParam("afterProductId", afterProductId)
+            .queryParam("toProductId", toProductId)
+            .queryParam("size", size)
+            .build())
+        .retrieve()
+        .body(STOCK_LEVELS);
+    return response == null || response.getResult() == null ? List.of() : response.getResult();
+  }
+
+  /**
+   * get the committed reservation holds (units sold) after a (committedAt, id) cursor, in cursor
+   * order.
+   *
+   * @param afterCommittedAt LocalDateTime, cursor time
+   * @param afterId          long, exclusive within the cursor time
+   * @param size             int
+   * @return List<CommittedHoldDto>
+   */
+  public List<CommittedHoldDto> getCommittedHolds(LocalDateTime afterCommittedAt, long afterId,
+      int size) {
+    ApiResponse<List<CommittedHoldDto>> response = restClient.get()
+        .uri(uriBuilder -> uriBuilder.path("/api/inventory/holds/committed")
+            .queryParam("afterCommittedAt", afterCommittedAt)
+            .queryParam("afterId", afterId)
+            .queryParam("size", size)
+            .build())
+        .retrieve()
+        .body(COMMITTED_HOLDS);
+    return response == null || response.getResult() == null ? List.of() : response.getResult();
+  }
+}
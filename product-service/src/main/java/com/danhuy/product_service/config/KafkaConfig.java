@@ -2,9 +2,12 @@ package com.danhuy.product_service.config;
 
 import org.apache.kafka.clients.admin.NewTopic;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
 
 @Configuration
 public class KafkaConfig {
@@ -18,6 +21,21 @@ public class KafkaConfig {
   @Value("${kafka.topics.product-deleted}")
   private String productDeletedTopic;
 
+  /**
+   * Listener container factory delivering a whole poll to the listener (batch listener).
+   */
+  @Bean
+  public ConcurrentKafkaListenerContainerFactory<Object, Object>
+      batchKafkaListenerContainerFactory(
+      ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+      ConsumerFactory<Object, Object> kafkaConsumerFactory) {
+    ConcurrentKafkaListenerContainerFactory<Object, Object> factory =
+        new ConcurrentKafkaListenerContainerFactory<>();
+    configurer.configure(factory, kafkaConsumerFactory);
+    factory.setBatchListener(true);
+    return factory;
+  }
+
   @Bean
   public NewTopic productCreatedTopic() {
     return TopicBuilder.name(productCreatedTopic)
@@ -0,0 +1,19 @@
+package com.danhuy.product_service.config;
+
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestClient;
+
+@Configuration
+public class RestClientConfig {
+
+  /**
+   * RestClient resolving service names (http://inventory-service) through Eureka.
+   */
+  @Bean
+  @LoadBalanced
+  public RestClient.Builder loadBalancedRestClientBuilder() {
+    return RestClient.builder();
+  }
+}
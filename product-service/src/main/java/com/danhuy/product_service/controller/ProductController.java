@@ -4,13 +4,17 @@ import com.danhuy.common_service.enums.MessageEnum;
 import com.danhuy.common_service.exception.ex.AppException;
 import com.danhuy.common_service.response.ApiResponse;
 import com.danhuy.common_service.uilts.PagingTransferUtils;
+import com.danhuy.product_service.dto.ProductCursorPage;
 import com.danhuy.product_service.dto.ProductRequest;
 import com.danhuy.product_service.dto.ProductResponse;
+import com.danhuy.product_service.dto.ProductSuggestion;
 import com.danhuy.product_service.service.ProductService;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import io.github.resilience4j.timelimiter.annotation.TimeLimiter;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -130,12 +134,31 @@ public class ProductController {
     return ResponseEntity.ok(apiResponse);
   }
 
+  @GetMapping("/scroll")
+  public ResponseEntity<ApiResponse<List<ProductResponse>>> scrollProducts(
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "10") @Min(1) @Max(100) int size,
+      @RequestParam(defaultValue = "id") String sort) {
+    log.info("Received request to scroll products with size: {}, sort: {}", size, sort);
+
+    ProductCursorPage products = productService.scrollProducts(cursor, size, sort);
+
+    ApiResponse<List<ProductResponse>> apiResponse = new ApiResponse<>();
+    apiResponse.setResult(products.getContent());
+    // meta data, no total: a count would cost as much as reading every product
+    apiResponse.setMetadata(PagingTransferUtils.transfersCursorToMetaData(
+        products.getContent().size(), products.getNextCursor()));
+
+    return ResponseEntity.ok(apiResponse);
+  }
+
   @GetMapping("/search")
   public ResponseEntity<List<ProductResponse>> searchProducts(
-      @RequestParam String name) {
+      @RequestParam String name,
+      @RequestParam(defaultValue = "false") boolean fuzzy) {
     log.info("Received request to search products by name: {}", name);
 
-    List<ProductResponse> products = productService.searchProductsByName(name);
+    List<ProductResponse> products = productService.searchProductsByName(name, fuzzy);
 
     ApiResponse<List<ProductResponse>> apiResponse = new ApiResponse<>();
     apiResponse.setResult(products);
@@ -143,6 +166,18 @@ public class ProductController {
     return ResponseEntity.ok(products);
   }
 
+  @GetMapping("/suggest")
+  public ResponseEntity<ApiResponse<List<ProductSuggestion>>> suggestProducts(
+      @RequestParam String q,
+      @RequestParam(defaultValue = "10") int limit) {
+    // one request per keystroke, not logged at info level
+    log.debug("Received request to suggest products for: {}", q);
+
+    ApiResponse<List<ProductSuggestion>> apiResponse = new ApiResponse<>();
+    apiResponse.setResult(productService.suggestProducts(q, limit));
+    return ResponseEntity.ok(apiResponse);
+  }
+
   @GetMapping("/category/{categoryId}")
   public ResponseEntity<List<ProductResponse>> getProductsByCategory(
       @PathVariable Long categoryId) {
@@ -158,6 +193,7 @@ public class ProductController {
       @RequestParam(required = false) Long categoryId,
       @RequestParam(required = false) BigDecimal minPrice,
       @RequestParam(required = false) BigDecimal maxPrice,
+      @RequestParam(defaultValue = "false") boolean fuzzy,
       @RequestParam(defaultValue = "0") int page,
       @RequestParam(defaultValue = "10") int size,
       @RequestParam(defaultValue = "id") String sort) {
@@ -168,7 +204,7 @@ public class ProductController {
 
     Pageable pageable = PageRequest.of(page, size, Sort.by(sort));
     Page<ProductResponse> products = productService.searchProducts(name, categoryId, minPrice,
-        maxPrice, pageable);
+        maxPrice, fuzzy, pageable);
 
     ApiResponse<List<ProductResponse>> apiResponse = new ApiResponse<>();
     apiResponse.setResult(products.getContent());
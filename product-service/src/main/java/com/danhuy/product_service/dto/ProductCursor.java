@@ -0,0 +1,81 @@
+package com.danhuy.product_service.dto;
+
+import com.danhuy.common_service.enums.MessageEnum;
+import com.danhuy.common_service.exception.ex.AppException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Position of a keyset page of products: the sort key and value of the last product of the page,
+ * and its id to break ties. Sent to clients as an opaque string.
+ *
+ * @param sortKey sort key of the listing
+ * @param id      id of the last product
+ * @param value   sort key value of the last product, null when sorted by id
+ */
+public record ProductCursor(SortKey sortKey, long id, String value) {
+
+  /**
+   * cursor after a product.
+   *
+   * @param sortKey SortKey
+   * @param product ProductResponse the last product of the page
+   * @return ProductCursor
+   */
+  public static ProductCursor after(SortKey sortKey, ProductResponse product) {
+    return new ProductCursor(sortKey, product.getId(), switch (sortKey) {
+      case ID -> null;
+      case PRICE -> product.getPrice().toPlainString();
+      case NAME -> product.getName();
+    });
+  }
+
+  /**
+   * read a cursor sent by a client.
+   *
+   * @param cursor String
+   * @return ProductCursor
+   */
+  public static ProductCursor decode(String cursor) {
+    try {
+      String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+          .split(":", 3);
+      SortKey sortKey = SortKey.from(parts[0]);
+      String value = sortKey == SortKey.ID ? null : parts[2];
+      if (sortKey == SortKey.PRICE) {
+        // fail here rather than in the query
+        new BigDecimal(value);
+      }
+      return new ProductCursor(sortKey, Long.parseLong(parts[1]), value);
+    } catch (IllegalArgumentException | IndexOutOfBoundsException | AppException e) {
+      throw new AppException(MessageEnum.INVALID_PRODUCT_CURSOR, cursor);
+    }
+  }
+
+  public String encode() {
+    String raw = sortKey.name() + ":" + id + (value == null ? "" : ":" + value);
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public BigDecimal price() {
+    return new BigDecimal(value);
+  }
+
+  /**
+   * sort keys of the keyset listing, each one backed by an (is_active, key, id) index.
+   */
+  public enum SortKey {
+    ID, PRICE, NAME;
+
+    public static SortKey from(String sort) {
+      try {
+        return valueOf(sort.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new AppException(MessageEnum.INVALID_PRODUCT_SORT, sort);
+      }
+    }
+  }
+}
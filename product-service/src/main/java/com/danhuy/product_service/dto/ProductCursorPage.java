@@ -0,0 +1,18 @@
+package com.danhuy.product_service.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductCursorPage {
+
+  private List<ProductResponse> content;
+  // cursor of the next page, null on the last page
+  private String nextCursor;
+}
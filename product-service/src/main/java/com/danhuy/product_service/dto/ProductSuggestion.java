@@ -0,0 +1,16 @@
+package com.danhuy.product_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSuggestion {
+
+  private Long id;
+  private String name;
+}
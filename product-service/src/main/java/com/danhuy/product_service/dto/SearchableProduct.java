@@ -0,0 +1,17 @@
+package com.danhuy.product_service.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Fields of an active product needed by the in-memory search index and suggester.
+ *
+ * @param id         id of product
+ * @param name       name of product
+ * @param categoryId id of category, null if none
+ * @param price      price of product
+ * @param popularity units sold, null if not known (product events)
+ */
+public record SearchableProduct(Long id, String name, Long categoryId, BigDecimal price,
+                                Long popularity) {
+
+}
@@ -6,6 +6,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PrePersist;
@@ -20,7 +21,11 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "products")
+// keyset listing of active products (see ProductRepository#findActiveAfterId and co.)
+@Table(name = "products", indexes = {
+    @Index(name = "idx_products_active_id", columnList = "is_active, id"),
+    @Index(name = "idx_products_active_price", columnList = "is_active, price, id"),
+    @Index(name = "idx_products_active_name", columnList = "is_active, name, id")})
 @Data
 @Builder
 @NoArgsConstructor
@@ -63,6 +68,14 @@ public class Product {
 
   private String phoneSupplier;
 
+  // inventory row version of the stock, an older stock event is not applied over a newer one
+  @Column(name = "stock_version", columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+  private long stockVersion;
+
+  // units sold, summed from the committed movements of inventory (suggestion weight)
+  @Column(name = "popularity", columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+  private long popularity;
+
   @PrePersist
   public void prePersist() {
     LocalDateTime now = LocalDateTime.now();
@@ -0,0 +1,46 @@
+package com.danhuy.product_service.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a reconciliation job, so an interrupted pass resumes where it stopped. The lease
+ * (lockedBy, lockedUntil) keeps a single instance running the job.
+ */
+@Entity
+@Table(name = "reconciliation_checkpoint")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconciliationCheckpoint {
+
+  @Id
+  @Column(length = 64)
+  private String name;
+
+  // last product id reconciled in the current pass, 0 when no pass is in progress
+  @Column(name = "last_product_id", nullable = false)
+  private Long lastProductId;
+
+  // keyset position of a job that follows a feed (time, id of the last row applied), null
+  // before its first run
+  @Column(name = "cursor_at")
+  private LocalDateTime cursorAt;
+
+  @Column(name = "cursor_id")
+  private Long cursorId;
+
+  @Column(name = "locked_by", length = 100)
+  private String lockedBy;
+
+  @Column(name = "locked_until")
+  private LocalDateTime lockedUntil;
+}
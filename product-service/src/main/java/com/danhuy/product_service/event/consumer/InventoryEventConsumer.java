@@ -1,5 +1,10 @@
 package com.danhuy.product_service.event.consumer;
 
+import com.danhuy.common_service.event.inventory.StockChangedEvent;
+import com.danhuy.product_service.service.ProductService;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -10,11 +15,34 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class InventoryEventConsumer {
 
-  // Dùng để xử lý các sự kiện từ inventory-service nếu cần
-  // Ví dụ: cập nhật trạng thái hàng tồn kho cho sản phẩm
-  @KafkaListener(topics = "${kafka.topics.inventory-updated}", groupId = "${spring.kafka.consumer.group-id}")
-  public void consumeInventoryUpdatedEvent(String message) {
-    log.info("Received inventory update event: {}", message);
-    // Xử lý logic khi nhận được sự kiện cập nhật hàng tồn kho
+  private final ProductService productService;
+
+  /**
+   * Projection of the stock of inventory-service into Product.stock. A whole poll is applied at
+   * once, only the event of each product with the highest version counts: events are sent after
+   * commit, two transactions may send theirs in any order.
+   *
+   * @param events List<StockChangedEvent>
+   */
+  @KafkaListener(
+      topics = "${kafka.topics.inventory-updated}",
+      groupId = "${spring.kafka.consumer.group-id}",
+      containerFactory = "batchKafkaListenerContainerFactory",
+      properties = "max.poll.records=${product.stock-projection.max-poll-records:500}")
+  public void consumeInventoryUpdatedEvents(List<StockChangedEvent> events) {
+    log.info("Received {} inventory updated events", events.size());
+
+    Map<Long, StockChangedEvent> latestByProductId = new LinkedHashMap<>();
+    for (StockChangedEvent event : events) {
+      if (event.getVersion() == null) {
+        // sent before events were versioned, the stock reconciliation fixes what it missed
+        continue;
+      }
+      latestByProductId.merge(event.getProductId(), event,
+          (current, next) -> next.getVersion() > current.getVersion() ? next : current);
+    }
+
+    int updated = productService.updateStocks(latestByProductId.values());
+    log.info("Stock of {} products updated from {} events", updated, events.size());
   }
 }
@@ -0,0 +1,112 @@
+package com.danhuy.product_service.event.consumer;
+
+import com.danhuy.common_service.enums.EventType;
+import com.danhuy.product_service.cache.CacheGenerations;
+import com.danhuy.product_service.cache.ProductIdFilter;
+import com.danhuy.product_service.cache.ProductNearCache;
+import com.danhuy.product_service.dto.SearchableProduct;
+import com.danhuy.product_service.event.ProductEvent;
+import com.danhuy.product_service.search.ProductSearchIndex;
+import com.danhuy.product_service.search.ProductSuggester;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductCatalogConsumer implements ConsumerSeekAware {
+
+  private final ProductSearchIndex productSearchIndex;
+  private final ProductSuggester productSuggester;
+  private final ProductIdFilter productIdFilter;
+  private final ProductNearCache productNearCache;
+  private final CacheGenerations cacheGenerations;
+
+  @Value("${kafka.topics.product-created}")
+  private String PRODUCT_CREATED;
+
+  @Value("${product.id-filter.recent-add-retention-ms:600000}")
+  private long replayCreatedMs;
+
+  // creations published before the partitions were assigned are replays
+  private volatile long assignedAt;
+
+  /**
+   * Keep the in-memory catalog structures of this instance current (search index, suggester, id
+   * filter, near-cache of product details). Every instance reads every product event (own consumer
+   * group) from the latest offset; what happened before is loaded from the database. The group is
+   * named after the instance (host and port, like its Eureka instance id), so a restart reuses it
+   * instead of leaving one more group behind.
+   *
+   * @param event     ProductEvent
+   * @param timestamp long time the event was published
+   */
+  @KafkaListener(
+      topics = {"${kafka.topics.product-created}", "${kafka.topics.product-updated}",
+          "${kafka.topics.product-deleted}"},
+      groupId = "${spring.kafka.consumer.group-id}-catalog-${spring.cloud.client.hostname}-"
+          + "${server.port}",
+      properties = "auto.offset.reset=latest")
+  public void consumeProductEvent(ProductEvent event,
+      @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long timestamp) {
+    log.debug("Received product {} event for product: {}", event.getEventType(),
+        event.getProductId());
+
+    if (event.getEventType() == EventType.CREATED && timestamp < assignedAt) {
+      // replayed for the id filter only, the search structures may hold a later update already
+      productIdFilter.add(event.getProductId());
+      return;
+    }
+
+    if (event.getEventType() != EventType.CREATED) {
+      // the instance that changed the product has already dropped it from Redis and moved the
+      // generations before sending the event: take them now, then drop the local entry
+      cacheGenerations.refresh();
+      productNearCache.invalidate(event.getProductId());
+    }
+
+    if (event.getEventType() == EventType.DELETED) {
+      productSearchIndex.remove(event.getProductId());
+      productSuggester.remove(event.getProductId());
+    } else {
+      if (event.getEventType() == EventType.CREATED) {
+        productIdFilter.add(event.getProductId());
+      }
+      // popularity is not in the event, the suggester keeps the one it has
+      SearchableProduct product = new SearchableProduct(event.getProductId(),
+          event.getProductName(), event.getCategoryId(), event.getPrice(), null);
+      productSearchIndex.put(product);
+      productSuggester.put(product);
+    }
+  }
+
+  @Override
+  public void onPartitionsAssigned(Map<TopicPartition, Long> assignments,
+      ConsumerSeekCallback callback) {
+    // the id filter may have read the products before this consumer got its partitions: replay
+    // the latest creations into it, nothing created in between is missed
+    long now = System.currentTimeMillis();
+    assignedAt = now;
+    Map<Boolean, List<TopicPartition>> partitions = assignments.keySet().stream()
+        .collect(Collectors.partitioningBy(
+            partition -> partition.topic().equals(PRODUCT_CREATED)));
+    if (!partitions.get(true).isEmpty()) {
+      callback.seekToTimestamp(partitions.get(true), now - replayCreatedMs);
+    }
+    // the group is kept across restarts: skip the updates / deletes committed before, the
+    // database loads are newer than them
+    if (!partitions.get(false).isEmpty()) {
+      callback.seekToEnd(partitions.get(false));
+    }
+  }
+}
@@ -11,7 +11,14 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+/**
+ * Publish product events. Inside a transaction the event is built right away and sent once the
+ * transaction commits: other nodes reload the product when they get it, and a rolled back change
+ * is never published.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -28,7 +35,10 @@ public class ProductEventProducer {
 
   public void publishProductCreatedEvent(Product product) {
     ProductEvent event = setupProductEvent(product, EventType.CREATED);
+    afterCommit(() -> sendProductCreatedEvent(product, event));
+  }
 
+  private void sendProductCreatedEvent(Product product, ProductEvent event) {
     CompletableFuture<SendResult<String, ProductEvent>> future = kafkaTemplate.send(
         productCreatedTopic, product.getId().toString(), event);
 
@@ -44,7 +54,10 @@ public class ProductEventProducer {
 
   public void publishProductUpdatedEvent(Product product) {
     ProductEvent event = setupProductEvent(product, EventType.UPDATED);
+    afterCommit(() -> sendProductUpdatedEvent(product, event));
+  }
 
+  private void sendProductUpdatedEvent(Product product, ProductEvent event) {
     CompletableFuture<SendResult<String, ProductEvent>> future = kafkaTemplate.send(
         productUpdatedTopic, product.getId().toString(), event);
 
@@ -58,7 +71,10 @@ public class ProductEventProducer {
 
   public void publishProductDeletedEvent(Product product) {
     ProductEvent event = setupProductEvent(product, EventType.DELETED);
+    afterCommit(() -> sendProductDeletedEvent(product, event));
+  }
 
+  private void sendProductDeletedEvent(Product product, ProductEvent event) {
     CompletableFuture<SendResult<String, ProductEvent>> future = kafkaTemplate.send(
         productDeletedTopic, product.getId().toString(), event);
 
@@ -70,6 +86,19 @@ public class ProductEventProducer {
         });
   }
 
+  private void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
+  }
+
   private ProductEvent setupProductEvent(Product product, EventType eventType) {
     return ProductEvent.builder()
         .eventType(eventType)
@@ -0,0 +1,144 @@
+package com.danhuy.product_service.reconciliation;
+
+import com.danhuy.common_service.dto.CommittedHoldDto;
+import com.danhuy.product_service.client.InventoryClient;
+import com.danhuy.product_service.entity.ReconciliationCheckpoint;
+import com.danhuy.product_service.repository.ReconciliationCheckpointRepository;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Add the units sold to Product.popularity (suggestion weight) from the committed reservation holds
+ * of inventory-service, so only orders that were actually committed count: a reservation that is
+ * released or expires never does. Holds are committed in the same transaction as the stock and
+ * read after the (committedAt, id) cursor of the last one applied; the popularity and the new
+ * cursor are saved in one transaction, so every hold counts once. The lease of the checkpoint keeps
+ * a single instance running the job.
+ *
+ * <p>The first run starts from the current time: orders committed before it are not counted.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductPopularityJob {
+
+  private static final String JOB_NAME = "product-popularity";
+  private static final String ADD_POPULARITY =
+      "UPDATE products SET popularity = popularity + ? WHERE id = ?";
+
+  private final ReconciliationCheckpointRepository checkpointRepository;
+  private final InventoryClient inventoryClient;
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+
+  private final String owner = "product-service-" + UUID.randomUUID();
+
+  @Value("${product.popularity.enabled:true}")
+  private boolean enabled;
+
+  @Value("${product.popularity.page-size:1000}")
+  private int pageSize;
+
+  @Value("${product.popularity.lease-ms:600000}")
+  private long leaseMs;
+
+  /**
+   * apply the holds committed since the last run.
+   */
+  @Scheduled(fixedDelayString = "${product.popularity.interval-ms:60000}")
+  public void apply() {
+    if (!enabled || !tryLock()) {
+      return;
+    }
+
+    long applied = 0;
+    try {
+      ReconciliationCheckpoint checkpoint = checkpointRepository.findById(JOB_NAME).orElseThrow();
+      LocalDateTime cursorAt = checkpoint.getCursorAt();
+      long cursorId = checkpoint.getCursorId() == null ? 0L : checkpoint.getCursorId();
+      if (cursorAt == null) {
+        // checkpoint of an older version, start from now and keep that start
+        cursorAt = LocalDateTime.now();
+        checkpointRepository.saveCursor(JOB_NAME, owner, cursorAt, cursorId, leaseEnd());
+      }
+      List<CommittedHoldDto> holds;
+      do {
+        holds = inventoryClient.getCommittedHolds(cursorAt, cursorId, pageSize);
+        if (holds.isEmpty()) {
+          break;
+        }
+        CommittedHoldDto last = holds.get(holds.size() - 1);
+        if (!addPopularity(holds, last)) {
+          log.warn("Product popularity lease lost at hold {} / {}, stopping", cursorAt, cursorId);
+          return;
+        }
+        cursorAt = last.getCommittedAt();
+        cursorId = last.getId();
+        applied += holds.size();
+      } while (holds.size() == pageSize);
+
+      if (applied > 0) {
+        log.info("Product popularity updated from {} committed holds", applied);
+      }
+    } catch (Exception e) {
+      // resumed from the last saved cursor on the next run
+      log.error("Error updating product popularity", e);
+    } finally {
+      checkpointRepository.unlock(JOB_NAME, owner);
+    }
+  }
+
+  // one transaction: the units of the page and the cursor it ends at, false if the lease was lost
+  private boolean addPopularity(List<CommittedHoldDto> holds, CommittedHoldDto last) {
+    Map<Long, Long> unitsByProduct = new TreeMap<>();
+    holds.forEach(hold -> unitsByProduct.merge(hold.getProductId(), (long) hold.getQuantity(),
+        Long::sum));
+    List<Map.Entry<Long, Long>> units = new ArrayList<>(unitsByProduct.entrySet());
+
+    return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+      jdbcTemplate.batchUpdate(ADD_POPULARITY, units, units.size(), (ps, entry) -> {
+        ps.setLong(1, entry.getValue());
+        ps.setLong(2, entry.getKey());
+      });
+      if (checkpointRepository.saveCursor(JOB_NAME, owner, last.getCommittedAt(), last.getId(),
+          leaseEnd()) == 0) {
+        status.setRollbackOnly();
+        return false;
+      }
+      return true;
+    }));
+  }
+
+  private boolean tryLock() {
+    if (!checkpointRepository.existsById(JOB_NAME)) {
+      try {
+        checkpointRepository.save(ReconciliationCheckpoint.builder()
+            .name(JOB_NAME)
+            .lastProductId(0L)
+            .cursorAt(LocalDateTime.now())
+            .cursorId(0L)
+            .build());
+      } catch (DataIntegrityViolationException e) {
+        // created by another instance at the same time
+      }
+    }
+    return checkpointRepository.tryLock(JOB_NAME, owner, LocalDateTime.now(), leaseEnd()) == 1;
+  }
+
+  private LocalDateTime leaseEnd() {
+    return LocalDateTime.now().plus(Duration.ofMillis(leaseMs));
+  }
+}
@@ -0,0 +1,220 @@
+package com.danhuy.product_service.reconciliation;
+
+import com.danhuy.common_service.dto.StockLevelDto;
+import com.danhuy.product_service.cache.ProductCacheService;
+import com.danhuy.product_service.client.InventoryClient;
+import com.danhuy.product_service.entity.ReconciliationCheckpoint;
+import com.danhuy.product_service.repository.ProductRepository;
+import com.danhuy.product_service.repository.ReconciliationCheckpointRepository;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Detect and fix drift between Product.stock (projection) and Inventory.quantity (source of
+ * truth). Both sides are read in product id order, chunk by chunk with keyset pages, and joined
+ * with a merge-join, so memory stays bounded whatever the number of products. Progress is saved
+ * after every chunk and the next run resumes from it.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StockReconciliationJob {
+
+  private static final String JOB_NAME = "product-stock";
+  // compare-and-set: a projection event applied since the chunk was read is never overwritten.
+  // The version of the inventory read moves with the stock, a late older event is dropped after
+  private static final String CORRECT_STOCK =
+      "UPDATE products SET stock = ?, stock_version = GREATEST(stock_version, ?), updated_at = ? "
+          + "WHERE id = ? AND stock <=> ? AND stock_version <= ?";
+
+  private final ProductRepository productRepository;
+  private final ReconciliationCheckpointRepository checkpointRepository;
+  private final InventoryClient inventoryClient;
+  private final ProductCacheService productCacheService;
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+
+  private final String owner = "product-service-" + UUID.randomUUID();
+
+  @Value("${product.reconciliation.enabled:true}")
+  private boolean enabled;
+
+  @Value("${product.reconciliation.chunk-size:1000}")
+  private int chunkSize;
+
+  @Value("${product.reconciliation.pause-ms:200}")
+  private long pauseMs;
+
+  @Value("${product.reconciliation.lease-ms:600000}")
+  private long leaseMs;
+
+  /**
+   * Run (or resume) a reconciliation pass over all products. The pass holds its scheduler thread
+   * until done, the scheduler pool has a thread per job (spring.task.scheduling.pool.size).
+   */
+  @Scheduled(cron = "${product.reconciliation.cron:0 0 2 * * *}")
+  public void reconcile() {
+    if (!enabled || !tryLock()) {
+      return;
+    }
+
+    long cursor = checkpointRepository.findById(JOB_NAME)
+        .map(ReconciliationCheckpoint::getLastProductId)
+        .orElse(0L);
+    log.info("Stock reconciliation started after product id {}", cursor);
+
+    long scanned = 0;
+    long mismatches = 0;
+    long corrected = 0;
+    long missingInventory = 0;
+    try {
+      while (true) {
+        List<StockLevelDto> products = productRepository.findStockLevelsAfter(cursor,
+            PageRequest.ofSize(chunkSize));
+        if (products.isEmpty()) {
+          break;
+        }
+        long upTo = products.get(products.size() - 1).getProductId();
+
+        ChunkResult result = mergeJoin(products, cursor, upTo);
+        corrected += correct(result.corrections());
+        scanned += products.size();
+        mismatches += result.corrections().size();
+        missingInventory += result.missingInventory();
+
+        cursor = upTo;
+        if (checkpointRepository.saveProgress(JOB_NAME, owner, cursor, leaseEnd()) == 0) {
+          log.warn("Stock reconciliation lease lost at product id {}, stopping", cursor);
+          return;
+        }
+        if (products.size() < chunkSize) {
+          break;
+        }
+        // leave room for live traffic between chunks
+        Thread.sleep(pauseMs);
+      }
+
+      // pass finished, the next one starts from the first product
+      checkpointRepository.saveProgress(JOB_NAME, owner, 0L, leaseEnd());
+      log.info("Stock reconciliation finished: {} products, {} mismatches, {} corrected, "
+          + "{} without inventory", scanned, mismatches, corrected, missingInventory);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      // resumed from the checkpoint on the next run
+      log.error("Stock reconciliation failed after product id {}", cursor, e);
+    } finally {
+      checkpointRepository.unlock(JOB_NAME, owner);
+    }
+  }
+
+  /**
+   * Join a chunk of products with the inventory of the same id range. Inventory is read in pages
+   * too, both lists are in product id order so each side is walked once.
+   */
+  private ChunkResult mergeJoin(List<StockLevelDto> products, long after, long upTo) {
+    List<Correction> corrections = new ArrayList<>();
+    int missingInventory = 0;
+    int position = 0;
+
+    long inventoryCursor = after;
+    List<StockLevelDto> inventories;
+    do {
+      inventories = inventoryClient.getStockLevels(inventoryCursor, upTo, chunkSize);
+      for (StockLevelDto inventory : inventories) {
+        // products before this inventory row have no inventory
+        while (position < products.size()
+            && products.get(position).getProductId() < inventory.getProductId()) {
+          missingInventory++;
+          position++;
+        }
+        if (position < products.size()
+            && products.get(position).getProductId().equals(inventory.getProductId())) {
+          StockLevelDto product = products.get(position);
+          if (!Objects.equals(product.getQuantity(), inventory.getQuantity())) {
+            corrections.add(new Correction(product.getProductId(), product.getQuantity(),
+                inventory.getQuantity(),
+                inventory.getVersion() == null ? 0L : inventory.getVersion()));
+          }
+          position++;
+        }
+        // otherwise an inventory row without product, nothing to correct here
+      }
+      if (!inventories.isEmpty()) {
+        inventoryCursor = inventories.get(inventories.size() - 1).getProductId();
+      }
+    } while (inventories.size() == chunkSize);
+
+    missingInventory += products.size() - position;
+    return new ChunkResult(corrections, missingInventory);
+  }
+
+  private int correct(List<Correction> corrections) {
+    if (corrections.isEmpty()) {
+      return 0;
+    }
+    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+    int[][] counts = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+        CORRECT_STOCK, corrections, corrections.size(), (ps, correction) -> {
+          ps.setInt(1, correction.expected());
+          ps.setLong(2, correction.version());
+          ps.setTimestamp(3, now);
+          ps.setLong(4, correction.productId());
+          ps.setObject(5, correction.observed());
+          ps.setLong(6, correction.version());
+        }));
+
+    List<Long> correctedIds = new ArrayList<>();
+    for (int i = 0; i < corrections.size(); i++) {
+      if (counts != null && counts[0][i] != 0) {
+        correctedIds.add(corrections.get(i).productId());
+      }
+    }
+    if (!correctedIds.isEmpty()) {
+      productCacheService.evictProductCaches(correctedIds);
+      log.info("Stock of {} products corrected from inventory", correctedIds.size());
+    }
+    return correctedIds.size();
+  }
+
+  private boolean tryLock() {
+    if (!checkpointRepository.existsById(JOB_NAME)) {
+      try {
+        checkpointRepository.save(ReconciliationCheckpoint.builder()
+            .name(JOB_NAME)
+            .lastProductId(0L)
+            .build());
+      } catch (DataIntegrityViolationException e) {
+        // created by another instance at the same time
+      }
+    }
+    return checkpointRepository.tryLock(JOB_NAME, owner, LocalDateTime.now(), leaseEnd()) == 1;
+  }
+
+  private LocalDateTime leaseEnd() {
+    return LocalDateTime.now().plus(Duration.ofMillis(leaseMs));
+  }
+
+  // expected: inventory quantity, version: inventory row version it was read at
+  private record Correction(long productId, Integer observed, int expected, long version) {
+
+  }
+
+  private record ChunkResult(List<Correction> corrections, int missingInventory) {
+
+  }
+}
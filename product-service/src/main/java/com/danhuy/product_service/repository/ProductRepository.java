@@ -1,5 +1,7 @@
 package com.danhuy.product_service.repository;
 
+import com.danhuy.common_service.dto.StockLevelDto;
+import com.danhuy.product_service.dto.SearchableProduct;
 import com.danhuy.product_service.entity.Product;
 import java.math.BigDecimal;
 import java.util.List;
@@ -35,6 +37,9 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
   // Tìm tất cả sản phẩm đang hoạt động
   List<Product> findByIsActiveTrue();
 
+  // Tìm sản phẩm đang hoạt động có phân trang
+  Page<Product> findByIsActiveTrue(Pageable pageable);
+
   // Tìm kiếm sản phẩm nâng cao
   @Query("SELECT p FROM Product p WHERE " +
       "(:name IS NULL OR LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%'))) AND " +
@@ -49,4 +54,43 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
       @Param("maxPrice") BigDecimal maxPrice,
       Pageable pageable);
 
+  // Keyset page of stocks by id (stock reconciliation), through the primary key
+  @Query("SELECT new com.danhuy.common_service.dto.StockLevelDto(p.id, p.stock, p.stockVersion) "
+      + "FROM Product p WHERE p.id > :after ORDER BY p.id")
+  List<StockLevelDto> findStockLevelsAfter(@Param("after") long after, Pageable pageable);
+
+  // Keyset page of active products by id for the in-memory search index and suggester
+  @Query("SELECT new com.danhuy.product_service.dto.SearchableProduct(p.id, p.name, c.id, p.price, "
+      + "p.popularity) FROM Product p LEFT JOIN p.category c "
+      + "WHERE p.id > :after AND p.isActive = true ORDER BY p.id")
+  List<SearchableProduct> findSearchableAfter(@Param("after") long after, Pageable pageable);
+
+  // Keyset page of ids of active products (Bloom filter of product ids)
+  @Query("SELECT p.id FROM Product p WHERE p.isActive = true AND p.id > :after ORDER BY p.id")
+  List<Long> findActiveIdsAfter(@Param("after") long after, Pageable pageable);
+
+  // Keyset pages of active products (listing without count): one seek on an (is_active, key, id)
+  // index however deep the page, the category comes in the same query
+  @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category "
+      + "WHERE p.isActive = true AND p.id > :after ORDER BY p.id")
+  List<Product> findActiveAfterId(@Param("after") long after, Pageable pageable);
+
+  @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category "
+      + "WHERE p.isActive = true ORDER BY p.price, p.id")
+  List<Product> findActiveOrderByPrice(Pageable pageable);
+
+  @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.isActive = true AND "
+      + "(p.price > :price OR p.price = :price AND p.id > :after) ORDER BY p.price, p.id")
+  List<Product> findActiveAfterPrice(@Param("price") BigDecimal price,
+      @Param("after") long after, Pageable pageable);
+
+  @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category "
+      + "WHERE p.isActive = true ORDER BY p.name, p.id")
+  List<Product> findActiveOrderByName(Pageable pageable);
+
+  @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.isActive = true AND "
+      + "(p.name > :name OR p.name = :name AND p.id > :after) ORDER BY p.name, p.id")
+  List<Product> findActiveAfterName(@Param("name") String name, @Param("after") long after,
+      Pageable pageable);
+
 }
@@ -0,0 +1,56 @@
+package com.danhuy.product_service.repository;
+
+import com.danhuy.product_service.entity.ReconciliationCheckpoint;
+import java.time.LocalDateTime;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface ReconciliationCheckpointRepository extends
+    JpaRepository<ReconciliationCheckpoint, String> {
+
+  // Take the lease when it is free or expired, 1 if this owner holds it now
+  @Transactional
+  @Modifying
+  @Query("UPDATE ReconciliationCheckpoint c SET c.lockedBy = :owner, c.lockedUntil = :until "
+      + "WHERE c.name = :name AND (c.lockedUntil IS NULL OR c.lockedUntil < :now "
+      + "OR c.lockedBy = :owner)")
+  int tryLock(
+      @Param("name") String name,
+      @Param("owner") String owner,
+      @Param("now") LocalDateTime now,
+      @Param("until") LocalDateTime until);
+
+  // Save progress and renew the lease, 0 if the lease has been lost
+  @Transactional
+  @Modifying
+  @Query("UPDATE ReconciliationCheckpoint c SET c.lastProductId = :lastProductId, "
+      + "c.lockedUntil = :until WHERE c.name = :name AND c.lockedBy = :owner")
+  int saveProgress(
+      @Param("name") String name,
+      @Param("owner") String owner,
+      @Param("lastProductId") long lastProductId,
+      @Param("until") LocalDateTime until);
+
+  // Save the cursor and renew the lease, 0 if the lease has been lost
+  @Transactional
+  @Modifying
+  @Query("UPDATE ReconciliationCheckpoint c SET c.cursorAt = :cursorAt, c.cursorId = :cursorId, "
+      + "c.lockedUntil = :until WHERE c.name = :name AND c.lockedBy = :owner")
+  int saveCursor(
+      @Param("name") String name,
+      @Param("owner") String owner,
+      @Param("cursorAt") LocalDateTime cursorAt,
+      @Param("cursorId") long cursorId,
+      @Param("until") LocalDateTime until);
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE ReconciliationCheckpoint c SET c.lockedBy = NULL, c.lockedUntil = NULL "
+      + "WHERE c.name = :name AND c.lockedBy = :owner")
+  int unlock(@Param("name") String name, @Param("owner") String owner);
+}
@@ -0,0 +1,364 @@
+package com.danhuy.product_service.search;
+
+import com.danhuy.product_service.dto.SearchableProduct;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * Term -> sorted product ids of the product names, with a trigram index of the terms for fuzzy
+ * searches. A posting list is replaced, never modified where a search could read it, so searches
+ * need no lock; writes must be serialized by the caller.
+ */
+class InvertedIndex {
+
+  // BM25 with a term frequency of 1 (names are short)
+  private static final double K1 = 1.2;
+  private static final double B = 0.75;
+  // a token matching the beginning of a term counts less than the whole term
+  private static final double PREFIX_WEIGHT = 0.6;
+  // a misspelled token counts less than a prefix, times the similarity of the term
+  private static final double FUZZY_WEIGHT = 0.5;
+
+  private final NavigableMap<String, Postings> postings = new ConcurrentSkipListMap<>();
+  private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+  private final TrigramIndex trigramIndex = new TrigramIndex();
+  private volatile long totalTerms;
+
+  int size() {
+    return documents.size();
+  }
+
+  /**
+   * add or replace a product.
+   *
+   * @param product SearchableProduct
+   */
+  void put(SearchableProduct product) {
+    remove(product.id());
+    String[] terms = new LinkedHashSet<>(TextNormalizer.tokenize(product.name()))
+        .toArray(String[]::new);
+    // document first: a search may find the id in a posting list before the document otherwise
+    documents.put(product.id(), new Document(terms, product.categoryId(), product.price()));
+    for (String term : terms) {
+      if (!postings.containsKey(term)) {
+        trigramIndex.add(term);
+      }
+      postings.compute(term, (key, ids) -> insert(ids, product.id()));
+    }
+    totalTerms += terms.length;
+  }
+
+  /**
+   * remove a product.
+   *
+   * @param productId long
+   */
+  void remove(long productId) {
+    Document document = documents.get(productId);
+    if (document == null) {
+      return;
+    }
+    for (String term : document.terms()) {
+      if (postings.computeIfPresent(term, (key, ids) -> delete(ids, productId)) == null) {
+        trigramIndex.remove(term);
+      }
+    }
+    documents.remove(productId);
+    totalTerms -= document.terms().length;
+  }
+
+  /**
+   * rank the products matching every token, a token matches a term equal to it or starting with
+   * it, and in fuzzy mode a term within a few edits of it.
+   *
+   * @param tokens        Collection<String> folded query tokens
+   * @param filter        Predicate<Document>, null for none
+   * @param maxExpansions int terms tried per token
+   * @param maxEdits      int edits allowed per token, 0 for no fuzzy matching
+   * @param offset        long first hit of the page
+   * @param limit         int hits of the page
+   * @return Hits of the page, best first (then lowest id), and the total number of hits
+   */
+  Hits search(Collection<String> tokens, Predicate<Document> filter, int maxExpansions,
+      int maxEdits, long offset, int limit) {
+    int documentCount = documents.size();
+    if (tokens.isEmpty() || documentCount == 0) {
+      return Hits.EMPTY;
+    }
+
+    Matches matches = null;
+    for (String token : tokens) {
+      List<Matches> expansions = match(token, documentCount, maxExpansions);
+      if (maxEdits > 0) {
+        expansions.addAll(matchFuzzy(token, documentCount, maxExpansions, maxEdits));
+      }
+      Matches tokenMatches = Matches.union(expansions);
+      matches = matches == null ? tokenMatches : matches.intersect(tokenMatches);
+      if (matches.size == 0) {
+        return Hits.EMPTY;
+      }
+    }
+
+    double averageLength = Math.max(1.0, (double) totalTerms / documentCount);
+    int total = 0;
+    for (int i = 0; i < matches.size; i++) {
+      Document document = documents.get(matches.ids[i]);
+      if (document == null || filter != null && !filter.test(document)) {
+        continue;
+      }
+      double length = document.terms().length / averageLength;
+      matches.ids[total] = matches.ids[i];
+      matches.weights[total] = matches.weights[i] * (K1 + 1) / (1 + K1 * (1 - B + B * length));
+      total++;
+    }
+    return new Hits(matches.top(total, offset, limit), total);
+  }
+
+  // exact term and terms starting with the token
+  private List<Matches> match(String token, int documentCount, int maxExpansions) {
+    List<Matches> expansions = new ArrayList<>();
+    // the token itself sorts first among the terms starting with it
+    for (Map.Entry<String, Postings> entry : postings.subMap(token, true,
+        token + Character.MAX_VALUE, false).entrySet()) {
+      if (expansions.size() == maxExpansions) {
+        break;
+      }
+      Postings ids = entry.getValue();
+      double idf = idf(ids.size(), documentCount);
+      expansions.add(Matches.of(ids, entry.getKey().equals(token) ? idf : idf * PREFIX_WEIGHT));
+    }
+    return expansions;
+  }
+
+  // terms a few edits away, ranked by similarity then by how common they are
+  private List<Matches> matchFuzzy(String token, int documentCount, int maxExpansions,
+      int maxEdits) {
+    // short words: one typo already makes them another word
+    int edits = Math.min(maxEdits, token.length() <= 2 ? 0 : token.length() <= 5 ? 1 : 2);
+    List<Matches> expansions = new ArrayList<>();
+    if (edits == 0) {
+      return expansions;
+    }
+
+    List<TrigramIndex.Match> candidates = new ArrayList<>();
+    List<Postings> candidatePostings = new ArrayList<>();
+    int maxFrequency = 1;
+    for (TrigramIndex.Match match : trigramIndex.search(token, edits, maxExpansions * 4)) {
+      Postings ids = postings.get(match.term());
+      if (ids != null && candidates.size() < maxExpansions) {
+        candidates.add(match);
+        candidatePostings.add(ids);
+        maxFrequency = Math.max(maxFrequency, ids.size());
+      }
+    }
+
+    // the most common close term is the likeliest intended word: its idf for every candidate, so
+    // a rare word one typo away does not outrank it
+    double idf = idf(maxFrequency, documentCount);
+    for (int i = 0; i < candidates.size(); i++) {
+      TrigramIndex.Match match = candidates.get(i);
+      int frequency = candidatePostings.get(i).size();
+      double similarity = 1 - (double) match.distance()
+          / Math.max(token.length(), match.term().length());
+      double commonness = 0.9 + 0.1 * Math.log1p(frequency) / Math.log1p(maxFrequency);
+      expansions.add(Matches.of(candidatePostings.get(i),
+          idf * similarity * commonness * FUZZY_WEIGHT));
+    }
+    return expansions;
+  }
+
+  private static double idf(int documentFrequency, int documentCount) {
+    return Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+  }
+
+  private static Postings insert(Postings postings, long productId) {
+    if (postings == null) {
+      long[] ids = new long[4];
+      ids[0] = productId;
+      return new Postings(ids, 1);
+    }
+    long[] ids = postings.ids();
+    int size = postings.size();
+    int position = Arrays.binarySearch(ids, 0, size, productId);
+    if (position >= 0) {
+      return postings;
+    }
+    position = -position - 1;
+    if (position == size && size < ids.length) {
+      // appending (ids come in order on reload): the slot is past what any search reads
+      ids[size] = productId;
+      return new Postings(ids, size + 1);
+    }
+    long[] inserted = new long[size == ids.length ? size * 2 : ids.length];
+    System.arraycopy(ids, 0, inserted, 0, position);
+    inserted[position] = productId;
+    System.arraycopy(ids, position, inserted, position + 1, size - position);
+    return new Postings(inserted, size + 1);
+  }
+
+  private static Postings delete(Postings postings, long productId) {
+    long[] ids = postings.ids();
+    int size = postings.size();
+    int position = Arrays.binarySearch(ids, 0, size, productId);
+    if (position < 0) {
+      return postings;
+    }
+    if (size == 1) {
+      // drop the term
+      return null;
+    }
+    long[] deleted = new long[size - 1];
+    System.arraycopy(ids, 0, deleted, 0, position);
+    System.arraycopy(ids, position + 1, deleted, position, size - position - 1);
+    return new Postings(deleted, size - 1);
+  }
+
+  /**
+   * sorted product ids of a term, the slots of ids past size are spare capacity.
+   *
+   * @param ids  product ids
+   * @param size number of ids in use
+   */
+  private record Postings(long[] ids, int size) {
+
+  }
+
+  /**
+   * product ids of a page and the number of products matching.
+   *
+   * @param ids   product ids, best first
+   * @param total number of matching products
+   */
+  record Hits(long[] ids, int total) {
+
+    static final Hits EMPTY = new Hits(new long[0], 0);
+  }
+
+  // products matching a token (or the tokens so far), sorted by id, with their score
+  private static final class Matches {
+
+    private final long[] ids;
+    private final double[] weights;
+    private int size;
+
+    private Matches(int capacity) {
+      ids = new long[capacity];
+      weights = new double[capacity];
+    }
+
+    private static Matches of(Postings postings, double weight) {
+      Matches matches = new Matches(postings.size());
+      System.arraycopy(postings.ids(), 0, matches.ids, 0, postings.size());
+      Arrays.fill(matches.weights, weight);
+      matches.size = postings.size();
+      return matches;
+    }
+
+    // union of the expansions of a token, a product keeps its best weight; merged pairwise
+    private static Matches union(List<Matches> expansions) {
+      if (expansions.isEmpty()) {
+        return new Matches(0);
+      }
+      List<Matches> level = expansions;
+      while (level.size() > 1) {
+        List<Matches> next = new ArrayList<>((level.size() + 1) / 2);
+        for (int i = 0; i + 1 < level.size(); i += 2) {
+          next.add(level.get(i).merge(level.get(i + 1)));
+        }
+        if (level.size() % 2 == 1) {
+          next.add(level.get(level.size() - 1));
+        }
+        level = next;
+      }
+      return level.get(0);
+    }
+
+    private Matches merge(Matches other) {
+      Matches merged = new Matches(size + other.size);
+      int i = 0;
+      int j = 0;
+      while (i < size || j < other.size) {
+        int n = merged.size++;
+        if (j == other.size || i < size && ids[i] < other.ids[j]) {
+          merged.ids[n] = ids[i];
+          merged.weights[n] = weights[i++];
+        } else if (i == size || other.ids[j] < ids[i]) {
+          merged.ids[n] = other.ids[j];
+          merged.weights[n] = other.weights[j++];
+        } else {
+          merged.ids[n] = ids[i];
+          merged.weights[n] = Math.max(weights[i++], other.weights[j++]);
+        }
+      }
+      return merged;
+    }
+
+    // products matching both, the weights add up
+    private Matches intersect(Matches other) {
+      Matches common = new Matches(Math.min(size, other.size));
+      int i = 0;
+      int j = 0;
+      while (i < size && j < other.size) {
+        if (ids[i] < other.ids[j]) {
+          i++;
+        } else if (other.ids[j] < ids[i]) {
+          j++;
+        } else {
+          common.ids[common.size] = ids[i];
+          common.weights[common.size++] = weights[i++] + other.weights[j++];
+        }
+      }
+      return common;
+    }
+
+    // hits [offset, offset + limit) of the first count entries ranked by weight, then id
+    private long[] top(int count, long offset, int limit) {
+      if (offset >= count) {
+        return new long[0];
+      }
+      int wanted = (int) Math.min(count, offset + limit);
+      Comparator<Integer> worstFirst = (a, b) -> weights[a] != weights[b]
+          ? Double.compare(weights[a], weights[b]) : Long.compare(ids[b], ids[a]);
+      // keep the best wanted entries only, the worst of them on top
+      PriorityQueue<Integer> best = new PriorityQueue<>(wanted, worstFirst);
+      for (int i = 0; i < count; i++) {
+        if (best.size() < wanted) {
+          best.add(i);
+        } else if (worstFirst.compare(i, best.peek()) > 0) {
+          best.poll();
+          best.add(i);
+        }
+      }
+      long[] page = new long[(int) (wanted - offset)];
+      for (int n = wanted - 1; n >= 0; n--) {
+        int index = best.poll();
+        if (n >= offset) {
+          page[(int) (n - offset)] = ids[index];
+        }
+      }
+      return page;
+    }
+  }
+
+  /**
+   * what the index keeps of a product, besides its posting lists.
+   *
+   * @param terms      distinct terms of the name
+   * @param categoryId id of category, null if none
+   * @param price      price of product
+   */
+  record Document(String[] terms, Long categoryId, BigDecimal price) {
+
+  }
+}
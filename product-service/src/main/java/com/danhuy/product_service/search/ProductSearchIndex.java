@@ -0,0 +1,181 @@
+package com.danhuy.product_service.search;
+
+import com.danhuy.product_service.dto.SearchableProduct;
+import com.danhuy.product_service.repository.ProductRepository;
+import com.danhuy.product_service.search.InvertedIndex.Document;
+import com.danhuy.product_service.search.InvertedIndex.Hits;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory full-text search over the names of the active products, so name searches do not scan
+ * the products table. Loaded at startup, kept current by the product events of every instance
+ * (see {@link com.danhuy.product_service.event.consumer.ProductCatalogConsumer}) and reloaded from
+ * the database periodically; the reloaded index replaces the current one at once.
+ *
+ * <p>Searches take no lock. Writes (events and reloads) are serialized on this object.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSearchIndex {
+
+  private final ProductRepository productRepository;
+
+  @Value("${product.search.enabled:true}")
+  private boolean enabled;
+
+  @Value("${product.search.page-size:5000}")
+  private int pageSize;
+
+  @Value("${product.search.max-expansions:64}")
+  private int maxExpansions;
+
+  @Value("${product.search.fuzzy.max-edits:2}")
+  private int maxFuzzyEdits;
+
+  private volatile InvertedIndex index;
+  // index being reloaded, events go to both indexes meanwhile
+  private InvertedIndex building;
+  // products changed by events during the reload, newer than the rows being read
+  private Set<Long> changedWhileBuilding;
+
+  /**
+   * the index answers only once it has been loaded.
+   *
+   * @return boolean
+   */
+  public boolean isReady() {
+    return enabled && index != null;
+  }
+
+  /**
+   * search active products by name, best match first (then lowest id). Every word of the text must
+   * match the beginning of a word of the name, accents and case are ignored. In fuzzy mode a word
+   * also matches the words a few typos away ("bananna" finds "banana"), ranked by similarity.
+   *
+   * @param text       String
+   * @param categoryId Long, null for any
+   * @param minPrice   BigDecimal, null for no minimum
+   * @param maxPrice   BigDecimal, null for no maximum
+   * @param fuzzy      boolean typo-tolerant matching
+   * @param pageable   Pageable, its sort is not used
+   * @return Page<Long> product ids
+   */
+  public Page<Long> search(String text, Long categoryId, BigDecimal minPrice,
+      BigDecimal maxPrice, boolean fuzzy, Pageable pageable) {
+    InvertedIndex current = index;
+    if (current == null) {
+      return Page.empty(pageable);
+    }
+
+    Predicate<Document> filter = categoryId == null && minPrice == null && maxPrice == null
+        ? null
+        : document -> (categoryId == null || categoryId.equals(document.categoryId()))
+            && (minPrice == null || document.price().compareTo(minPrice) >= 0)
+            && (maxPrice == null || document.price().compareTo(maxPrice) <= 0);
+    Hits hits = current.search(new LinkedHashSet<>(TextNormalizer.tokenize(text)), filter,
+        maxExpansions, fuzzy ? maxFuzzyEdits : 0, pageable.isPaged() ? pageable.getOffset() : 0,
+        pageable.isPaged() ? pageable.getPageSize() : Integer.MAX_VALUE);
+
+    List<Long> productIds = Arrays.stream(hits.ids()).boxed().toList();
+    return new PageImpl<>(productIds, pageable, hits.total());
+  }
+
+  /**
+   * add or replace a product.
+   *
+   * @param product SearchableProduct
+   */
+  public synchronized void put(SearchableProduct product) {
+    if (!enabled) {
+      return;
+    }
+    if (index != null) {
+      index.put(product);
+    }
+    if (building != null) {
+      building.put(product);
+      changedWhileBuilding.add(product.id());
+    }
+  }
+
+  /**
+   * remove a product (deleted).
+   *
+   * @param productId long
+   */
+  public synchronized void remove(long productId) {
+    if (!enabled) {
+      return;
+    }
+    if (index != null) {
+      index.remove(productId);
+    }
+    if (building != null) {
+      building.remove(productId);
+      changedWhileBuilding.add(productId);
+    }
+  }
+
+  /**
+   * (re)load the whole index from the products table (keyset pages by id) and swap it in. Runs at
+   * startup, then every refresh interval.
+   */
+  @Scheduled(fixedDelayString = "${product.search.refresh-interval-ms:600000}")
+  public void reload() {
+    if (!enabled) {
+      return;
+    }
+    synchronized (this) {
+      building = new InvertedIndex();
+      changedWhileBuilding = new HashSet<>();
+    }
+
+    try {
+      long lastProductId = 0L;
+      List<SearchableProduct> page;
+      do {
+        page = productRepository.findSearchableAfter(lastProductId, PageRequest.ofSize(pageSize));
+        synchronized (this) {
+          for (SearchableProduct product : page) {
+            if (!changedWhileBuilding.contains(product.id())) {
+              building.put(product);
+            }
+          }
+        }
+        if (!page.isEmpty()) {
+          lastProductId = page.get(page.size() - 1).id();
+        }
+      } while (page.size() == pageSize);
+
+      synchronized (this) {
+        index = building;
+        building = null;
+        changedWhileBuilding = null;
+        log.info("Product search index loaded with {} products", index.size());
+      }
+    } catch (Exception e) {
+      synchronized (this) {
+        building = null;
+        changedWhileBuilding = null;
+      }
+      // keep serving the current index, events keep it current
+      log.error("Error loading product search index", e);
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package com.danhuy.product_service.search;
+
+import com.danhuy.product_service.dto.ProductSuggestion;
+import com.danhuy.product_service.dto.SearchableProduct;
+import com.danhuy.product_service.repository.ProductRepository;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Type-ahead completions of product names from memory, most popular first (units sold, see
+ * {@link com.danhuy.product_service.entity.Product#getPopularity()}). A name is found from the
+ * beginning of any of its words: "vina" completes "Sữa tươi Vinamilk".
+ *
+ * <p>Names follow the product events like {@link ProductSearchIndex}; popularity is refreshed by
+ * the periodic reload. Lookups take no lock, writes are serialized on this object.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSuggester {
+
+  private final ProductRepository productRepository;
+
+  @Value("${product.suggest.enabled:true}")
+  private boolean enabled;
+
+  @Value("${product.suggest.top-k:10}")
+  private int topK;
+
+  // words of a name that may start a completion
+  @Value("${product.suggest.max-words:8}")
+  private int maxWords;
+
+  @Value("${product.search.page-size:5000}")
+  private int pageSize;
+
+  private volatile Catalog catalog;
+  // catalog being reloaded, events go to both catalogs meanwhile
+  private Catalog building;
+  private Set<Long> changedWhileBuilding;
+
+  /**
+   * the suggester answers only once it has been loaded.
+   *
+   * @return boolean
+   */
+  public boolean isReady() {
+    return enabled && catalog != null;
+  }
+
+  public int getTopK() {
+    return topK;
+  }
+
+  /**
+   * get the most popular products whose name has a word starting with the text.
+   *
+   * @param text  String
+   * @param limit int, at most top-k
+   * @return List<ProductSuggestion>
+   */
+  public List<ProductSuggestion> suggest(String text, int limit) {
+    Catalog current = catalog;
+    String prefix = String.join(" ", TextNormalizer.tokenize(text));
+    if (current == null || prefix.isEmpty()) {
+      return List.of();
+    }
+
+    long[] productIds = current.trie.top(prefix);
+    List<ProductSuggestion> suggestions = new ArrayList<>(Math.min(limit, productIds.length));
+    for (int i = 0; i < productIds.length && suggestions.size() < limit; i++) {
+      Entry entry = current.entries.get(productIds[i]);
+      if (entry != null) {
+        suggestions.add(new ProductSuggestion(productIds[i], entry.name()));
+      }
+    }
+    return suggestions;
+  }
+
+  /**
+   * add or replace a product.
+   *
+   * @param product SearchableProduct, popularity null to keep the current one
+   */
+  public synchronized void put(SearchableProduct product) {
+    if (!enabled) {
+      return;
+    }
+    if (catalog != null) {
+      catalog.put(product);
+    }
+    if (building != null) {
+      building.put(product);
+      changedWhileBuilding.add(product.id());
+    }
+  }
+
+  /**
+   * remove a product (deleted).
+   *
+   * @param productId long
+   */
+  public synchronized void remove(long productId) {
+    if (!enabled) {
+      return;
+    }
+    if (catalog != null) {
+      catalog.remove(productId);
+    }
+    if (building != null) {
+      building.remove(productId);
+      changedWhileBuilding.add(productId);
+    }
+  }
+
+  /**
+   * (re)load every active product with its popularity (keyset pages by id) and swap the new trie
+   * in. Runs at startup, then every refresh interval.
+   */
+  @Scheduled(fixedDelayString = "${product.suggest.refresh-interval-ms:600000}")
+  public void reload() {
+    if (!enabled) {
+      return;
+    }
+    synchronized (this) {
+      building = new Catalog();
+      changedWhileBuilding = new HashSet<>();
+    }
+
+    try {
+      long lastProductId = 0L;
+      List<SearchableProduct> page;
+      do {
+        page = productRepository.findSearchableAfter(lastProductId, PageRequest.ofSize(pageSize));
+        synchronized (this) {
+          for (SearchableProduct product : page) {
+            if (!changedWhileBuilding.contains(product.id())) {
+              building.put(product);
+            }
+          }
+        }
+        if (!page.isEmpty()) {
+          lastProductId = page.get(page.size() - 1).id();
+        }
+      } while (page.size() == pageSize);
+
+      synchronized (this) {
+        catalog = building;
+        building = null;
+        changedWhileBuilding = null;
+        log.info("Product suggester loaded with {} products", catalog.entries.size());
+      }
+    } catch (Exception e) {
+      synchronized (this) {
+        building = null;
+        changedWhileBuilding = null;
+      }
+      // keep serving the current trie, events keep it current
+      log.error("Error loading product suggester", e);
+    }
+  }
+
+  // trie and the products it holds, swapped as a whole on reload
+  private final class Catalog {
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final SuggestionTrie trie = new SuggestionTrie(topK, productId -> {
+      Entry entry = entries.get(productId);
+      return entry == null ? 0 : entry.weight();
+    });
+
+    private void put(SearchableProduct product) {
+      Entry previous = entries.get(product.id());
+      long weight = product.popularity() != null ? product.popularity()
+          : previous != null ? previous.weight() : 0;
+      Set<String> keys = keysOf(product.name());
+
+      entries.put(product.id(), new Entry(product.name(), keys, weight));
+      if (previous != null) {
+        for (String key : previous.keys()) {
+          if (!keys.contains(key)) {
+            trie.delete(key, product.id());
+          }
+        }
+      }
+      for (String key : keys) {
+        if (previous != null && previous.keys().contains(key)) {
+          if (previous.weight() != weight) {
+            trie.refresh(key);
+          }
+        } else {
+          trie.insert(key, product.id());
+        }
+      }
+    }
+
+    private void remove(long productId) {
+      Entry previous = entries.get(productId);
+      if (previous == null) {
+        return;
+      }
+      previous.keys().forEach(key -> trie.delete(key, productId));
+      entries.remove(productId);
+    }
+
+    // "sua tuoi vinamilk", "tuoi vinamilk", "vinamilk"
+    private Set<String> keysOf(String name) {
+      List<String> tokens = TextNormalizer.tokenize(name);
+      Set<String> keys = new LinkedHashSet<>();
+      for (int i = 0; i < tokens.size() && i < maxWords; i++) {
+        keys.add(String.join(" ", tokens.subList(i, tokens.size())));
+      }
+      return keys;
+    }
+  }
+
+  /**
+   * a product of the trie.
+   *
+   * @param name   display name
+   * @param keys   folded keys of the name in the trie
+   * @param weight popularity
+   */
+  private record Entry(String name, Set<String> keys, long weight) {
+
+  }
+}
@@ -0,0 +1,271 @@
+package com.danhuy.product_service.search;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Radix trie of folded product names: an edge holds a whole run of characters, children are kept
+ * in a sorted array, and every node caches the ids of the best products of its subtree, so top-k
+ * completions of a prefix are one walk down the trie.
+ *
+ * <p>Nodes are never modified in a way a reader could see half done (arrays are replaced, a split
+ * node is published once complete), so lookups need no lock; writes must be serialized by the
+ * caller.
+ */
+class SuggestionTrie {
+
+  private static final long[] NONE = new long[0];
+  private static final Node[] LEAF = new Node[0];
+
+  private final int topK;
+  // weight of a product, higher first
+  private final LongUnaryOperator weights;
+  private final Node root = new Node("");
+
+  SuggestionTrie(int topK, LongUnaryOperator weights) {
+    this.topK = topK;
+    this.weights = weights;
+  }
+
+  /**
+   * get the best products whose key starts with the prefix.
+   *
+   * @param prefix String folded prefix
+   * @return long[] product ids, best first, at most top-k
+   */
+  long[] top(String prefix) {
+    Node node = root;
+    int i = 0;
+    while (i < prefix.length()) {
+      Node child = child(node, prefix.charAt(i));
+      if (child == null) {
+        return NONE;
+      }
+      int common = commonLength(child.label, prefix, i);
+      if (common < child.label.length() && i + common < prefix.length()) {
+        // the prefix leaves the edge before its end
+        return NONE;
+      }
+      node = child;
+      i += common;
+    }
+    return node.top;
+  }
+
+  /**
+   * add a key of a product.
+   *
+   * @param key       String folded key
+   * @param productId long
+   */
+  void insert(String key, long productId) {
+    Deque<Node> path = new ArrayDeque<>();
+    Node node = root;
+    int i = 0;
+    while (true) {
+      path.push(node);
+      if (i == key.length()) {
+        node.ids = add(node.ids, productId);
+        break;
+      }
+      int position = childPosition(node, key.charAt(i));
+      if (position < 0) {
+        Node leaf = new Node(key.substring(i));
+        leaf.ids = new long[]{productId};
+        leaf.top = leaf.ids;
+        node.children = insertChild(node.children, -position - 1, leaf);
+        break;
+      }
+      Node child = node.children[position];
+      int common = commonLength(child.label, key, i);
+      if (common < child.label.length()) {
+        // split the edge: node -> middle -> rest of the child
+        Node rest = child.relabel(child.label.substring(common));
+        Node middle = new Node(child.label.substring(0, common));
+        middle.children = new Node[]{rest};
+        middle.top = rest.top;
+        Node[] children = node.children.clone();
+        children[position] = middle;
+        node.children = children;
+        child = middle;
+      }
+      node = child;
+      i += common;
+    }
+    path.forEach(this::recompute);
+  }
+
+  /**
+   * remove a key of a product, nodes left empty are pruned and single-child chains merged back.
+   *
+   * @param key       String folded key
+   * @param productId long
+   */
+  void delete(String key, long productId) {
+    Deque<Node> path = find(key);
+    if (path == null) {
+      return;
+    }
+    path.peek().ids = remove(path.peek().ids, productId);
+    compact(path);
+  }
+
+  /**
+   * re-rank the nodes on the path of a key after the weight of one of its products changed.
+   *
+   * @param key String folded key
+   */
+  void refresh(String key) {
+    Deque<Node> path = find(key);
+    if (path != null) {
+      path.forEach(this::recompute);
+    }
+  }
+
+  // nodes from the root to the node of the key (last pushed first), null if the key is absent
+  private Deque<Node> find(String key) {
+    Deque<Node> path = new ArrayDeque<>();
+    Node node = root;
+    int i = 0;
+    path.push(node);
+    while (i < key.length()) {
+      Node child = child(node, key.charAt(i));
+      if (child == null || !key.startsWith(child.label, i)) {
+        return null;
+      }
+      node = child;
+      i += child.label.length();
+      path.push(node);
+    }
+    return path;
+  }
+
+  private void compact(Deque<Node> path) {
+    Node node = path.pop();
+    while (!path.isEmpty()) {
+      Node parent = path.pop();
+      recompute(node);
+      int position = childPosition(parent, node.label.charAt(0));
+      if (node.ids.length == 0 && node.children.length == 0) {
+        parent.children = removeChild(parent.children, position);
+      } else if (node.ids.length == 0 && node.children.length == 1) {
+        Node[] children = parent.children.clone();
+        children[position] = node.children[0].relabel(node.label + node.children[0].label);
+        parent.children = children;
+      }
+      node = parent;
+    }
+    recompute(node);
+  }
+
+  // best top-k of the products ending here and of the children
+  private void recompute(Node node) {
+    long[] candidates = node.ids;
+    for (Node child : node.children) {
+      long[] merged = new long[candidates.length + child.top.length];
+      System.arraycopy(candidates, 0, merged, 0, candidates.length);
+      System.arraycopy(child.top, 0, merged, candidates.length, child.top.length);
+      candidates = merged;
+    }
+    node.top = Arrays.stream(candidates)
+        .distinct()
+        .boxed()
+        .sorted((a, b) -> {
+          int byWeight = Long.compare(weights.applyAsLong(b), weights.applyAsLong(a));
+          return byWeight != 0 ? byWeight : Long.compare(a, b);
+        })
+        .limit(topK)
+        .mapToLong(Long::longValue)
+        .toArray();
+  }
+
+  private static Node child(Node node, char first) {
+    int position = childPosition(node, first);
+    return position < 0 ? null : node.children[position];
+  }
+
+  // binary search on the first character of the child labels
+  private static int childPosition(Node node, char first) {
+    Node[] children = node.children;
+    int low = 0;
+    int high = children.length - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      char c = children[middle].label.charAt(0);
+      if (c < first) {
+        low = middle + 1;
+      } else if (c > first) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private static int commonLength(String label, String key, int offset) {
+    int length = Math.min(label.length(), key.length() - offset);
+    int i = 0;
+    while (i < length && label.charAt(i) == key.charAt(offset + i)) {
+      i++;
+    }
+    return i;
+  }
+
+  private static Node[] insertChild(Node[] children, int position, Node child) {
+    Node[] inserted = new Node[children.length + 1];
+    System.arraycopy(children, 0, inserted, 0, position);
+    inserted[position] = child;
+    System.arraycopy(children, position, inserted, position + 1, children.length - position);
+    return inserted;
+  }
+
+  private static Node[] removeChild(Node[] children, int position) {
+    if (children.length == 1) {
+      return LEAF;
+    }
+    Node[] removed = new Node[children.length - 1];
+    System.arraycopy(children, 0, removed, 0, position);
+    System.arraycopy(children, position + 1, removed, position, children.length - position - 1);
+    return removed;
+  }
+
+  private static long[] add(long[] ids, long productId) {
+    for (long id : ids) {
+      if (id == productId) {
+        return ids;
+      }
+    }
+    long[] added = Arrays.copyOf(ids, ids.length + 1);
+    added[ids.length] = productId;
+    return added;
+  }
+
+  private static long[] remove(long[] ids, long productId) {
+    return Arrays.stream(ids).filter(id -> id != productId).toArray();
+  }
+
+  private static final class Node {
+
+    private final String label;
+    private volatile Node[] children = LEAF;
+    // products whose key ends at this node
+    private volatile long[] ids = NONE;
+    // best products of the subtree
+    private volatile long[] top = NONE;
+
+    private Node(String label) {
+      this.label = label;
+    }
+
+    private Node relabel(String newLabel) {
+      Node node = new Node(newLabel);
+      node.children = children;
+      node.ids = ids;
+      node.top = top;
+      return node;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.danhuy.product_service.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Text folding shared by the search structures: lowercase, no accent ("Bánh mì" and "banh mi" are
+ * the same), split on everything that is not a letter or a digit.
+ */
+public final class TextNormalizer {
+
+  private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  private TextNormalizer() {
+  }
+
+  /**
+   * fold a text: lowercase and accents removed.
+   *
+   * @param text String
+   * @return String folded text, empty if text is null
+   */
+  public static String fold(String text) {
+    if (text == null) {
+      return "";
+    }
+    String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+    StringBuilder folded = new StringBuilder(decomposed.length());
+    for (int i = 0; i < decomposed.length(); i++) {
+      char c = decomposed.charAt(i);
+      if (Character.getType(c) == Character.NON_SPACING_MARK) {
+        continue;
+      }
+      // đ / Đ have no decomposition
+      folded.append(c == 'đ' || c == 'Đ' ? 'd' : Character.toLowerCase(c));
+    }
+    return folded.toString();
+  }
+
+  /**
+   * fold a text and split it into tokens.
+   *
+   * @param text String
+   * @return List<String> tokens in the order of the text
+   */
+  public static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<>();
+    for (String token : SEPARATOR.split(fold(text))) {
+      if (!token.isEmpty()) {
+        tokens.add(token);
+      }
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,154 @@
+package com.danhuy.product_service.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trigram -> terms of the vocabulary, to find the terms close to a misspelled word ("bananna",
+ * "yoghurt"). Candidates must share enough trigrams with the word and have a close length, then
+ * the edit distance (with transpositions) is computed with an early exit past the bound.
+ *
+ * <p>Term arrays are replaced, never modified, so lookups need no lock; writes must be serialized
+ * by the caller.
+ */
+class TrigramIndex {
+
+  private static final String[] NO_TERMS = new String[0];
+
+  private final Map<String, String[]> terms = new ConcurrentHashMap<>();
+
+  /**
+   * add a new term of the vocabulary.
+   *
+   * @param term String
+   */
+  void add(String term) {
+    for (String trigram : trigramsOf(term)) {
+      terms.merge(trigram, new String[]{term}, (current, added) -> {
+        String[] merged = Arrays.copyOf(current, current.length + 1);
+        merged[current.length] = term;
+        return merged;
+      });
+    }
+  }
+
+  /**
+   * remove a term no product uses anymore.
+   *
+   * @param term String
+   */
+  void remove(String term) {
+    for (String trigram : trigramsOf(term)) {
+      terms.computeIfPresent(trigram, (key, current) -> {
+        String[] removed = Arrays.stream(current)
+            .filter(existing -> !existing.equals(term))
+            .toArray(String[]::new);
+        return removed.length == 0 ? null : removed;
+      });
+    }
+  }
+
+  /**
+   * find the terms within maxEdits of a word, closest first.
+   *
+   * @param word          String folded word
+   * @param maxEdits      int
+   * @param maxCandidates int terms verified at most, the ones sharing the most trigrams
+   * @return List<Match>
+   */
+  List<Match> search(String word, int maxEdits, int maxCandidates) {
+    List<String> trigrams = trigramsOf(word);
+    Map<String, Integer> shared = new HashMap<>();
+    for (String trigram : trigrams) {
+      for (String term : terms.getOrDefault(trigram, NO_TERMS)) {
+        if (Math.abs(term.length() - word.length()) <= maxEdits) {
+          shared.merge(term, 1, Integer::sum);
+        }
+      }
+    }
+
+    // one edit changes at most 3 trigrams
+    int minShared = Math.max(1, trigrams.size() - 3 * maxEdits);
+    List<Match> matches = new ArrayList<>();
+    shared.entrySet().stream()
+        .filter(entry -> entry.getValue() >= minShared)
+        .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+        .limit(maxCandidates)
+        .forEach(entry -> {
+          int distance = distance(word, entry.getKey(), maxEdits);
+          if (distance <= maxEdits) {
+            matches.add(new Match(entry.getKey(), distance));
+          }
+        });
+    matches.sort(Comparator.comparingInt(Match::distance).thenComparing(Match::term));
+    return matches;
+  }
+
+  // "banh" -> "$$b", "$ba", "ban", "anh", "nh$"
+  private static List<String> trigramsOf(String term) {
+    String padded = "$$" + term + "$";
+    List<String> trigrams = new ArrayList<>(padded.length() - 2);
+    for (int i = 0; i + 3 <= padded.length(); i++) {
+      trigrams.add(padded.substring(i, i + 3));
+    }
+    return trigrams;
+  }
+
+  /**
+   * edit distance with adjacent transpositions (optimal string alignment), stops as soon as it
+   * cannot be within the bound.
+   *
+   * @param a   String
+   * @param b   String
+   * @param max int bound
+   * @return int distance, max + 1 if over the bound
+   */
+  static int distance(String a, String b, int max) {
+    if (Math.abs(a.length() - b.length()) > max) {
+      return max + 1;
+    }
+    int[] previous2 = new int[b.length() + 1];
+    int[] previous = new int[b.length() + 1];
+    int[] current = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      current[0] = i;
+      int rowMin = i;
+      for (int j = 1; j <= b.length(); j++) {
+        int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+        if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2)
+            && a.charAt(i - 2) == b.charAt(j - 1)) {
+          value = Math.min(value, previous2[j - 2] + 1);
+        }
+        current[j] = value;
+        rowMin = Math.min(rowMin, value);
+      }
+      if (rowMin > max) {
+        return max + 1;
+      }
+      int[] recycled = previous2;
+      previous2 = previous;
+      previous = current;
+      current = recycled;
+    }
+    return Math.min(previous[b.length()], max + 1);
+  }
+
+  /**
+   * a term close to the searched word.
+   *
+   * @param term     term of the vocabulary
+   * @param distance edit distance to the word
+   */
+  record Match(String term, int distance) {
+
+  }
+}
@@ -1,8 +1,12 @@
 package com.danhuy.product_service.service;
 
+import com.danhuy.common_service.event.inventory.StockChangedEvent;
+import com.danhuy.product_service.dto.ProductCursorPage;
 import com.danhuy.product_service.dto.ProductRequest;
 import com.danhuy.product_service.dto.ProductResponse;
+import com.danhuy.product_service.dto.ProductSuggestion;
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -24,15 +28,24 @@ public interface ProductService {
   // Lấy tất cả sản phẩm (có phân trang)
   Page<ProductResponse> getAllProducts(Pageable pageable);
 
+  // Lấy sản phẩm đang hoạt động theo con trỏ (keyset, không đếm tổng)
+  ProductCursorPage scrollProducts(String cursor, int size, String sort);
+
   // Tìm kiếm sản phẩm theo tên
-  List<ProductResponse> searchProductsByName(String name);
+  List<ProductResponse> searchProductsByName(String name, boolean fuzzy);
+
+  // Gợi ý tên sản phẩm theo tiền tố (ô tìm kiếm)
+  List<ProductSuggestion> suggestProducts(String text, int limit);
 
   // Lấy sản phẩm theo danh mục
   List<ProductResponse> getProductsByCategory(Long categoryId);
 
+  // Cập nhật tồn kho hàng loạt (từ inventory-service)
+  int updateStocks(Collection<StockChangedEvent> events);
+
   // Tìm kiếm sản phẩm nâng cao
   Page<ProductResponse> searchProducts(String name, Long categoryId,
-      BigDecimal minPrice, BigDecimal maxPrice,
+      BigDecimal minPrice, BigDecimal maxPrice, boolean fuzzy,
       Pageable pageable);
 
 }
@@ -1,32 +1,61 @@
 package com.danhuy.product_service.service;
 
 import com.danhuy.common_service.enums.MessageEnum;
+import com.danhuy.common_service.event.inventory.StockChangedEvent;
 import com.danhuy.common_service.exception.ex.AppException;
 import com.danhuy.product_service.cache.ProductCacheService;
+import com.danhuy.product_service.cache.ProductIdFilter;
+import com.danhuy.product_service.dto.ProductCursor;
+import com.danhuy.product_service.dto.ProductCursor.SortKey;
+import com.danhuy.product_service.dto.ProductCursorPage;
 import com.danhuy.product_service.dto.ProductRequest;
 import com.danhuy.product_service.dto.ProductResponse;
+import com.danhuy.product_service.dto.ProductSuggestion;
 import com.danhuy.product_service.entity.Category;
 import com.danhuy.product_service.entity.Product;
 import com.danhuy.product_service.event.producer.ProductEventProducer;
 import com.danhuy.product_service.repository.ProductRepository;
+import com.danhuy.product_service.search.ProductSearchIndex;
+import com.danhuy.product_service.search.ProductSuggester;
 import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ProductServiceImpl implements ProductService {
 
+  private static final String UPDATE_STOCK = "UPDATE products SET stock = ?, stock_version = ?, "
+      + "updated_at = ? WHERE id = ? AND stock_version < ?";
+
   private final ProductRepository productRepository;
   private final ProductCacheService productCacheService;
+  private final ProductIdFilter productIdFilter;
   private final ProductEventProducer productEventProducer;
+  private final ProductSearchIndex productSearchIndex;
+  private final ProductSuggester productSuggester;
+  private final JdbcTemplate jdbcTemplate;
+
+  @Value("${product.search.max-results:100}")
+  private int searchMaxResults;
 
   /**
    * Create a new product - send product created event - cache the product
@@ -53,7 +82,8 @@ public class ProductServiceImpl implements ProductService {
 
     ProductResponse response = mapToDto(savedProduct);
 
-    // Cache the product
+    // Cache the product (replaces a negative entry of the id) and let its id through the filter
+    productIdFilter.add(savedProduct.getId());
     productCacheService.cacheProduct(response);
 
     return response;
@@ -91,11 +121,10 @@ public class ProductServiceImpl implements ProductService {
     // Update product entity
     Product updatedProduct = productRepository.save(product);
 
-    // Publish product updated event
-    productEventProducer.publishProductUpdatedEvent(updatedProduct);
-
-    // Evict product from the cache
+    // Evict product from the cache, then publish product updated event: both run after commit in
+    // this order, a node reloading on the event must not find the old entry in Redis
     productCacheService.evictProductCache(id);
+    productEventProducer.publishProductUpdatedEvent(updatedProduct);
 
     return mapToDto(updatedProduct);
   }
@@ -117,44 +146,39 @@ public class ProductServiceImpl implements ProductService {
     product.setActive(false);
     Product deletedProduct = productRepository.save(product);
 
-    // Publish product deleted event
-    productEventProducer.publishProductDeletedEvent(deletedProduct);
-
-    // Evict all the product from the cache
+    // Evict all the product from the cache (new generations), then publish product deleted event
     productCacheService.evictAllProductCaches();
+    productEventProducer.publishProductDeletedEvent(deletedProduct);
   }
 
   /**
-   * Get a product by id - try to get from the cache first - if not in cache, get from the DB
+   * Get a product by id - try to get from the cache first - if not in cache, get from the DB once
+   * for all the concurrent requests of the product (then cache it). No transaction here: requests
+   * waiting for the loader must not hold a DB connection
    *
    * @param id Long
    * @return ProductResponse
    */
   @Override
-  @Transactional(readOnly = true)
   public ProductResponse getProductById(Long id) {
     log.info("Fetching product with id: {}", id);
 
-    // Try to get from the cache first
-    ProductResponse cachedProduct = productCacheService.getProductFromCache(id);
-
-    if (cachedProduct != null) {
-      log.info("Product found in cache: {}", id);
-      return cachedProduct;
-    }
-
-    // If not in cache, get from the repository
-    Product product = productRepository.findById(id)
-        .orElseThrow(() -> new AppException(MessageEnum.PRODUCT_NOT_EXISTED));
-
-    if (!product.isActive()) {
+    // An id that never existed stops here, before Redis and the DB
+    if (!productIdFilter.mightExist(id)) {
       throw new AppException(MessageEnum.PRODUCT_NOT_EXISTED);
     }
 
-    ProductResponse response = mapToDto(product);
+    ProductResponse response = productCacheService.getOrLoadProduct(id, () -> {
+      // If not in cache, get from the repository
+      Product product = productRepository.findById(id)
+          .orElseThrow(() -> new AppException(MessageEnum.PRODUCT_NOT_EXISTED));
 
-    // Cache the product
-    productCacheService.cacheProduct(response);
+      if (!product.isActive()) {
+        throw new AppException(MessageEnum.PRODUCT_NOT_EXISTED);
+      }
+
+      return mapToDto(product);
+    });
 
 // code to test case timeout with circuitbreaker
 //    try {
@@ -166,7 +190,7 @@ public class ProductServiceImpl implements ProductService {
   }
 
   /**
-   * Get all products - try to get from the cache first - if not in cache, get from the DB
+   * Get all active products by page number (with the total count)
    *
    * @param pageable Pageable
    * @return Page<ProductResponse>
@@ -176,46 +200,103 @@ public class ProductServiceImpl implements ProductService {
   public Page<ProductResponse> getAllProducts(Pageable pageable) {
     log.info("Fetching all products with pagination");
 
-    return productRepository.findByIsActiveTrue().isEmpty()
-        ? Page.empty(pageable)
-        : productRepository.findAll(pageable)
-            .map(this::mapToDto);
+    return productRepository.findByIsActiveTrue(pageable)
+        .map(this::mapToDto);
   }
 
   /**
-   * Search products by name - try to get from the cache first - if not in cache, search in the DB
+   * Get active products after a cursor - keyset pagination: one query per page, no count, and a
+   * deep page costs as much as the first one
    *
-   * @param name String
+   * @param cursor String cursor of the previous page, null for the first page
+   * @param size   int
+   * @param sort   String sort key of the first page (id, price or name), the cursor keeps it
+   * @return ProductCursorPage
+   */
+  @Override
+  @Transactional(readOnly = true)
+  public ProductCursorPage scrollProducts(String cursor, int size, String sort) {
+    ProductCursor after = StringUtils.hasText(cursor) ? ProductCursor.decode(cursor) : null;
+    SortKey sortKey = after != null ? after.sortKey() : SortKey.from(sort);
+    // one more row tells whether there is a next page
+    Pageable limit = PageRequest.ofSize(Math.max(1, size) + 1);
+
+    List<Product> products = switch (sortKey) {
+      case ID -> productRepository.findActiveAfterId(after != null ? after.id() : 0L, limit);
+      case PRICE -> after != null
+          ? productRepository.findActiveAfterPrice(after.price(), after.id(), limit)
+          : productRepository.findActiveOrderByPrice(limit);
+      case NAME -> after != null
+          ? productRepository.findActiveAfterName(after.value(), after.id(), limit)
+          : productRepository.findActiveOrderByName(limit);
+    };
+
+    boolean hasNext = products.size() == limit.getPageSize();
+    List<ProductResponse> content = products.stream()
+        .limit(limit.getPageSize() - 1L)
+        .map(this::mapToDto)
+        .toList();
+    return ProductCursorPage.builder()
+        .content(content)
+        .nextCursor(hasNext ? ProductCursor.after(sortKey, content.get(content.size() - 1))
+            .encode() : null)
+        .build();
+  }
+
+  /**
+   * Search products by name - from the in-memory search index when it is loaded (best match
+   * first, typo-tolerant if fuzzy) - otherwise try to get from the cache first - if not in cache,
+   * search in the DB - at most max-results products
+   *
+   * @param name  String
+   * @param fuzzy boolean
    * @return List<ProductResponse>
    */
   @Override
   @Transactional(readOnly = true)
-  public List<ProductResponse> searchProductsByName(String name) {
-    log.info("Searching products by name: {}", name);
+  public List<ProductResponse> searchProductsByName(String name, boolean fuzzy) {
+    log.info("Searching products by name: {}, fuzzy: {}", name, fuzzy);
 
-    // Try to get from the cache first
-    List<ProductResponse> cachedResults = productCacheService.getSearchResultsFromCache(name);
+    if (productSearchIndex.isReady()) {
+      return findAllInOrder(productSearchIndex.search(name, null, null, null, fuzzy,
+          PageRequest.ofSize(searchMaxResults)).getContent());
+    }
 
-    if (cachedResults != null) {
-      log.info("Search results found in cache for name: {}", name);
-      return cachedResults;
+    // Try to get from the cache first, search in the DB once on a miss
+    return productCacheService.getOrLoadSearchResults(name, () ->
+        productRepository.findByNameContainingIgnoreCase(name, PageRequest.ofSize(searchMaxResults))
+            .stream()
+            .filter(Product::isActive)
+            .map(this::mapToDto)
+            .collect(Collectors.toList()));
+  }
+
+  /**
+   * Suggest product names for a search box - from the in-memory suggester (most popular first) -
+   * in the DB only while the suggester is loading
+   *
+   * @param text  String
+   * @param limit int
+   * @return List<ProductSuggestion>
+   */
+  @Override
+  @Transactional(readOnly = true)
+  public List<ProductSuggestion> suggestProducts(String text, int limit) {
+    int size = Math.max(1, Math.min(limit, productSuggester.getTopK()));
+    if (productSuggester.isReady()) {
+      return productSuggester.suggest(text, size);
     }
 
-    List<ProductResponse> results = productRepository.findByNameContainingIgnoreCase(name)
+    return productRepository.findByNameContainingIgnoreCase(text, PageRequest.ofSize(size))
         .stream()
         .filter(Product::isActive)
-        .map(this::mapToDto)
-        .collect(Collectors.toList());
-
-    // Cache the results
-    productCacheService.cacheSearchResults(name, results);
-
-    return results;
+        .map(product -> new ProductSuggestion(product.getId(), product.getName()))
+        .toList();
   }
 
   /**
-   * Get products by category id - try to get from the cache first - if not in cache, get from the
-   * DB
+   * Get products by category id - try to get from the cache first (stale entries are refreshed in
+   * the background) - if not in cache, get from the DB
    *
    * @param categoryId Long
    * @return List<ProductResponse>
@@ -225,34 +306,24 @@ public class ProductServiceImpl implements ProductService {
   public List<ProductResponse> getProductsByCategory(Long categoryId) {
     log.info("Fetching products by category id: {}", categoryId);
 
-    // Try to get from the cache first
-    List<ProductResponse> cachedResults = productCacheService.getProductsByCategoryFromCache(
-        categoryId);
-
-    if (cachedResults != null) {
-      log.info("Products found in cache for category: {}", categoryId);
-      return cachedResults;
-    }
-
-    List<ProductResponse> results = productRepository.findByCategoryId(categoryId)
-        .stream()
-        .filter(Product::isActive)
-        .map(this::mapToDto)
-        .collect(Collectors.toList());
-
-    // Cache the results
-    productCacheService.cacheProductsByCategory(categoryId, results);
-
-    return results;
+    // Try to get from the cache first, get from the DB once on a miss
+    return productCacheService.getOrLoadProductsByCategory(categoryId, () ->
+        productRepository.findByCategoryId(categoryId)
+            .stream()
+            .filter(Product::isActive)
+            .map(this::mapToDto)
+            .collect(Collectors.toList()));
   }
 
   /**
-   * Advanced search products - try to get from the cache first - if not in cache, search in the DB
+   * Advanced search products - by name through the in-memory search index when it is loaded (best
+   * match first, typo-tolerant if fuzzy), otherwise in the DB
    *
    * @param name       String
    * @param categoryId Long
    * @param minPrice   BigDecimal
    * @param maxPrice   BigDecimal
+   * @param fuzzy      boolean
    * @param pageable   Pageable
    * @return Page<ProductResponse>
    */
@@ -263,15 +334,73 @@ public class ProductServiceImpl implements ProductService {
       Long categoryId,
       BigDecimal minPrice,
       BigDecimal maxPrice,
+      boolean fuzzy,
       Pageable pageable) {
     log.info("Advanced search for products with name: {}, categoryId: {}, price range: {} - {}",
         name, categoryId, minPrice, maxPrice);
 
+    if (StringUtils.hasText(name) && productSearchIndex.isReady()) {
+      Page<Long> productIds = productSearchIndex.search(name, categoryId, minPrice, maxPrice,
+          fuzzy, pageable);
+      return new PageImpl<>(findAllInOrder(productIds.getContent()), pageable,
+          productIds.getTotalElements());
+    }
+
     return productRepository.searchProducts(name, categoryId, minPrice, maxPrice, pageable)
         .map(this::mapToDto);
   }
 
+  /**
+   * Update stock of many products (projection of inventory-service) - one JDBC batch, a product is
+   * only written when the event is newer than its stock (version of the inventory row) - evict
+   * their caches once committed
+   *
+   * @param events Collection<StockChangedEvent> at most one per product
+   * @return number of products whose stock was updated
+   */
+  @Override
+  @Transactional
+  public int updateStocks(Collection<StockChangedEvent> events) {
+    if (events.isEmpty()) {
+      return 0;
+    }
+
+    List<StockChangedEvent> changes = List.copyOf(events);
+    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+    int[][] counts = jdbcTemplate.batchUpdate(UPDATE_STOCK, changes, changes.size(),
+        (ps, event) -> {
+          ps.setInt(1, event.getQuantity());
+          ps.setLong(2, event.getVersion());
+          ps.setTimestamp(3, now);
+          ps.setLong(4, event.getProductId());
+          ps.setLong(5, event.getVersion());
+        });
+
+    List<Long> updatedIds = new ArrayList<>();
+    for (int i = 0; i < changes.size(); i++) {
+      if (counts[0][i] != 0) {
+        updatedIds.add(changes.get(i).getProductId());
+      }
+    }
+    if (!updatedIds.isEmpty()) {
+      // after commit: a load before it would cache the old stock again
+      productCacheService.evictProductCachesAfterCommit(updatedIds);
+    }
+    return updatedIds.size();
+  }
+
   // Helper methods
+  private List<ProductResponse> findAllInOrder(List<Long> productIds) {
+    // one primary key lookup for the page, in the order of the ids
+    Map<Long, Product> products = productRepository.findAllById(productIds).stream()
+        .collect(Collectors.toMap(Product::getId, Function.identity()));
+    return productIds.stream()
+        .map(products::get)
+        .filter(product -> product != null && product.isActive())
+        .map(this::mapToDto)
+        .toList();
+  }
+
   private Product mapToEntity(ProductRequest productRequest) {
     Product product = new Product();
     product.setName(productRequest.getName());
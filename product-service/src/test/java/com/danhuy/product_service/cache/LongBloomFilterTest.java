@@ -0,0 +1,63 @@
+package com.danhuy.product_service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+
+class LongBloomFilterTest {
+
+  @Test
+  void containsEveryAddedKey() {
+    LongBloomFilter filter = new LongBloomFilter(100_000, 0.01);
+    LongStream.rangeClosed(1, 100_000).forEach(filter::add);
+
+    assertTrue(LongStream.rangeClosed(1, 100_000).allMatch(filter::mightContain));
+  }
+
+  @Test
+  void keepsTheFalsePositiveRateItWasSizedFor() {
+    LongBloomFilter filter = new LongBloomFilter(100_000, 0.01);
+    LongStream.rangeClosed(1, 100_000).forEach(filter::add);
+
+    long falsePositives = LongStream.rangeClosed(1_000_001, 1_100_000)
+        .filter(filter::mightContain)
+        .count();
+    // 1% expected, consecutive ids must not cluster
+    assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+  }
+
+  @Test
+  void isEmptyAndSizedFromTheExpectedKeys() {
+    LongBloomFilter filter = new LongBloomFilter(1_000, 0.01);
+
+    assertFalse(filter.mightContain(42));
+    // about 9.6 bits and 7 hashes per key, rounded up to whole words
+    assertTrue(filter.bitCount() >= 9_586 && filter.bitCount() % 64 == 0);
+    assertEquals(7, filter.hashCount());
+
+    LongBloomFilter tiny = new LongBloomFilter(0, 0.5);
+    tiny.add(-1);
+    assertTrue(tiny.mightContain(-1));
+  }
+
+  @Test
+  void keepsKeysAddedConcurrently() throws InterruptedException {
+    LongBloomFilter filter = new LongBloomFilter(400_000, 0.01);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (int thread = 0; thread < 4; thread++) {
+      long first = thread * 100_000L;
+      executor.execute(() -> LongStream.range(first, first + 100_000).forEach(filter::add));
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+    // a lost update would drop a bit set by another thread
+    assertTrue(LongStream.range(0, 400_000).allMatch(filter::mightContain));
+  }
+}
@@ -0,0 +1,145 @@
+package com.danhuy.product_service.search;
+
+import com.danhuy.product_service.dto.SearchableProduct;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Latency of the in-memory name search on synthetic catalogs: exact queries, and misspelled
+ * queries (one typo) in fuzzy mode, with the share of fuzzy queries whose best result holds the
+ * intended word.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test}, tune with system properties:
+ * benchmark.sizes (10000,100000,1000000), benchmark.queries (20000), benchmark.max-edits (2),
+ * benchmark.max-expansions (64).
+ */
+class FuzzySearchBenchmark {
+
+  private static final String[] WORDS = {"banana", "yogurt", "milk", "bread", "butter", "cheese",
+      "apple", "orange", "mango", "coffee", "noodle", "chicken", "salmon", "shrimp", "tomato",
+      "potato", "carrot", "cabbage", "spinach", "garlic", "onion", "pepper", "sugar", "flour",
+      "cereal", "chocolate", "biscuit", "juice", "water", "honey", "vinegar", "sausage", "bacon",
+      "lettuce", "cucumber", "pumpkin", "avocado", "pineapple", "strawberry", "watermelon",
+      "tofu", "rice", "pasta", "ketchup", "mayonnaise", "peanut", "almond", "cashew", "oatmeal",
+      "cream", "tea", "soda", "lemon", "grape", "papaya", "coconut", "ginger", "basil", "mint"};
+  private static final String[] VARIANTS = {"fresh", "organic", "frozen", "dried", "smoked",
+      "sweet", "spicy", "light", "premium", "classic", "family", "mini"};
+  private static final String[] SIZES = {"100g", "250g", "500g", "1kg", "330ml", "1l", "6x"};
+  private static final char[] LETTERS = "abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+  private final int[] sizes = Arrays.stream(
+      System.getProperty("benchmark.sizes", "10000,100000,1000000").split(","))
+      .mapToInt(value -> Integer.parseInt(value.trim()))
+      .toArray();
+  private final int queries = Integer.getInteger("benchmark.queries", 20000);
+  private final int maxEdits = Integer.getInteger("benchmark.max-edits", 2);
+  private final int maxExpansions = Integer.getInteger("benchmark.max-expansions", 64);
+
+  @Test
+  void measureSearchLatency() {
+    System.out.printf("%n%10s %9s %8s %12s %12s %12s %12s %8s%n", "products", "terms",
+        "build s", "exact p50", "exact p99", "fuzzy p50", "fuzzy p99", "hit@1");
+    for (int size : sizes) {
+      run(size);
+    }
+  }
+
+  private void run(int size) {
+    Random random = new Random(size);
+    InvertedIndex index = new InvertedIndex();
+    // brands grow with the catalog, so does the vocabulary
+    String[] brands = new String[Math.max(10, size / 50)];
+    for (int i = 0; i < brands.length; i++) {
+      brands[i] = randomWord(random, 4 + random.nextInt(5));
+    }
+
+    // the intended word of every product, to check the fuzzy results
+    String[] words = new String[size + 1];
+    long buildStart = System.nanoTime();
+    for (int id = 1; id <= size; id++) {
+      words[id] = WORDS[random.nextInt(WORDS.length)];
+      String name = brands[random.nextInt(brands.length)] + " "
+          + VARIANTS[random.nextInt(VARIANTS.length)] + " " + words[id] + " "
+          + SIZES[random.nextInt(SIZES.length)];
+      index.put(new SearchableProduct((long) id, name, (long) id % 20,
+          BigDecimal.valueOf(id % 500), null));
+    }
+    double buildSeconds = (System.nanoTime() - buildStart) / 1e9;
+
+    String[] queryWords = new String[queries];
+    String[] typos = new String[queries];
+    for (int i = 0; i < queries; i++) {
+      queryWords[i] = WORDS[random.nextInt(WORDS.length)];
+      typos[i] = typo(random, queryWords[i]);
+    }
+
+    // warm up both paths before measuring
+    for (int i = 0; i < Math.min(queries, 2000); i++) {
+      top(index, queryWords[i], 0);
+      top(index, typos[i], maxEdits);
+    }
+
+    long[] exact = new long[queries];
+    long[] fuzzy = new long[queries];
+    int hits = 0;
+    for (int i = 0; i < queries; i++) {
+      long start = System.nanoTime();
+      top(index, queryWords[i], 0);
+      exact[i] = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      long[] results = top(index, typos[i], maxEdits);
+      fuzzy[i] = System.nanoTime() - start;
+      if (results.length > 0 && words[(int) results[0]].equals(queryWords[i])) {
+        hits++;
+      }
+    }
+    Arrays.sort(exact);
+    Arrays.sort(fuzzy);
+
+    System.out.printf("%10d %9d %8.1f %10.1fus %10.1fus %10.1fus %10.1fus %7.1f%%%n", size,
+        brands.length + WORDS.length + VARIANTS.length + SIZES.length, buildSeconds,
+        percentile(exact, 0.50), percentile(exact, 0.99), percentile(fuzzy, 0.50),
+        percentile(fuzzy, 0.99), 100.0 * hits / queries);
+  }
+
+  // first page of 10, as ProductSearchIndex asks for it
+  private long[] top(InvertedIndex index, String text, int edits) {
+    return index.search(TextNormalizer.tokenize(text), null, maxExpansions, edits, 0, 10).ids();
+  }
+
+  // one substitution, deletion, insertion or transposition, never on the first letter
+  private static String typo(Random random, String word) {
+    StringBuilder typo = new StringBuilder(word);
+    int position = 1 + random.nextInt(word.length() - 1);
+    switch (random.nextInt(4)) {
+      case 0 -> typo.setCharAt(position, LETTERS[random.nextInt(LETTERS.length)]);
+      case 1 -> typo.deleteCharAt(position);
+      case 2 -> typo.insert(position, LETTERS[random.nextInt(LETTERS.length)]);
+      default -> {
+        if (position == word.length() - 1) {
+          position--;
+        }
+        char c = typo.charAt(position);
+        typo.setCharAt(position, typo.charAt(position + 1));
+        typo.setCharAt(position + 1, c);
+      }
+    }
+    return typo.toString();
+  }
+
+  private static String randomWord(Random random, int length) {
+    char[] word = new char[length];
+    for (int i = 0; i < length; i++) {
+      word[i] = LETTERS[random.nextInt(LETTERS.length)];
+    }
+    return new String(word);
+  }
+
+  private static double percentile(long[] sortedNanos, double quantile) {
+    int position = (int) Math.min(sortedNanos.length - 1, Math.ceil(quantile * sortedNanos.length));
+    return sortedNanos[position] / 1000.0;
+  }
+}
@@ -0,0 +1,138 @@
+package com.danhuy.product_service.search;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.danhuy.product_service.dto.SearchableProduct;
+import java.math.BigDecimal;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+
+class InvertedIndexTest {
+
+  private final InvertedIndex index = new InvertedIndex();
+
+  @Test
+  void findsProductsByTermAndPrefix() {
+    put(1, "Fresh Banana 1kg");
+    put(2, "Banana Milk");
+    put(3, "Fresh Milk");
+
+    // the shorter name ranks first
+    assertArrayEquals(new long[]{2, 1}, search("banana").ids());
+    assertArrayEquals(new long[]{2}, search("banana milk").ids());
+    // "ban" only starts the terms
+    assertEquals(2, search("ban").total());
+    assertEquals(0, search("bread").total());
+  }
+
+  @Test
+  void foldsAccentsOfNamesAndQueries() {
+    put(1, "Bánh mì Sài Gòn");
+
+    assertArrayEquals(new long[]{1}, search("banh mi").ids());
+    assertArrayEquals(new long[]{1}, search("Bánh").ids());
+  }
+
+  @Test
+  void replacesAndRemovesProducts() {
+    put(1, "Banana Milk");
+    put(1, "Chocolate Milk");
+
+    assertEquals(0, search("banana").total());
+    assertArrayEquals(new long[]{1}, search("chocolate").ids());
+    assertEquals(1, index.size());
+
+    index.remove(1);
+    assertEquals(0, search("milk").total());
+    assertEquals(0, index.size());
+    // the term is gone from the trigrams too
+    assertEquals(0, fuzzy("chocolat").total());
+    // removing twice is a no-op
+    index.remove(1);
+  }
+
+  @Test
+  void keepsPostingListsSortedThroughAppendsAndInserts() {
+    // ids in order fill the spare capacity in place, then grow the array
+    for (long id = 1; id <= 20; id++) {
+      put(id * 10, "Milk");
+    }
+    // before the first, in the middle and past the end
+    put(5, "Milk");
+    put(55, "Milk");
+    put(500, "Milk");
+    index.remove(100);
+    index.remove(5);
+
+    long[] expected = LongStream.concat(
+        LongStream.rangeClosed(1, 20).map(id -> id * 10).filter(id -> id != 100),
+        LongStream.of(55, 500)).sorted().toArray();
+    InvertedIndex.Hits hits = index.search(TextNormalizer.tokenize("milk"), null, 64, 0, 0, 100);
+    assertEquals(expected.length, hits.total());
+    // same score, lowest id first
+    assertArrayEquals(expected, hits.ids());
+  }
+
+  @Test
+  void appendKeepsEarlierResultsUnchanged() {
+    put(1, "Milk");
+    put(2, "Milk");
+    InvertedIndex.Hits before = search("milk");
+
+    put(3, "Milk");
+
+    assertArrayEquals(new long[]{1, 2}, before.ids());
+    assertArrayEquals(new long[]{1, 2, 3}, search("milk").ids());
+  }
+
+  @Test
+  void matchesMisspelledTokensInFuzzyModeOnly() {
+    put(1, "Banana");
+    put(2, "Yogurt");
+
+    assertEquals(0, search("bananna").total());
+    assertArrayEquals(new long[]{1}, fuzzy("bananna").ids());
+    assertArrayEquals(new long[]{2}, fuzzy("yoghurt").ids());
+    // short tokens are not corrected
+    assertEquals(0, fuzzy("yx").total());
+  }
+
+  @Test
+  void ranksExactTermsAbovePrefixesAndFuzzyTerms() {
+    put(1, "Bananas");
+    put(2, "Banana");
+    put(3, "Banan");
+
+    InvertedIndex.Hits hits = index.search(TextNormalizer.tokenize("banana"), null, 64, 2, 0, 10);
+    assertEquals(2, hits.ids()[0]);
+  }
+
+  @Test
+  void filtersAndPagesHits() {
+    for (long id = 1; id <= 5; id++) {
+      index.put(new SearchableProduct(id, "Milk", id % 2, BigDecimal.valueOf(id), null));
+    }
+
+    InvertedIndex.Hits odd = index.search(TextNormalizer.tokenize("milk"),
+        document -> document.categoryId() == 1, 64, 0, 0, 10);
+    assertArrayEquals(new long[]{1, 3, 5}, odd.ids());
+
+    InvertedIndex.Hits page = index.search(TextNormalizer.tokenize("milk"), null, 64, 0, 2, 2);
+    assertEquals(5, page.total());
+    assertArrayEquals(new long[]{3, 4}, page.ids());
+    assertEquals(0, index.search(TextNormalizer.tokenize("milk"), null, 64, 0, 5, 2).ids().length);
+  }
+
+  private void put(long id, String name) {
+    index.put(new SearchableProduct(id, name, null, BigDecimal.ONE, null));
+  }
+
+  private InvertedIndex.Hits search(String query) {
+    return index.search(TextNormalizer.tokenize(query), null, 64, 0, 0, 10);
+  }
+
+  private InvertedIndex.Hits fuzzy(String query) {
+    return index.search(TextNormalizer.tokenize(query), null, 64, 2, 0, 10);
+  }
+}
@@ -0,0 +1,113 @@
+package com.danhuy.product_service.search;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class SuggestionTrieTest {
+
+  private final Map<Long, Long> weights = new HashMap<>();
+  private final SuggestionTrie trie = new SuggestionTrie(3,
+      productId -> weights.getOrDefault(productId, 0L));
+
+  @Test
+  void completesPrefixesBestFirst() {
+    weights.put(1L, 10L);
+    weights.put(2L, 30L);
+    weights.put(3L, 20L);
+    trie.insert("banana", 1);
+    trie.insert("banh mi", 2);
+    trie.insert("bread", 3);
+
+    assertArrayEquals(new long[]{2, 3, 1}, trie.top("b"));
+    assertArrayEquals(new long[]{2, 1}, trie.top("ban"));
+    // the prefix ends within an edge
+    assertArrayEquals(new long[]{1}, trie.top("bana"));
+    assertArrayEquals(new long[]{1}, trie.top("banana"));
+    // the prefix leaves an edge, or goes past a key
+    assertEquals(0, trie.top("banx").length);
+    assertEquals(0, trie.top("bananas").length);
+    assertEquals(0, trie.top("milk").length);
+  }
+
+  @Test
+  void keepsTopKAndBreaksTiesByLowestId() {
+    for (long id = 5; id >= 1; id--) {
+      trie.insert("milk " + id, id);
+    }
+
+    assertArrayEquals(new long[]{1, 2, 3}, trie.top("milk"));
+    assertArrayEquals(new long[]{1, 2, 3}, trie.top(""));
+  }
+
+  @Test
+  void splitsEdgesAndKeepsKeysEndingInside() {
+    trie.insert("banana", 1);
+    // ends on the split node of the "banana" edge
+    trie.insert("ban", 2);
+    trie.insert("band", 3);
+
+    assertArrayEquals(new long[]{1, 2, 3}, trie.top("ban"));
+    assertArrayEquals(new long[]{1}, trie.top("bana"));
+    assertArrayEquals(new long[]{3}, trie.top("band"));
+  }
+
+  @Test
+  void listsAProductOnceUnderSeveralKeys() {
+    trie.insert("banana milk", 1);
+    trie.insert("banana", 1);
+    trie.insert("banana", 1);
+
+    assertArrayEquals(new long[]{1}, trie.top("banana"));
+  }
+
+  @Test
+  void prunesAndMergesNodesOnDelete() {
+    trie.insert("banana", 1);
+    trie.insert("band", 2);
+    trie.insert("ban", 3);
+
+    trie.delete("band", 2);
+    assertEquals(0, trie.top("band").length);
+    assertArrayEquals(new long[]{1, 3}, trie.top("ban"));
+
+    // "ban" is left without product and a single child: merged back into "banana"
+    trie.delete("ban", 3);
+    assertArrayEquals(new long[]{1}, trie.top("ban"));
+    assertArrayEquals(new long[]{1}, trie.top("banan"));
+
+    // the inserts after a merge split the edge again
+    trie.insert("bank", 4);
+    assertArrayEquals(new long[]{1, 4}, trie.top("ban"));
+
+    trie.delete("banana", 1);
+    trie.delete("bank", 4);
+    assertEquals(0, trie.top("").length);
+  }
+
+  @Test
+  void ignoresDeletesOfAbsentKeysAndProducts() {
+    trie.insert("banana", 1);
+
+    trie.delete("bananas", 1);
+    trie.delete("bana", 1);
+    trie.delete("banana", 2);
+
+    assertArrayEquals(new long[]{1}, trie.top("banana"));
+  }
+
+  @Test
+  void reranksAfterAWeightChange() {
+    trie.insert("banana", 1);
+    trie.insert("bread", 2);
+    assertArrayEquals(new long[]{1, 2}, trie.top("b"));
+
+    weights.put(2L, 5L);
+    trie.refresh("bread");
+
+    assertArrayEquals(new long[]{2, 1}, trie.top("b"));
+  }
+}
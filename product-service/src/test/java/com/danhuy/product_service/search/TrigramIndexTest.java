@@ -0,0 +1,78 @@
+package com.danhuy.product_service.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TrigramIndexTest {
+
+  private final TrigramIndex index = new TrigramIndex();
+
+  @Test
+  void computesEditDistanceWithTranspositions() {
+    assertEquals(0, TrigramIndex.distance("banana", "banana", 2));
+    // substitution, insertion, deletion
+    assertEquals(1, TrigramIndex.distance("banana", "banena", 2));
+    assertEquals(1, TrigramIndex.distance("banana", "bananna", 2));
+    assertEquals(1, TrigramIndex.distance("banana", "banan", 2));
+    // adjacent transposition is one edit
+    assertEquals(1, TrigramIndex.distance("yogurt", "yougrt", 2));
+    assertEquals(2, TrigramIndex.distance("yogurt", "yoghrut", 2));
+    assertEquals(0, TrigramIndex.distance("", "", 1));
+    assertEquals(1, TrigramIndex.distance("", "a", 1));
+  }
+
+  @Test
+  void stopsPastTheBound() {
+    // the length difference alone is over the bound
+    assertEquals(2, TrigramIndex.distance("milk", "milkshake", 1));
+    // every row is over the bound before the end
+    assertEquals(2, TrigramIndex.distance("banana", "cherry", 1));
+    assertEquals(3, TrigramIndex.distance("abcdef", "badcfe", 2));
+    assertEquals(3, TrigramIndex.distance("abcdef", "badcfe", 3));
+  }
+
+  @Test
+  void findsCloseTermsClosestFirst() {
+    index.add("banana");
+    index.add("bandana");
+    index.add("cabana");
+    index.add("yogurt");
+
+    List<TrigramIndex.Match> matches = index.search("bananna", 2, 100);
+    assertEquals(new TrigramIndex.Match("banana", 1), matches.get(0));
+    assertTrue(matches.stream().noneMatch(match -> match.term().equals("yogurt")));
+    assertTrue(matches.stream().allMatch(match -> match.distance() <= 2));
+
+    assertEquals(List.of(new TrigramIndex.Match("yogurt", 1)), index.search("yoghurt", 1, 100));
+    assertEquals(List.of(), index.search("bread", 1, 100));
+  }
+
+  @Test
+  void dropsRemovedTerms() {
+    index.add("banana");
+    index.add("bandana");
+
+    index.remove("banana");
+
+    assertTrue(index.search("bananna", 1, 100).isEmpty());
+    assertEquals(List.of(new TrigramIndex.Match("bandana", 1)), index.search("bandan", 1, 100));
+
+    index.remove("bandana");
+    assertTrue(index.search("bandan", 2, 100).isEmpty());
+    // removing an absent term is a no-op
+    index.remove("bandana");
+  }
+
+  @Test
+  void verifiesAtMostMaxCandidates() {
+    index.add("milk");
+    index.add("mill");
+    index.add("mild");
+
+    assertEquals(3, index.search("mil", 1, 100).size());
+    assertEquals(1, index.search("mil", 1, 1).size());
+  }
+}